@@ -25,11 +25,14 @@ import java.util.concurrent.TimeUnit;
 import jetbrains.buildServer.BuildProblemData;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.FailedBuildInfo;
+import jetbrains.buildServer.investigationsAutoAssigner.persistent.AssignerArtifactDao;
 import jetbrains.buildServer.investigationsAutoAssigner.persistent.StatisticsReporter;
+import jetbrains.buildServer.investigationsAutoAssigner.processing.BuildChangesCache;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.DelayedAssignmentsProcessor;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.FailedTestAndBuildProblemsProcessor;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.CustomParameters;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.AggregationLogger;
+import jetbrains.buildServer.investigationsAutoAssigner.utils.ProblemTextExtractor;
 import jetbrains.buildServer.responsibility.ResponsibilityEntry;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.problems.BuildProblemInfo;
@@ -50,6 +53,10 @@ public class FailedTestAndBuildProblemsDispatcher {
   private final ServerResponsibility myServerResponsibility;
   private final StatisticsReporter myStatisticsReporter;
   private final CustomParameters myCustomParameters;
+  @NotNull private final SBuildServer myBuildServer;
+  @NotNull private final BuildChangesCache myBuildChangesCache;
+  @NotNull private final AssignerArtifactDao myAssignerArtifactDao;
+  @NotNull private final ProblemTextExtractor myProblemTextExtractor;
   @NotNull
   private final ConcurrentHashMap<Long, FailedBuildInfo> myFailedBuilds = new ConcurrentHashMap<>();
   @NotNull
@@ -63,13 +70,21 @@ public class FailedTestAndBuildProblemsDispatcher {
                                               @NotNull final AggregationLogger aggregationLogger,
                                               @NotNull final StatisticsReporter statisticsReporter,
                                               @NotNull final CustomParameters customParameters,
-                                              @NotNull final ServerResponsibility serverResponsibility) {
+                                              @NotNull final ServerResponsibility serverResponsibility,
+                                              @NotNull final SBuildServer buildServer,
+                                              @NotNull final BuildChangesCache buildChangesCache,
+                                              @NotNull final AssignerArtifactDao assignerArtifactDao,
+                                              @NotNull final ProblemTextExtractor problemTextExtractor) {
     myProcessor = processor;
     myDelayedAssignmentsProcessor = delayedAssignmentsProcessor;
     myAggregationLogger = aggregationLogger;
     myStatisticsReporter = statisticsReporter;
     myCustomParameters = customParameters;
     myServerResponsibility = serverResponsibility;
+    myBuildServer = buildServer;
+    myBuildChangesCache = buildChangesCache;
+    myAssignerArtifactDao = assignerArtifactDao;
+    myProblemTextExtractor = problemTextExtractor;
     myExecutor = ExecutorsFactory.newFixedScheduledDaemonExecutor(Constants.BUILD_FEATURE_TYPE, 1);
     myExecutor.scheduleWithFixedDelay(this::processBrokenBuildsOneThread,
                                       CustomParameters.getProcessingDelayInSeconds(),
@@ -90,19 +105,36 @@ public class FailedTestAndBuildProblemsDispatcher {
         myFailedBuilds.put(sBuild.getBuildId(), new FailedBuildInfo(sBuild, shouldDelayAssignments));
       }
 
+      @Override
+      public void buildStarted(@NotNull final SRunningBuild build) {
+        if (!canSendNotifications() ||
+            !TeamCityProperties.getBoolean(Constants.PREFETCH_BUILD_CHANGES) ||
+            shouldIgnore(build) ||
+            !customParameters.isBuildFeatureEnabled(build)) {
+          return;
+        }
+
+        myBuildChangesCache.prefetch(build);
+      }
+
       @Override
       public void buildInterrupted(@NotNull final SRunningBuild build) {
         myFailedBuilds.remove(build.getBuildId());
+        removeBuildData(build.getBuildId());
       }
 
       @Override
       public void buildFinished(@NotNull SRunningBuild build) {
         if (shouldIgnore(build)) {
           myFailedBuilds.remove(build.getBuildId());
+          removeBuildData(build.getBuildId());
           return;
         }
 
-        if (!canSendNotifications()) return;
+        if (!canSendNotifications()) {
+          removeBuildData(build.getBuildId());
+          return;
+        }
 
         myExecutor.execute(() -> instance.processDelayedAssignmentsOneThread(build));
 
@@ -110,7 +142,11 @@ public class FailedTestAndBuildProblemsDispatcher {
         FailedBuildInfo failedBuildInfo = myFailedBuilds.remove(build.getBuildId());
         if (failedBuildInfo != null) {
           myExecutor.execute(() -> instance.processFinishedBuild(failedBuildInfo));
+          // no more suggestions are stored for the build after it is processed as finished
+          myExecutor.execute(() -> myAssignerArtifactDao.completeBuild(build));
         }
+        // the executor is single-threaded, so the changes and compile errors are dropped after the build is processed
+        myExecutor.execute(() -> removeBuildData(build.getBuildId()));
       }
 
       @Override
@@ -143,10 +179,16 @@ public class FailedTestAndBuildProblemsDispatcher {
       @Override
       public void serverShutdown() {
         ThreadUtil.shutdownGracefully(myExecutor, "Investigator-Auto-Assigner Daemon");
+        myAssignerArtifactDao.flushPending(0);
       }
     });
   }
 
+  private void removeBuildData(final long buildId) {
+    myBuildChangesCache.remove(buildId);
+    myProblemTextExtractor.remove(buildId);
+  }
+
   private void processBrokenBuildsOneThread() {
     String description = String.format("Investigations auto-assigner: processing %s builds in background",
                                        myFailedBuilds.size());
@@ -159,32 +201,38 @@ public class FailedTestAndBuildProblemsDispatcher {
     if (sBuildType != null) {
       @Nullable
       FailedBuildInfo delayedAssignmentsBuildInfo = myDelayedAssignments.get(sBuildType.getInternalId());
-      if (delayedAssignmentsBuildInfo != null &&
-          delayedAssignmentsBuildInfo.getBuild().getBuildId() != nextBuild.getBuildId() &&
-          nextBuild.getBuildPromotion().isLaterThan(delayedAssignmentsBuildInfo.getBuild().getBuildPromotion())) {
+      if (delayedAssignmentsBuildInfo == null || delayedAssignmentsBuildInfo.getBuildId() == nextBuild.getBuildId()) {
+        return;
+      }
+
+      if (!delayedAssignmentsBuildInfo.reloadBuild(myBuildServer)) {
+        LOGGER.debug("Build #" + delayedAssignmentsBuildInfo.getBuildId() + " with delayed assignments was not found. " +
+                     "Delayed assignments are dropped.");
+        myDelayedAssignments.remove(sBuildType.getInternalId());
+        return;
+      }
+
+      if (nextBuild.getBuildPromotion().isLaterThan(delayedAssignmentsBuildInfo.getBuild().getBuildPromotion())) {
         myDelayedAssignments.remove(sBuildType.getInternalId());
         processDelayedAssignments(delayedAssignmentsBuildInfo, nextBuild);
       }
+      delayedAssignmentsBuildInfo.releaseBuild();
     }
   }
 
   private void processDelayedAssignments(final FailedBuildInfo delayedAssignmentsBuildInfo, SBuild nextBuild) {
     String description = String.format("Investigations auto-assigner: processing delayed assignments for build %s" +
-                                       " in background", delayedAssignmentsBuildInfo.getBuild().getBuildId());
+                                       " in background", delayedAssignmentsBuildInfo.getBuildId());
     NamedThreadFactory.executeWithNewThreadName(
       description, () -> myDelayedAssignmentsProcessor.processBuild(delayedAssignmentsBuildInfo, nextBuild));
   }
 
   private void processFinishedBuild(@NotNull final FailedBuildInfo failedBuildInfo) {
     String description = String.format("Investigations auto-assigner: processing finished build %s in background",
-                                       failedBuildInfo.getBuild().getBuildId());
+                                       failedBuildInfo.getBuildId());
     NamedThreadFactory.executeWithNewThreadName(description, () -> this.processBrokenBuild(failedBuildInfo));
     if (LOGGER.isDebugEnabled()) {
-      LOGGER.debug("Build #" + failedBuildInfo.getBuild().getBuildId() + " will be removed from processing.");
-    }
-
-    if (failedBuildInfo.shouldDelayAssignments() && !failedBuildInfo.getHeuristicsResult().isEmpty()) {
-      putIntoDelayAssignments(failedBuildInfo);
+      LOGGER.debug("Build #" + failedBuildInfo.getBuildId() + " will be removed from processing.");
     }
 
     if (!failedBuildInfo.getHeuristicsResult().isEmpty() && myCustomParameters.isBuildFeatureEnabled(failedBuildInfo.getBuild())) {
@@ -193,6 +241,10 @@ public class FailedTestAndBuildProblemsDispatcher {
     }
 
     myAggregationLogger.logResults(failedBuildInfo);
+
+    if (failedBuildInfo.shouldDelayAssignments() && !failedBuildInfo.getHeuristicsResult().isEmpty()) {
+      putIntoDelayAssignments(failedBuildInfo);
+    }
   }
 
   private void putIntoDelayAssignments(final FailedBuildInfo currentFailedBuildInfo) {
@@ -203,7 +255,8 @@ public class FailedTestAndBuildProblemsDispatcher {
     }
 
     FailedBuildInfo previouslyAdded = myDelayedAssignments.get(sBuildType.getInternalId());
-    if (previouslyAdded == null) {
+    if (previouslyAdded == null || !previouslyAdded.reloadBuild(myBuildServer)) {
+      currentFailedBuildInfo.releaseBuild();
       myDelayedAssignments.put(sBuildType.getInternalId(), currentFailedBuildInfo);
       return;
     }
@@ -219,18 +272,22 @@ public class FailedTestAndBuildProblemsDispatcher {
 
   private void processOlderAndDelayNew(SBuildType sBuildType, FailedBuildInfo older, FailedBuildInfo newer) {
     processDelayedAssignments(older, newer.getBuild());
+    older.releaseBuild();
+    newer.releaseBuild();
     myDelayedAssignments.put(sBuildType.getInternalId(), newer);
   }
 
   private void processBrokenBuilds() {
-    if (!canSendNotifications()) {
+    if (canSendNotifications()) {
+      for (FailedBuildInfo failedBuildInfo : myFailedBuilds.values()) {
+        processBrokenBuild(failedBuildInfo);
+      }
+    } else {
       myFailedBuilds.clear();
-      return;
     }
 
-    for (FailedBuildInfo failedBuildInfo : myFailedBuilds.values()) {
-      processBrokenBuild(failedBuildInfo);
-    }
+    // suggestions of long-running builds should not stay in memory until the builds finish
+    myAssignerArtifactDao.flushPending(CustomParameters.getProcessingDelayInSeconds() * 1000L);
   }
 
   private boolean canSendNotifications() {
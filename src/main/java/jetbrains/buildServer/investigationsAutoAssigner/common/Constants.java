@@ -36,6 +36,7 @@ public class Constants {
   public static final String ENABLE_FEATURE_BRANCHES_SUPPORT = "teamcity.investigationsAutoAssigner.enableFeatureBranchesSupport";
   public static final String MAX_TESTS_PER_BUILD_NUMBER = "teamcity.investigationsAutoAssigner.maxTestsFailuresToProcessPerBuild";
   public static final String SHOULD_PERSIST_FILTERED_TESTS_DESCRIPTION = "teamcity.investigationsAutoAssigner.persistFilteredTests";
+  public static final String MASS_FAILURE_PERCENT = "teamcity.investigationsAutoAssigner.massFailure.failedTestsPercent";
   public static final String SHOULD_ASSIGN_RESOLVE_MANUALLY = "investigationsAutoAssigner.assignResolveManually";
 
   // Server internal properties
@@ -46,6 +47,92 @@ public class Constants {
 
   public static final String MAX_COMPILE_ERRORS_TO_PROCESS = "teamcity.investigationsAutoAssigner.maxCompileErrorsToProcess";
 
+  /**
+   * How many builds keep the text of their compile errors in memory until they are processed for the last time.
+   */
+  public static final String COMPILE_ERRORS_CACHE_BUILDS = "teamcity.investigationsAutoAssigner.compileErrorsCache.builds";
+
+  public static final String TEST_TEXT_WINDOW_KB = "teamcity.investigationsAutoAssigner.testTextWindowKb";
+
+  public static final String MASS_FAILURE_MIN_FAILED_TESTS = "teamcity.investigationsAutoAssigner.massFailure.minFailedTests";
+
+  /**
+   * When set, failed tests whose names mention files changed in the build are processed first when not all
+   * failed tests fit into {@link Constants#MAX_TESTS_PER_BUILD_NUMBER}.
+   */
+  public static final String PRIORITIZE_CHANGED_FILES_TESTS = "teamcity.investigationsAutoAssigner.prioritizeChangedFilesTests";
+
+  /**
+   * When set, asynchronous heuristics which are not cheap are started in advance for all failures of a build.
+   * See {@link jetbrains.buildServer.investigationsAutoAssigner.heuristics.AsyncHeuristic}.
+   */
+  public static final String ASYNC_HEURISTICS_ENABLED = "teamcity.investigationsAutoAssigner.asyncHeuristics.enabled";
+
+  public static final String FUSED_HEURISTICS_EVALUATION = "teamcity.investigationsAutoAssigner.fusedHeuristicsEvaluation.enabled";
+
+  /**
+   * Failed tests of a build with the same failure signature are counted once for the limit of tests to process,
+   * and build-level heuristics are evaluated for one of them.
+   */
+  public static final String FAILURE_CLUSTERING_ENABLED = "teamcity.investigationsAutoAssigner.failureClustering.enabled";
+
+  /**
+   * Same as {@link Constants#FAILURE_CLUSTERING_ENABLED} for failed tests with nearly the same output.
+   * Works with or without failure clustering.
+   */
+  public static final String NEAR_DUPLICATE_GROUPING_ENABLED = "teamcity.investigationsAutoAssigner.nearDuplicateGrouping.enabled";
+  public static final String NEAR_DUPLICATE_SIMILARITY_PERCENT = "teamcity.investigationsAutoAssigner.nearDuplicateGrouping.similarityPercent";
+  public static final String NEAR_DUPLICATE_MAX_TESTS_TO_GROUP = "teamcity.investigationsAutoAssigner.nearDuplicateGrouping.maxTests";
+  /**
+   * When set, changes, committers and changed file patterns of a build are loaded in background when the build
+   * starts, so they are ready when the first failure is processed.
+   */
+  public static final String PREFETCH_BUILD_CHANGES = "teamcity.investigationsAutoAssigner.prefetchBuildChanges.enabled";
+
+  /**
+   * Total size of suggestion files whose parsed content is kept in memory for the test details UI, 0 disables caching.
+   * A file larger than 1/8 of the size is never cached.
+   */
+  public static final String SUGGESTIONS_CACHE_SIZE_KB = "teamcity.investigationsAutoAssigner.suggestionsCache.sizeKb";
+
+  /**
+   * When set, new suggestion files are gzip-compressed. Both compressed and plain files are read regardless of it.
+   */
+  public static final String SUGGESTIONS_GZIP_ENABLED = "teamcity.investigationsAutoAssigner.suggestions.gzip.enabled";
+
+  /**
+   * When set, suggestions found while a build is running are kept in memory and written when the build
+   * finishes, when {@link Constants#SUGGESTIONS_WRITE_BEHIND_MAX_RECORDS} of them are buffered, or by the next
+   * scheduled processing pass.
+   */
+  public static final String SUGGESTIONS_WRITE_BEHIND_ENABLED = "teamcity.investigationsAutoAssigner.suggestions.writeBehind.enabled";
+  public static final String SUGGESTIONS_WRITE_BEHIND_MAX_RECORDS = "teamcity.investigationsAutoAssigner.suggestions.writeBehind.maxRecords";
+
+  /**
+   * When set, suggestions of new builds are kept in the server-wide store under the plugin data directory instead of
+   * a file in the build artifacts. Suggestions of builds stored earlier are still read from their artifacts.
+   */
+  public static final String SUGGESTIONS_STORE_ENABLED = "teamcity.investigationsAutoAssigner.suggestionsStore.enabled";
+  public static final String SUGGESTIONS_STORE_SEGMENT_SIZE_KB = "teamcity.investigationsAutoAssigner.suggestionsStore.segmentSizeKb";
+  /**
+   * How often nodes other than the one processing builds check the stored suggestions for new records.
+   */
+  public static final String SUGGESTIONS_STORE_REFRESH_INTERVAL_SECONDS = "teamcity.investigationsAutoAssigner.suggestionsStore.refreshIntervalSeconds";
+
+  /**
+   * When set, indexes of suggestion files are memory-mapped. Enable it only when the artifacts are on a local disk
+   * and not on Windows.
+   */
+  public static final String SUGGESTIONS_INDEX_MMAP_ENABLED = "teamcity.investigationsAutoAssigner.suggestionsIndex.mmap.enabled";
+  public static final String SUGGESTIONS_INDEX_CACHE_SIZE = "teamcity.investigationsAutoAssigner.suggestionsIndex.cacheSize";
+
+  public static final String RESULTS_PATH_CACHE_SIZE = "teamcity.investigationsAutoAssigner.resultsPathCache.size";
+  /**
+   * For how long it is trusted that a build has no file with suggestions. The file may be created on another node,
+   * files created on this node are picked up right away.
+   */
+  public static final String RESULTS_PATH_MISSING_TTL_SECONDS = "teamcity.investigationsAutoAssigner.resultsPathCache.missingTtlSeconds";
+
   public static final String IGNORE_SETUP_TEARDOWN_METHODS = "teamcity.investigationsAutoAssigner.ignoreSetupAndTearDown";
 
   public static final String PREFERRED_INVESTIGATION_PROJECT = "teamcity.internal.preferredInvestigationProject";
@@ -62,9 +149,23 @@ public class Constants {
   public final static String TEAMCITY_DIRECTORY = ArtifactsConstants.TEAMCITY_ARTIFACTS_DIR;
   public final static String TEST_RUN_IN_REQUEST = "loadedTestRun";
   public final static int DEFAULT_TEST_COUNT_THRESHOLD = 100;
+  public final static int DEFAULT_COMPILE_ERRORS_CACHE_BUILDS = 100;
+  public final static int DEFAULT_TEST_TEXT_WINDOW_KB = 64;
+  public final static int DEFAULT_MASS_FAILURE_PERCENT = 0;
+  public final static int DEFAULT_MASS_FAILURE_MIN_FAILED_TESTS = 300;
+  public final static int DEFAULT_SUGGESTIONS_CACHE_SIZE_KB = 32 * 1024;
+  public final static int DEFAULT_SUGGESTIONS_WRITE_BEHIND_MAX_RECORDS = 1000;
+  public final static long DEFAULT_SUGGESTIONS_STORE_SEGMENT_SIZE_KB = 64 * 1024;
+  public final static int SUGGESTIONS_STORE_COMPACTION_DEAD_PERCENT = 50;
+  public final static int DEFAULT_SUGGESTIONS_STORE_REFRESH_INTERVAL_SECONDS = 10;
+  public final static int DEFAULT_SUGGESTIONS_INDEX_CACHE_SIZE = 256;
+  public final static int DEFAULT_RESULTS_PATH_CACHE_SIZE = 10000;
+  public final static long DEFAULT_RESULTS_PATH_MISSING_TTL_SECONDS = 60;
   public final static String ARTIFACT_DIRECTORY = "investigationsAutoAssigner";
   public static final String PLUGIN_DATA_DIR = ARTIFACT_DIRECTORY;
+  public static final String SUGGESTIONS_STORE_DIRECTORY = "suggestions";
   public static final String ARTIFACT_FILENAME = "suggestions.json";
+  public static final String ARTIFACT_INDEX_FILENAME = "suggestions.idx";
   public static final String STATISTICS_FILE_NAME = "statistics.json";
   public static final String STATISTICS_FILE_VERSION = "1.6";
   public static final String ASSIGN_DESCRIPTION_PREFIX = "Investigation was automatically assigned to";
@@ -21,33 +21,72 @@ import java.util.HashSet;
 import java.util.Set;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.CustomParameters;
 import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildServer;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * Processing state of a failed build. The build itself is referenced only while the build is being processed:
+ * delayed assignments can be kept for weeks, so they call {@link #releaseBuild()} and later reload the build
+ * by its id with {@link #reloadBuild(SBuildServer)}.
+ */
 public class FailedBuildInfo {
 
-  private final SBuild mySBuild;
+  private final long myBuildId;
+  @Nullable private SBuild mySBuild;
   private final int myThreshold;
   private final Set<Integer> myProcessedTests = new HashSet<>();
   private final Set<Integer> myProcessedBuildProblems = new HashSet<>();
   private final HeuristicResult myHeuristicResult = new HeuristicResult();
+  private final ResponsibilityInterner myResponsibilityInterner = new ResponsibilityInterner();
   private final boolean myShouldDelayAssignments;
+  private boolean myIsMassFailure = false;
+  private boolean myIsMassFailureDecided = false;
   private int myProcessedCount = 0;
 
   public FailedBuildInfo(final SBuild sBuild, final boolean shouldDelayAssignments) {
     mySBuild = sBuild;
+    myBuildId = sBuild.getBuildId();
     myShouldDelayAssignments = shouldDelayAssignments;
     myThreshold = CustomParameters.getMaxTestsPerBuildThreshold(sBuild);
   }
 
   @NotNull
   public SBuild getBuild() {
-    return mySBuild;
+    SBuild sBuild = mySBuild;
+    if (sBuild == null) {
+      throw new IllegalStateException("Build #" + myBuildId + " was released and should be reloaded before use");
+    }
+
+    return sBuild;
   }
 
   public long getBuildId() {
-    return mySBuild.getBuildId();
+    return myBuildId;
+  }
+
+  public boolean isBuildLoaded() {
+    return mySBuild != null;
+  }
+
+  /**
+   * Drops the reference to the build, so the build object graph is not retained while the info is stored.
+   */
+  public void releaseBuild() {
+    mySBuild = null;
+  }
+
+  /**
+   * @return false if the build cannot be found anymore (e.g. it was removed by the cleanup).
+   */
+  public boolean reloadBuild(@NotNull SBuildServer buildServer) {
+    if (mySBuild == null) {
+      mySBuild = buildServer.findBuildInstanceById(myBuildId);
+    }
+
+    return mySBuild != null;
   }
 
   public void addProcessedTestRuns(@NotNull Collection<STestRun> tests) {
@@ -78,10 +117,38 @@ public class FailedBuildInfo {
     return myHeuristicResult;
   }
 
+  @NotNull
+  public ResponsibilityInterner getResponsibilityInterner() {
+    return myResponsibilityInterner;
+  }
+
   public boolean shouldDelayAssignments() {
     return myShouldDelayAssignments;
   }
 
+  /**
+   * In case of a mass failure the failed tests are not processed one by one, instead the whole failure
+   * is investigated as the "failed tests" build problem.
+   */
+  public boolean isMassFailure() {
+    return myIsMassFailure;
+  }
+
+  public boolean isMassFailureDecided() {
+    return myIsMassFailureDecided;
+  }
+
+  /**
+   * The first decision is kept, so a build is not switched to a mass failure after its tests were already
+   * investigated one by one, and vice versa.
+   */
+  public void decideMassFailure(final boolean isMassFailure) {
+    if (!myIsMassFailureDecided) {
+      myIsMassFailure = isMassFailure;
+      myIsMassFailureDecided = true;
+    }
+  }
+
   public boolean isOverProcessedProblemsThreshold() {
     return getLimitToProcess() <= 0;
   }
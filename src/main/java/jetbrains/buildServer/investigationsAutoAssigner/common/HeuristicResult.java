@@ -16,22 +16,20 @@
 
 package jetbrains.buildServer.investigationsAutoAssigner.common;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import org.jetbrains.annotations.Nullable;
 
 public class HeuristicResult {
 
-  private HashMap<Integer, Responsibility> testRun2Responsibility;
-  private HashMap<Integer, Responsibility> buildProblem2Responsibility;
+  private final IntResponsibilityMap testRun2Responsibility;
+  private final IntResponsibilityMap buildProblem2Responsibility;
 
   public HeuristicResult() {
-    testRun2Responsibility = new HashMap<>();
-    buildProblem2Responsibility = new HashMap<>();
+    testRun2Responsibility = new IntResponsibilityMap();
+    buildProblem2Responsibility = new IntResponsibilityMap();
   }
 
   public void addResponsibility(final STestRun sTestRun, final Responsibility responsibility) {
@@ -53,6 +51,8 @@ public class HeuristicResult {
   }
 
   public void merge(final HeuristicResult heuristicResult) {
+    if (heuristicResult.isEmpty()) return;
+
     testRun2Responsibility.putAll(heuristicResult.testRun2Responsibility);
     buildProblem2Responsibility.putAll(heuristicResult.buildProblem2Responsibility);
   }
@@ -62,7 +62,10 @@ public class HeuristicResult {
   }
 
   public List<Responsibility> getAllResponsibilities() {
-    return Stream.concat(testRun2Responsibility.values().stream(), buildProblem2Responsibility.values().stream())
-                 .collect(Collectors.toList());
+    List<Responsibility> result =
+      new ArrayList<>(testRun2Responsibility.size() + buildProblem2Responsibility.size());
+    testRun2Responsibility.collectValues(result);
+    buildProblem2Responsibility.collectValues(result);
+    return result;
   }
 }
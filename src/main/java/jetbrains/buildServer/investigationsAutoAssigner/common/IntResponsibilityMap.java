@@ -0,0 +1,134 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.common;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Open-addressing map from int ids (test run ids, build problem ids) to {@link Responsibility}.
+ * Avoids boxing of the keys and per-entry node allocation of {@link java.util.HashMap}.
+ */
+class IntResponsibilityMap {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int FREE_KEY = 0;
+
+  private int[] myKeys;
+  private Responsibility[] myValues;
+  private int mySize;
+  // zero is used as the free-slot marker, so the value for the zero key is kept aside
+  private Responsibility myZeroKeyValue;
+
+  IntResponsibilityMap() {
+    myKeys = new int[INITIAL_CAPACITY];
+    myValues = new Responsibility[INITIAL_CAPACITY];
+  }
+
+  void put(int key, @NotNull Responsibility value) {
+    if (key == FREE_KEY) {
+      if (myZeroKeyValue == null) {
+        mySize++;
+      }
+      myZeroKeyValue = value;
+      return;
+    }
+
+    int index = findSlot(myKeys, key);
+    if (myKeys[index] == FREE_KEY) {
+      myKeys[index] = key;
+      mySize++;
+    }
+    myValues[index] = value;
+
+    if (mySize * 2 > myKeys.length) {
+      rehash(myKeys.length * 2);
+    }
+  }
+
+  @Nullable
+  Responsibility get(int key) {
+    if (key == FREE_KEY) {
+      return myZeroKeyValue;
+    }
+
+    int index = findSlot(myKeys, key);
+    return myKeys[index] == FREE_KEY ? null : myValues[index];
+  }
+
+  void putAll(@NotNull IntResponsibilityMap another) {
+    if (another.myZeroKeyValue != null) {
+      put(FREE_KEY, another.myZeroKeyValue);
+    }
+
+    int[] keys = another.myKeys;
+    Responsibility[] values = another.myValues;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != FREE_KEY) {
+        put(keys[i], values[i]);
+      }
+    }
+  }
+
+  int size() {
+    return mySize;
+  }
+
+  boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  void collectValues(@NotNull List<Responsibility> target) {
+    if (myZeroKeyValue != null) {
+      target.add(myZeroKeyValue);
+    }
+
+    for (int i = 0; i < myKeys.length; i++) {
+      if (myKeys[i] != FREE_KEY) {
+        target.add(myValues[i]);
+      }
+    }
+  }
+
+  private void rehash(int newCapacity) {
+    int[] oldKeys = myKeys;
+    Responsibility[] oldValues = myValues;
+    myKeys = new int[newCapacity];
+    myValues = new Responsibility[newCapacity];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != FREE_KEY) {
+        int index = findSlot(myKeys, oldKeys[i]);
+        myKeys[index] = oldKeys[i];
+        myValues[index] = oldValues[i];
+      }
+    }
+  }
+
+  private static int findSlot(int[] keys, int key) {
+    int mask = keys.length - 1;
+    int index = mix(key) & mask;
+    while (keys[index] != FREE_KEY && keys[index] != key) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private static int mix(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
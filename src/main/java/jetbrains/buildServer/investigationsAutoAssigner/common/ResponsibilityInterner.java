@@ -0,0 +1,45 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import jetbrains.buildServer.users.User;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Per-build table of {@link Responsibility} instances, so identical assignments found for many failures
+ * share one object instead of allocating a new one per test run.
+ * Synchronized, as asynchronous heuristics of a build may run concurrently.
+ */
+public class ResponsibilityInterner {
+  private final Map<Long, Map<String, Responsibility>> myUserId2Responsibilities = new HashMap<>();
+
+  @NotNull
+  public synchronized Responsibility intern(@NotNull User user, @NotNull String description) {
+    return myUserId2Responsibilities.computeIfAbsent(user.getId(), devNull -> new HashMap<>())
+                                    .computeIfAbsent(description, devNull -> new Responsibility(user, description));
+  }
+
+  public synchronized int size() {
+    int result = 0;
+    for (Map<String, Responsibility> responsibilities : myUserId2Responsibilities.values()) {
+      result += responsibilities.size();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.heuristics;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
+import jetbrains.buildServer.investigationsAutoAssigner.processing.HeuristicContext;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Heuristic which may run asynchronously, e.g. because it waits for I/O.
+ * When {@link jetbrains.buildServer.investigationsAutoAssigner.common.Constants#ASYNC_HEURISTICS_ENABLED} is set,
+ * heuristics which are not {@link CostClass#CHEAP} are started in advance for all failures of the build,
+ * so they overlap with other heuristics. Their results are still applied in the order of heuristics.
+ * When the results are not needed anymore, {@link HeuristicContext#isCancelled()} becomes true
+ * and the returned future is cancelled. Otherwise, the heuristic is run synchronously like any other one.
+ */
+public interface AsyncHeuristic extends Heuristic {
+
+  enum CostClass {
+    CHEAP,
+    MODERATE,
+    EXPENSIVE
+  }
+
+  enum RequiredData {
+    CHANGES,
+    AUDIT,
+    BUILD_LOG,
+    TEST_OUTPUT
+  }
+
+  @NotNull
+  CostClass getCostClass();
+
+  /**
+   * @return data the heuristic is going to read, so the caller may load it in advance.
+   */
+  @NotNull
+  Set<RequiredData> getRequiredData();
+
+  /**
+   * @param executor executor which should be used for blocking work of the heuristic.
+   */
+  @NotNull
+  CompletableFuture<HeuristicResult> findResponsibleUserAsync(@NotNull HeuristicContext heuristicContext,
+                                                              @NotNull Executor executor);
+
+  @NotNull
+  @Override
+  default HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
+    return findResponsibleUserAsync(heuristicContext, Runnable::run).join();
+  }
+}
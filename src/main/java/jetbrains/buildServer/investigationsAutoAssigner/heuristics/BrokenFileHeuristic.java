@@ -19,8 +19,6 @@ package jetbrains.buildServer.investigationsAutoAssigner.heuristics;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Pair;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicNotApplicableException;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
@@ -34,7 +32,6 @@ import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import jetbrains.buildServer.users.User;
 import jetbrains.buildServer.vcs.SVcsModification;
-import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -59,17 +56,12 @@ public class BrokenFileHeuristic implements Heuristic {
   @NotNull
   public HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
     final HeuristicResult emptyResult = new HeuristicResult();
-    SBuild sBuild = heuristicContext.getBuild();
-
-    final BuildPromotion buildPromotion = sBuild.getBuildPromotion();
-    if (!(buildPromotion instanceof BuildPromotionEx)) return emptyResult;
+    List<SVcsModification> vcsChanges = heuristicContext.getBuildChanges().getCandidateChanges();
+    if (vcsChanges.isEmpty()) {
+      // nothing to look for, so problem texts are not loaded at all
+      return emptyResult;
+    }
 
-    SelectPrevBuildPolicy prevBuildPolicy = SelectPrevBuildPolicy.SINCE_LAST_BUILD;
-    List<SVcsModification> vcsChanges = ((BuildPromotionEx)buildPromotion).getDetectedChanges(prevBuildPolicy, false)
-                                                                          .stream()
-                                                                          .map(ChangeDescriptor::getRelatedVcsChange)
-                                                                          .filter(Objects::nonNull)
-                                                                          .collect(Collectors.toList());
     try {
       return processTestsAndBuildProblems(heuristicContext, vcsChanges);
 
@@ -80,6 +72,58 @@ public class BrokenFileHeuristic implements Heuristic {
     }
   }
 
+  @NotNull
+  @Override
+  public HeuristicEvaluator getEvaluator(@NotNull final HeuristicContext heuristicContext) {
+    return new HeuristicEvaluator() {
+      @Nullable private List<SVcsModification> myVcsChanges;
+      private boolean myIsApplicable = true;
+
+      @Nullable
+      @Override
+      public Responsibility evaluate(@NotNull final STestRun sTestRun) {
+        if (!hasCandidateChanges()) return null;
+
+        return findResponsibleUser(myProblemTextExtractor.getBuildProblemText(sTestRun));
+      }
+
+      @Nullable
+      @Override
+      public Responsibility evaluate(@NotNull final BuildProblem buildProblem) {
+        String buildProblemType = buildProblem.getBuildProblemData().getType();
+        if (!BuildProblemsFilter.supportedEverywhereTypes.contains(buildProblemType) || !hasCandidateChanges()) return null;
+
+        return findResponsibleUser(myProblemTextExtractor.getBuildProblemText(buildProblem, heuristicContext.getBuild()));
+      }
+
+      @Override
+      public boolean isApplicable() {
+        return myIsApplicable;
+      }
+
+      private boolean hasCandidateChanges() {
+        if (myVcsChanges == null) {
+          myVcsChanges = heuristicContext.getBuildChanges().getCandidateChanges();
+        }
+
+        return myIsApplicable && !myVcsChanges.isEmpty();
+      }
+
+      @Nullable
+      private Responsibility findResponsibleUser(@NotNull final String problemText) {
+        assert myVcsChanges != null;
+        try {
+          return BrokenFileHeuristic.this.findResponsibleUser(myVcsChanges, problemText, heuristicContext);
+        } catch (HeuristicNotApplicableException ex) {
+          LOGGER.debug("Heuristic \"BrokenFile\" is ignored as " + ex.getMessage() + ". Build: " +
+                       LogUtil.describe(heuristicContext.getBuild()));
+          myIsApplicable = false;
+          return null;
+        }
+      }
+    };
+  }
+
   private HeuristicResult processTestsAndBuildProblems(@NotNull final HeuristicContext heuristicContext,
                                                        final List<SVcsModification> vcsChanges) {
     HeuristicResult result = new HeuristicResult();
@@ -116,7 +160,7 @@ public class BrokenFileHeuristic implements Heuristic {
     Pair<User, String> foundBrokenFile = null;
     for (SVcsModification vcsChange : vcsChanges) {
       ModificationAnalyzerFactory.ModificationAnalyzer vcsChangeWrapped =
-        myModificationAnalyzerFactory.getInstance(vcsChange);
+        heuristicContext.getBuildChanges().getAnalyzer(myModificationAnalyzerFactory, vcsChange);
       Pair<User, String> brokenFile =
         vcsChangeWrapped.findProblematicFile(problemText, heuristicContext.getUsersToIgnore());
       if (brokenFile == null) continue;
@@ -129,7 +173,7 @@ public class BrokenFileHeuristic implements Heuristic {
 
     String description =
       String.format("changed the suspicious file \"%s\" which probably broke the build", foundBrokenFile.second);
-    return new Responsibility(foundBrokenFile.first, description);
+    return heuristicContext.getResponsibilityInterner().intern(foundBrokenFile.first, description);
   }
 
   private void ensureSameUsers(@Nullable Pair<User, String> foundBrokenFile,
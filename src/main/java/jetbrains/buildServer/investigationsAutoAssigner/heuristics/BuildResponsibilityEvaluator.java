@@ -0,0 +1,63 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.heuristics;
+
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Evaluator for heuristics which find the same responsible user for all failures of the build.
+ */
+class BuildResponsibilityEvaluator implements HeuristicEvaluator {
+  private final Supplier<Responsibility> myResponsibilitySupplier;
+  private final Predicate<BuildProblem> mySupportedProblems;
+  private boolean myIsCalculated = false;
+  @Nullable private Responsibility myResponsibility;
+
+  BuildResponsibilityEvaluator(@NotNull final Supplier<Responsibility> responsibilitySupplier,
+                               @NotNull final Predicate<BuildProblem> supportedProblems) {
+    myResponsibilitySupplier = responsibilitySupplier;
+    mySupportedProblems = supportedProblems;
+  }
+
+  @Nullable
+  @Override
+  public Responsibility evaluate(@NotNull final STestRun sTestRun) {
+    return getResponsibility();
+  }
+
+  @Nullable
+  @Override
+  public Responsibility evaluate(@NotNull final BuildProblem buildProblem) {
+    return mySupportedProblems.test(buildProblem) ? getResponsibility() : null;
+  }
+
+  @Nullable
+  private Responsibility getResponsibility() {
+    if (!myIsCalculated) {
+      myResponsibility = myResponsibilitySupplier.get();
+      myIsCalculated = true;
+    }
+
+    return myResponsibility;
+  }
+}
@@ -17,6 +17,9 @@
 package jetbrains.buildServer.investigationsAutoAssigner.heuristics;
 
 import com.intellij.openapi.diagnostic.Logger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.DefaultUserResponsibility;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
@@ -25,10 +28,16 @@ import jetbrains.buildServer.investigationsAutoAssigner.processing.HeuristicCont
 import jetbrains.buildServer.investigationsAutoAssigner.utils.CustomParameters;
 import jetbrains.buildServer.log.LogUtil;
 import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import jetbrains.buildServer.users.User;
 import jetbrains.buildServer.users.UserModelEx;
+import jetbrains.buildServer.users.UserModelListener;
+import jetbrains.buildServer.users.UserModelListenerAdapter;
 import jetbrains.buildServer.users.impl.UserEx;
+import jetbrains.buildServer.util.EventDispatcher;
 import jetbrains.buildServer.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import static jetbrains.buildServer.investigationsAutoAssigner.processing.BuildProblemsFilter.notSupportedEverywhereTypes;
 
@@ -37,9 +46,39 @@ public class DefaultUserHeuristic implements Heuristic {
   private static final Logger LOGGER = Constants.LOGGER;
 
   @NotNull private final UserModelEx myUserModel;
+  @NotNull private final CustomParameters myCustomParameters;
+  /**
+   * Build type id -> the default responsible user resolved for it. Dropped on any change of user accounts.
+   */
+  private final Map<String, ResolvedUser> myResolvedUsers = new ConcurrentHashMap<>();
+  private final AtomicLong myUserModelVersion = new AtomicLong();
 
-  public DefaultUserHeuristic(@NotNull final UserModelEx userModel) {
+  public DefaultUserHeuristic(@NotNull final UserModelEx userModel,
+                              @NotNull final EventDispatcher<UserModelListener> userModelEvents,
+                              @NotNull final CustomParameters customParameters) {
     myUserModel = userModel;
+    myCustomParameters = customParameters;
+    userModelEvents.addListener(new UserModelListenerAdapter() {
+      @Override
+      public void userAccountCreated(@NotNull final User user) {
+        invalidateResolvedUsers();
+      }
+
+      @Override
+      public void userAccountChanged(@NotNull final User user) {
+        invalidateResolvedUsers();
+      }
+
+      @Override
+      public void userAccountRemoved(@NotNull final User user) {
+        invalidateResolvedUsers();
+      }
+    });
+  }
+
+  private void invalidateResolvedUsers() {
+    myUserModelVersion.incrementAndGet();
+    myResolvedUsers.clear();
   }
 
   @Override
@@ -52,27 +91,77 @@ public class DefaultUserHeuristic implements Heuristic {
   @Override
   public HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
     HeuristicResult result = new HeuristicResult();
+    Responsibility responsibility = findDefaultResponsible(heuristicContext);
+    if (responsibility == null) return result;
+
+    heuristicContext.getBuildProblems()
+                    .stream()
+                    .filter(DefaultUserHeuristic::isSupported)
+                    .forEach(buildProblem -> result.addResponsibility(buildProblem, responsibility));
+    heuristicContext.getTestRuns().forEach(testRun -> result.addResponsibility(testRun, responsibility));
 
+    return result;
+  }
+
+  @NotNull
+  @Override
+  public HeuristicEvaluator getEvaluator(@NotNull final HeuristicContext heuristicContext) {
+    return new BuildResponsibilityEvaluator(() -> findDefaultResponsible(heuristicContext), DefaultUserHeuristic::isSupported);
+  }
+
+  @Override
+  public boolean isBuildLevel() {
+    return true;
+  }
+
+  private static boolean isSupported(@NotNull final BuildProblem buildProblem) {
+    return !notSupportedEverywhereTypes.contains(buildProblem.getBuildProblemData().getType());
+  }
+
+  @Nullable
+  private Responsibility findDefaultResponsible(@NotNull HeuristicContext heuristicContext) {
     SBuild build = heuristicContext.getBuild();
-    String defaultResponsible = CustomParameters.getDefaultResponsible(build);
-    if (StringUtil.isEmpty(defaultResponsible)) return result;
+    String defaultResponsible = myCustomParameters.getSettings(build).getDefaultResponsible();
+    if (StringUtil.isEmpty(defaultResponsible)) return null;
 
-    UserEx responsibleUser = myUserModel.findUserAccount(null, defaultResponsible);
+    UserEx responsibleUser = findUserAccount(build, defaultResponsible);
     if (responsibleUser == null) {
       LOGGER.warn("Ignoring heuristic \"DefaultUser\" as there is no TeamCity user with the username \"" +
                   defaultResponsible + "\" specified in the Investigations Auto-Assigner settings in the build: " +
                   LogUtil.describe(build) + "Affected build configuration: " +
                   LogUtil.describe(build.getBuildType()));
-      return result;
+      return null;
     }
 
-    Responsibility responsibility = new DefaultUserResponsibility(responsibleUser);
-    heuristicContext.getBuildProblems()
-                    .stream()
-                    .filter(buildProblem -> !notSupportedEverywhereTypes.contains(buildProblem.getBuildProblemData().getType()))
-                    .forEach(buildProblem -> result.addResponsibility(buildProblem, responsibility));
-    heuristicContext.getTestRuns().forEach(testRun -> result.addResponsibility(testRun, responsibility));
+    return new DefaultUserResponsibility(responsibleUser);
+  }
 
-    return result;
+  @Nullable
+  private UserEx findUserAccount(@NotNull final SBuild build, @NotNull final String username) {
+    final String buildTypeId = build.getBuildTypeId();
+    if (buildTypeId == null) {
+      return myUserModel.findUserAccount(null, username);
+    }
+
+    ResolvedUser resolvedUser = myResolvedUsers.get(buildTypeId);
+    if (resolvedUser == null || !resolvedUser.myUsername.equals(username)) {
+      final long userModelVersion = myUserModelVersion.get();
+      resolvedUser = new ResolvedUser(username, myUserModel.findUserAccount(null, username));
+      if (userModelVersion == myUserModelVersion.get()) {
+        myResolvedUsers.put(buildTypeId, resolvedUser);
+      }
+    }
+
+    return resolvedUser.myUser;
+  }
+
+  private static class ResolvedUser {
+    @NotNull private final String myUsername;
+    @Nullable private final UserEx myUser;
+
+    private ResolvedUser(@NotNull final String username, @Nullable final UserEx user) {
+      myUsername = username;
+      myUser = user;
+    }
   }
 }
@@ -38,4 +38,21 @@ public interface Heuristic {
    */
   @NotNull
   HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext);
+
+  /**
+   * @return evaluator of the heuristic for single failures from the context.
+   * By default, the heuristic is run for the whole context on the first evaluated failure.
+   */
+  @NotNull
+  default HeuristicEvaluator getEvaluator(@NotNull HeuristicContext heuristicContext) {
+    return new WholeContextEvaluator(this, heuristicContext);
+  }
+
+  /**
+   * @return true when the heuristic finds the same responsible user for all failed tests of the build,
+   * so its result for one test of a failure cluster holds for the other tests of the cluster.
+   */
+  default boolean isBuildLevel() {
+    return false;
+  }
 }
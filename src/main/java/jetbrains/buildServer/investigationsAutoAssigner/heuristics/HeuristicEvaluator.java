@@ -0,0 +1,46 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.heuristics;
+
+import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Evaluates a heuristic for a single failure of the build. Used when all heuristics are evaluated in one pass
+ * over the failures, so a failure is not passed to next heuristics once a responsible user is found.
+ * Per-build data should be calculated lazily, on the first failure which needs it.
+ */
+public interface HeuristicEvaluator {
+
+  @Nullable
+  Responsibility evaluate(@NotNull STestRun sTestRun);
+
+  @Nullable
+  Responsibility evaluate(@NotNull BuildProblem buildProblem);
+
+  /**
+   * @return false when the heuristic turned out to be not applicable to the build (e.g. a failure points
+   * to several users). Responsible users found by the evaluator before are discarded then, the same way
+   * the whole result of {@link Heuristic#findResponsibleUser} is empty in this case.
+   */
+  default boolean isApplicable() {
+    return true;
+  }
+}
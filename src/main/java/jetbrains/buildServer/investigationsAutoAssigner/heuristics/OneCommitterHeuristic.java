@@ -21,15 +21,16 @@ import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicNotApplicableException;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
+import jetbrains.buildServer.investigationsAutoAssigner.processing.BuildChanges;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.BuildProblemsFilter;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.HeuristicContext;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.ModificationAnalyzerFactory;
 import jetbrains.buildServer.log.LogUtil;
 import jetbrains.buildServer.serverSide.BuildStatisticsOptions;
 import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import jetbrains.buildServer.users.User;
 import jetbrains.buildServer.vcs.SVcsModification;
-import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -51,12 +52,42 @@ public class OneCommitterHeuristic implements Heuristic {
   @Override
   public HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
     HeuristicResult result = new HeuristicResult();
+    Responsibility responsibility = findOnlyCommitter(heuristicContext);
+    if (responsibility != null) {
+      heuristicContext.getTestRuns().forEach(sTestRun -> result.addResponsibility(sTestRun, responsibility));
+
+      heuristicContext.getBuildProblems()
+                      .stream()
+                      .filter(OneCommitterHeuristic::isSupported)
+                      .forEach(buildProblem -> result.addResponsibility(buildProblem, responsibility));
+    }
+    return result;
+  }
+
+  @NotNull
+  @Override
+  public HeuristicEvaluator getEvaluator(@NotNull final HeuristicContext heuristicContext) {
+    return new BuildResponsibilityEvaluator(() -> findOnlyCommitter(heuristicContext), OneCommitterHeuristic::isSupported);
+  }
+
+  @Override
+  public boolean isBuildLevel() {
+    return true;
+  }
+
+  private static boolean isSupported(@NotNull final BuildProblem buildProblem) {
+    return BuildProblemsFilter.supportedEverywhereTypes.contains(buildProblem.getBuildProblemData().getType());
+  }
+
+  @Nullable
+  private Responsibility findOnlyCommitter(@NotNull HeuristicContext heuristicContext) {
     SBuild build = heuristicContext.getBuild();
     User responsible = null;
-    final SelectPrevBuildPolicy selectPrevBuildPolicy = SelectPrevBuildPolicy.SINCE_LAST_BUILD;
-    for (SVcsModification vcsChange : build.getChanges(selectPrevBuildPolicy, true)) {
+    final BuildChanges buildChanges = heuristicContext.getBuildChanges();
+    for (SVcsModification vcsChange : buildChanges.getChanges()) {
       try {
-        ModificationAnalyzerFactory.ModificationAnalyzer vcsChangeWrapped = myModificationAnalyzerFactory.getInstance(vcsChange);
+        ModificationAnalyzerFactory.ModificationAnalyzer vcsChangeWrapped =
+          buildChanges.getAnalyzer(myModificationAnalyzerFactory, vcsChange);
         User probableResponsible = vcsChangeWrapped.getOnlyCommitter(heuristicContext.getUsersToIgnore());
         if (probableResponsible == null) continue;
         ensureSameUsers(responsible, probableResponsible);
@@ -64,7 +95,7 @@ public class OneCommitterHeuristic implements Heuristic {
       } catch (HeuristicNotApplicableException ex) {
         LOGGER.debug("Heuristic \"OneCommitter\" is ignored as " + ex.getMessage() + ". Build: " +
                      LogUtil.describe(build));
-        return result;
+        return null;
       }
     }
 
@@ -73,18 +104,12 @@ public class OneCommitterHeuristic implements Heuristic {
         LOGGER.debug("Heuristic \"OneCommitter\" found " + responsible.getDescriptiveName() + "as responsible but " +
                      "results are ignored as previous build contained compilation errors." +
                      "  Build: " + LogUtil.describe(build));
-        return result;
+        return null;
       }
 
-      Responsibility responsibility = new Responsibility(responsible, "was the only committer to the build");
-      heuristicContext.getTestRuns().forEach(sTestRun -> result.addResponsibility(sTestRun, responsibility));
-
-      heuristicContext.getBuildProblems()
-                      .stream()
-                      .filter(problem -> BuildProblemsFilter.supportedEverywhereTypes.contains(problem.getBuildProblemData().getType()))
-                      .forEach(buildProblem -> result.addResponsibility(buildProblem, responsibility));
+      return heuristicContext.getResponsibilityInterner().intern(responsible, "was the only committer to the build");
     }
-    return result;
+    return null;
   }
 
   private boolean isCompilationErrorFixed(final SBuild build) {
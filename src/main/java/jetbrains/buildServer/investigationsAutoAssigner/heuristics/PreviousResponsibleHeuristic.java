@@ -20,7 +20,6 @@ import com.intellij.openapi.diagnostic.Logger;
 import java.util.HashMap;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
-import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.BuildProblemsFilter;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.HeuristicContext;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.InvestigationsManager;
@@ -71,7 +70,7 @@ public class PreviousResponsibleHeuristic implements Heuristic {
       if (responsibleUser != null) {
         String description = String.format("was previously responsible for the test %s", sTest.getName());
 
-        result.addResponsibility(sTestRun, new Responsibility(responsibleUser, description));
+        result.addResponsibility(sTestRun, heuristicContext.getResponsibilityInterner().intern(responsibleUser, description));
       }
     }
 
@@ -89,7 +88,8 @@ public class PreviousResponsibleHeuristic implements Heuristic {
 
       if (responsibleUser != null) {
         String description = String.format("was previously responsible for the problem %s`", buildProblemType);
-        result.addResponsibility(buildProblem, new Responsibility(responsibleUser, description));
+        result.addResponsibility(buildProblem,
+                                 heuristicContext.getResponsibilityInterner().intern(responsibleUser, description));
       }
     }
 
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.heuristics;
+
+import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
+import jetbrains.buildServer.investigationsAutoAssigner.processing.HeuristicContext;
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Evaluator for heuristics without per-failure evaluation: the heuristic is run for the whole context
+ * when a failure reaches it for the first time.
+ */
+class WholeContextEvaluator implements HeuristicEvaluator {
+  private final Heuristic myHeuristic;
+  private final HeuristicContext myHeuristicContext;
+  @Nullable private HeuristicResult myHeuristicResult;
+
+  WholeContextEvaluator(@NotNull final Heuristic heuristic, @NotNull final HeuristicContext heuristicContext) {
+    myHeuristic = heuristic;
+    myHeuristicContext = heuristicContext;
+  }
+
+  @Nullable
+  @Override
+  public Responsibility evaluate(@NotNull final STestRun sTestRun) {
+    return getHeuristicResult().getResponsibility(sTestRun);
+  }
+
+  @Nullable
+  @Override
+  public Responsibility evaluate(@NotNull final BuildProblem buildProblem) {
+    return getHeuristicResult().getResponsibility(buildProblem);
+  }
+
+  @NotNull
+  private HeuristicResult getHeuristicResult() {
+    if (myHeuristicResult == null) {
+      myHeuristicResult = myHeuristic.findResponsibleUser(myHeuristicContext);
+    }
+
+    return myHeuristicResult;
+  }
+}
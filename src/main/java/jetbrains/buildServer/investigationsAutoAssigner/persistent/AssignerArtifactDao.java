@@ -18,15 +18,22 @@ package jetbrains.buildServer.investigationsAutoAssigner.persistent;
 
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.Utils;
 import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildServer;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.TeamCityProperties;
 import jetbrains.buildServer.users.User;
@@ -42,15 +49,26 @@ public class AssignerArtifactDao {
   private final SuggestionsDao mySuggestionsDao;
   private final AssignerResultsFilePath myAssignerResultsFilePath;
   private final StatisticsReporter myStatisticsReporter;
+  private final SuggestionsCache mySuggestionsCache;
+  private final SuggestionsStore mySuggestionsStore;
+  private final SBuildServer myBuildServer;
+  private final ConcurrentHashMap<Long, PendingSuggestions> myPendingSuggestions = new ConcurrentHashMap<>();
+  private final SuggestedBuilds mySuggestedBuilds = new SuggestedBuilds();
 
   public AssignerArtifactDao(@NotNull final UserModelEx userModel,
                              @NotNull final SuggestionsDao suggestionsDao,
                              @NotNull final AssignerResultsFilePath assignerResultsFilePath,
-                             @NotNull final StatisticsReporter statisticsReporter) {
+                             @NotNull final StatisticsReporter statisticsReporter,
+                             @NotNull final SuggestionsCache suggestionsCache,
+                             @NotNull final SuggestionsStore suggestionsStore,
+                             @NotNull final SBuildServer buildServer) {
     myUserModel = userModel;
     mySuggestionsDao = suggestionsDao;
     myAssignerResultsFilePath = assignerResultsFilePath;
     myStatisticsReporter = statisticsReporter;
+    mySuggestionsCache = suggestionsCache;
+    mySuggestionsStore = suggestionsStore;
+    myBuildServer = buildServer;
   }
 
   public void appendHeuristicsResult(@NotNull SBuild build,
@@ -63,29 +81,98 @@ public class AssignerArtifactDao {
                         @NotNull List<ResponsibilityPersistentInfo> infoToAdd) {
     if (infoToAdd.isEmpty()) return;
 
-    try {
-      myStatisticsReporter.reportSavedSuggestions(infoToAdd.size());
-      Path resultsFilePath = myAssignerResultsFilePath.get(build);
+    mySuggestedBuilds.markWithSuggestions(build.getBuildId());
+    myStatisticsReporter.reportSavedSuggestions(infoToAdd.size());
+    if (!TeamCityProperties.getBoolean(Constants.SUGGESTIONS_WRITE_BEHIND_ENABLED)) {
+      write(build, infoToAdd, false);
+      return;
+    }
 
-      List<ResponsibilityPersistentInfo> previouslyAdded = mySuggestionsDao.read(resultsFilePath);
+    PendingSuggestions pending = myPendingSuggestions.merge(build.getBuildId(),
+                                                            new PendingSuggestions(infoToAdd),
+                                                            PendingSuggestions::plus);
+    LOGGER.debug(String.format("Build id:%s :: Buffered %s new found investigations",
+                               build.getBuildId(), infoToAdd.size()));
+    if (pending.mySuggestions.size() >= TeamCityProperties.getInteger(Constants.SUGGESTIONS_WRITE_BEHIND_MAX_RECORDS,
+                                                                      Constants.DEFAULT_SUGGESTIONS_WRITE_BEHIND_MAX_RECORDS)) {
+      flush(build.getBuildId());
+    }
+  }
 
-      if (previouslyAdded.isEmpty()) {
+  private void write(@NotNull final SBuild build,
+                     @NotNull List<ResponsibilityPersistentInfo> infoToAdd,
+                     boolean atomically) {
+    try {
+      boolean isFirstAppend;
+      if (mySuggestionsStore.isEnabled()) {
+        isFirstAppend = mySuggestionsStore.append(build.getBuildId(), infoToAdd);
+      } else {
+        Path resultsFilePath = myAssignerResultsFilePath.get(build);
+        try {
+          isFirstAppend = append(resultsFilePath, infoToAdd, atomically);
+        } catch (NoSuchFileException ex) {
+          // the file was removed after the path was resolved, it is created again
+          mySuggestionsCache.invalidate(resultsFilePath);
+          myAssignerResultsFilePath.invalidate(build);
+          resultsFilePath = myAssignerResultsFilePath.get(build);
+          isFirstAppend = append(resultsFilePath, infoToAdd, atomically);
+        }
+        mySuggestionsCache.invalidate(resultsFilePath);
+      }
+
+      if (isFirstAppend) {
         //should be called only once per build
         myStatisticsReporter.reportBuildWithSuggestions();
       }
 
-      infoToAdd.addAll(previouslyAdded);
-      LOGGER.debug(String.format("Build id:%s :: Read %s previously added investigations",
-                                 build.getBuildId(), previouslyAdded.size()));
-
-      mySuggestionsDao.write(resultsFilePath, infoToAdd);
       LOGGER.debug(String.format("Build id:%s :: Wrote %s new found investigations",
-                                 build.getBuildId(), infoToAdd.size() - previouslyAdded.size()));
+                                 build.getBuildId(), infoToAdd.size()));
     } catch (IOException ex) {
       LOGGER.warn(String.format("Build id:%s :: An error occurs during appending results", build.getBuildId()), ex);
     }
   }
 
+  private boolean append(@NotNull Path resultsFilePath,
+                         @NotNull List<ResponsibilityPersistentInfo> infoToAdd,
+                         boolean atomically) throws IOException {
+    return atomically
+           ? mySuggestionsDao.appendAtomically(resultsFilePath, infoToAdd)
+           : mySuggestionsDao.append(resultsFilePath, infoToAdd);
+  }
+
+  /**
+   * Writes suggestions buffered for the build. They stay visible for {@link #get} from the buffer until they are
+   * written. The build is not kept with them, suggestions of a build which was removed meanwhile are dropped.
+   */
+  private synchronized void flush(long buildId) {
+    PendingSuggestions pending = myPendingSuggestions.get(buildId);
+    if (pending == null) return;
+
+    SBuild build = myBuildServer.findBuildInstanceById(buildId);
+    if (build == null) {
+      LOGGER.debug(String.format("Build id:%s :: Build was removed, %s found investigations are dropped",
+                                 buildId, pending.mySuggestions.size()));
+      myPendingSuggestions.remove(buildId);
+      return;
+    }
+
+    write(build, pending.mySuggestions, true);
+    // suggestions buffered during the write are kept for the next flush
+    int written = pending.mySuggestions.size();
+    myPendingSuggestions.computeIfPresent(buildId, (id, current) -> current.minusFirst(written));
+  }
+
+  /**
+   * Writes suggestions buffered earlier than the given time ago, 0 writes all of them.
+   */
+  public void flushPending(long olderThanMillis) {
+    long threshold = System.currentTimeMillis() - olderThanMillis;
+    for (Map.Entry<Long, PendingSuggestions> pending : myPendingSuggestions.entrySet()) {
+      if (pending.getValue().myBufferedSince <= threshold) {
+        flush(pending.getKey());
+      }
+    }
+  }
 
   @NotNull
   private List<ResponsibilityPersistentInfo> getPersistentInfoList(@NotNull final List<STestRun> testRuns,
@@ -104,37 +191,45 @@ public class AssignerArtifactDao {
 
   @Nullable
   public Responsibility get(@Nullable SBuild firstFailedBuild, @NotNull STestRun testRun) {
-    List<ResponsibilityPersistentInfo> suggestions;
+    SBuild build = firstFailedBuild != null ? firstFailedBuild : testRun.getBuild();
+    long testNameId = testRun.getTest().getTestNameId();
+    ResponsibilityPersistentInfo persistentInfo;
     try {
-      Path resultsFilePath = firstFailedBuild != null ?
-                             myAssignerResultsFilePath.getIfExist(firstFailedBuild, testRun) :
-                             myAssignerResultsFilePath.getIfExist(testRun.getBuild(), testRun);
-
-      suggestions = mySuggestionsDao.read(resultsFilePath);
+      if (mySuggestionsStore.contains(build.getBuildId())) {
+        persistentInfo = mySuggestionsStore.find(build.getBuildId(), testNameId);
+      } else {
+        // suggestions of builds finished before the store was enabled are kept in the build artifacts
+        persistentInfo = find(myAssignerResultsFilePath.getIfExist(build, testRun), testNameId);
+      }
+      if (persistentInfo == null) {
+        persistentInfo = findPending(build.getBuildId(), testNameId);
+      }
+    } catch (NoSuchFileException ex) {
+      // the artifacts of the build were removed after the path was resolved
+      myAssignerResultsFilePath.invalidate(build);
+      return null;
     } catch (IOException ex) {
       LOGGER.warn(String.format("%s An error occurs during reading of file with results",
                                 Utils.getLogPrefix(testRun)), ex);
       return null;
     }
 
-    for (ResponsibilityPersistentInfo persistentInfo : suggestions) {
-      if (persistentInfo.testNameId.equals(String.valueOf(testRun.getTest().getTestNameId()))) {
-        if (persistentInfo.investigatorId.equals(Constants.ASSIGNEE_FILTERED_LITERAL)) {
+    if (persistentInfo != null) {
+      if (persistentInfo.investigatorId.equals(Constants.ASSIGNEE_FILTERED_LITERAL)) {
 
-          return TeamCityProperties.getBoolean(SHOULD_PERSIST_FILTERED_TESTS_DESCRIPTION) ?
-                 new Responsibility(myUserModel.getGuestUser(),
-                                    Constants.ASSIGNEE_FILTERED_DESCRIPTION_PREFIX + persistentInfo.reason) :
-                 null;
-        }
-        LOGGER.debug(String.format("%s Investigation for testRun %s was found",
-                                   Utils.getLogPrefix(testRun), testRun.getTestRunId()));
-        User user = myUserModel.findUserById(Long.parseLong(persistentInfo.investigatorId));
-        if (user == null) {
-          LOGGER.warn(String.format("%s User with id '%s' was not found in user model.", Utils.getLogPrefix(testRun),
-                                    persistentInfo.investigatorId));
-        }
-        return user != null ? new Responsibility(user, persistentInfo.reason) : null;
+        return TeamCityProperties.getBoolean(SHOULD_PERSIST_FILTERED_TESTS_DESCRIPTION) ?
+               new Responsibility(myUserModel.getGuestUser(),
+                                  Constants.ASSIGNEE_FILTERED_DESCRIPTION_PREFIX + persistentInfo.reason) :
+               null;
       }
+      LOGGER.debug(String.format("%s Investigation for testRun %s was found",
+                                 Utils.getLogPrefix(testRun), testRun.getTestRunId()));
+      User user = myUserModel.findUserById(Long.parseLong(persistentInfo.investigatorId));
+      if (user == null) {
+        LOGGER.warn(String.format("%s User with id '%s' was not found in user model.", Utils.getLogPrefix(testRun),
+                                  persistentInfo.investigatorId));
+      }
+      return user != null ? new Responsibility(user, persistentInfo.reason) : null;
     }
 
     if (LOGGER.isDebugEnabled()) {
@@ -144,6 +239,78 @@ public class AssignerArtifactDao {
     return null;
   }
 
+  /**
+   * A fast check which needs no reads. Builds processed on other nodes or before the server start are not known.
+   *
+   * @return true if it is known that the build has no suggestions.
+   */
+  public boolean isKnownWithoutSuggestions(@NotNull SBuild build) {
+    return mySuggestedBuilds.isKnownWithoutSuggestions(build.getBuildId());
+  }
+
+  @Nullable
+  private ResponsibilityPersistentInfo findPending(long buildId, long testNameId) {
+    PendingSuggestions pending = myPendingSuggestions.get(buildId);
+    if (pending == null) {
+      return null;
+    }
+
+    String testNameIdString = String.valueOf(testNameId);
+    for (ResponsibilityPersistentInfo info : pending.mySuggestions) {
+      if (testNameIdString.equals(info.testNameId)) {
+        return info;
+      }
+    }
+
+    return null;
+  }
+
+  @Nullable
+  private ResponsibilityPersistentInfo find(@Nullable Path resultsFilePath, long testNameId) throws IOException {
+    if (resultsFilePath == null) {
+      return null;
+    }
+
+    BasicFileAttributes attributes = Files.readAttributes(resultsFilePath, BasicFileAttributes.class);
+    if (!mySuggestionsCache.canCache(attributes.size())) {
+      return mySuggestionsDao.find(resultsFilePath, testNameId);
+    }
+
+    Map<String, ResponsibilityPersistentInfo> suggestions = mySuggestionsCache.get(resultsFilePath, attributes);
+    if (suggestions == null) {
+      suggestions = new HashMap<>();
+      for (ResponsibilityPersistentInfo info : mySuggestionsDao.read(resultsFilePath)) {
+        suggestions.putIfAbsent(info.testNameId, info);
+      }
+      mySuggestionsCache.put(resultsFilePath, attributes, suggestions);
+    }
+
+    return suggestions.get(String.valueOf(testNameId));
+  }
+
+  /**
+   * Writes suggestions buffered for the finished build and indexes them to speed up {@link #get}. No more suggestions
+   * are expected for the build afterwards.
+   */
+  public void completeBuild(@NotNull final SBuild build) {
+    flush(build.getBuildId());
+    try {
+      if (mySuggestionsStore.contains(build.getBuildId())) {
+        mySuggestedBuilds.markWithSuggestions(build.getBuildId());
+      } else {
+        Path resultsFilePath = myAssignerResultsFilePath.getIfExist(build, null);
+        if (resultsFilePath != null) {
+          // suggestions might be stored before the server restart
+          mySuggestedBuilds.markWithSuggestions(build.getBuildId());
+          mySuggestionsDao.writeIndex(resultsFilePath);
+        }
+      }
+      mySuggestedBuilds.markCompleted(build.getBuildId());
+    } catch (IOException ex) {
+      LOGGER.warn(String.format("Build id:%s :: An error occurs during indexing results", build.getBuildId()), ex);
+    }
+  }
+
   public void appendNotApplicableTestsDescription(@NotNull final SBuild build,
                                                   @NotNull final Map<Long, String> notApplicableTestsDescription) {
     doAppend(build, getPersistentInfoList(notApplicableTestsDescription));
@@ -161,5 +328,35 @@ public class AssignerArtifactDao {
 
     return result;
   }
-}
 
+  /**
+   * Suggestions of a build which are not written yet. Instances are immutable, so readers iterate them safely.
+   */
+  private static class PendingSuggestions {
+    @NotNull private final List<ResponsibilityPersistentInfo> mySuggestions;
+    private final long myBufferedSince;
+
+    private PendingSuggestions(@NotNull List<ResponsibilityPersistentInfo> suggestions) {
+      this(suggestions, System.currentTimeMillis());
+    }
+
+    private PendingSuggestions(@NotNull List<ResponsibilityPersistentInfo> suggestions, long bufferedSince) {
+      mySuggestions = Collections.unmodifiableList(new ArrayList<>(suggestions));
+      myBufferedSince = bufferedSince;
+    }
+
+    @NotNull
+    private PendingSuggestions plus(@NotNull PendingSuggestions added) {
+      List<ResponsibilityPersistentInfo> suggestions = new ArrayList<>(mySuggestions);
+      suggestions.addAll(added.mySuggestions);
+      return new PendingSuggestions(suggestions, myBufferedSince);
+    }
+
+    @Nullable
+    private PendingSuggestions minusFirst(int count) {
+      return count >= mySuggestions.size()
+             ? null
+             : new PendingSuggestions(mySuggestions.subList(count, mySuggestions.size()));
+    }
+  }
+}
@@ -19,14 +19,25 @@ package jetbrains.buildServer.investigationsAutoAssigner.persistent;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.log.LogUtil;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Resolves the file with suggestions in the build artifacts. Resolved paths are remembered per build, so lookups
+ * don't probe the file system again. That a build has no file is remembered for a limited time only, as the file may
+ * be created on another node. A remembered path to append to is resolved again if the file no longer exists.
+ */
 public class AssignerResultsFilePath {
+  private final Map<Long, CachedPath> myCachedPaths = new LinkedHashMap<>(16, 0.75f, true);
+
   @NotNull
   public Path get(@NotNull final SBuild build) throws IOException {
     Path resultPath = get(build, true, null);
@@ -43,10 +54,51 @@ public class AssignerResultsFilePath {
     return get(build, false, testRun);
   }
 
+  /**
+   * Forgets the resolved path of the build, e.g. when the file turned out to be deleted.
+   */
+  public synchronized void invalidate(@NotNull final SBuild build) {
+    myCachedPaths.remove(build.getBuildId());
+  }
+
   @Nullable
   private Path get(@NotNull final SBuild build,
                    boolean createIfNotExist,
                    @Nullable final STestRun testRun) throws IOException {
+    CachedPath cachedPath = getCached(build.getBuildId());
+    if (cachedPath != null && cachedPath.myPath != null) {
+      // a file to append to should still exist, the artifacts might be removed meanwhile
+      if (!createIfNotExist || Files.exists(cachedPath.myPath)) {
+        return cachedPath.myPath;
+      }
+    } else if (cachedPath != null && !createIfNotExist && !cachedPath.isExpired()) {
+      return null;
+    }
+
+    Path resultsPath = resolve(build, createIfNotExist, testRun);
+    putCached(build.getBuildId(), new CachedPath(resultsPath));
+    return resultsPath;
+  }
+
+  @Nullable
+  private synchronized CachedPath getCached(long buildId) {
+    return myCachedPaths.get(buildId);
+  }
+
+  private synchronized void putCached(long buildId, @NotNull CachedPath cachedPath) {
+    myCachedPaths.put(buildId, cachedPath);
+    int maxSize = TeamCityProperties.getInteger(Constants.RESULTS_PATH_CACHE_SIZE, Constants.DEFAULT_RESULTS_PATH_CACHE_SIZE);
+    Iterator<Long> eldest = myCachedPaths.keySet().iterator();
+    while (myCachedPaths.size() > maxSize && eldest.hasNext()) {
+      eldest.next();
+      eldest.remove();
+    }
+  }
+
+  @Nullable
+  private Path resolve(@NotNull final SBuild build,
+                       boolean createIfNotExist,
+                       @Nullable final STestRun testRun) throws IOException {
     Path artifactDirectoryPath = build.getArtifactsDirectory().toPath();
     Path teamcityDirectoryPath = artifactDirectoryPath.resolve(Constants.TEAMCITY_DIRECTORY);
     if (!Files.exists(teamcityDirectoryPath)) {
@@ -77,4 +129,21 @@ public class AssignerResultsFilePath {
     return resultsPath;
   }
 
+  private static class CachedPath {
+    /**
+     * Null if the build has no file with suggestions.
+     */
+    @Nullable private final Path myPath;
+    private final long myResolvedAt = System.currentTimeMillis();
+
+    private CachedPath(@Nullable Path path) {
+      myPath = path;
+    }
+
+    private boolean isExpired() {
+      long ttl = TeamCityProperties.getLong(Constants.RESULTS_PATH_MISSING_TTL_SECONDS,
+                                            Constants.DEFAULT_RESULTS_PATH_MISSING_TTL_SECONDS) * 1000;
+      return System.currentTimeMillis() - myResolvedAt >= ttl;
+    }
+  }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Finds where the complete gzip members of a file end, so a member truncated by a crash can be cut off.
+ */
+final class GzipMembers {
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+  private static final int TRAILER_SIZE = 8;
+
+  private GzipMembers() {
+  }
+
+  /**
+   * @return the length of the file up to the end of its last complete gzip member.
+   */
+  static long getCompleteLength(@NotNull Path path) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try (InputStream in = Files.newInputStream(path)) {
+      Input input = new Input(in);
+      long completeLength = 0;
+      while (input.fill()) {
+        if (!skipHeader(input) || !inflate(input, inflater) || !input.skip(TRAILER_SIZE)) {
+          break;
+        }
+        completeLength = input.getPosition();
+      }
+
+      return completeLength;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static boolean skipHeader(@NotNull Input input) throws IOException {
+    if (input.read() != (GZIPInputStream.GZIP_MAGIC & 0xff) ||
+        input.read() != (GZIPInputStream.GZIP_MAGIC >> 8) ||
+        input.read() != Deflater.DEFLATED) {
+      return false;
+    }
+
+    int flags = input.read();
+    // modification time, extra flags and operating system
+    if (flags == -1 || !input.skip(6)) {
+      return false;
+    }
+    if ((flags & FEXTRA) != 0) {
+      int low = input.read();
+      int high = input.read();
+      if (high == -1 || !input.skip(low | high << 8)) {
+        return false;
+      }
+    }
+    if ((flags & FNAME) != 0 && !input.skipZeroTerminated()) {
+      return false;
+    }
+    if ((flags & FCOMMENT) != 0 && !input.skipZeroTerminated()) {
+      return false;
+    }
+
+    return (flags & FHCRC) == 0 || input.skip(2);
+  }
+
+  private static boolean inflate(@NotNull Input input, @NotNull Inflater inflater) throws IOException {
+    inflater.reset();
+    byte[] output = new byte[8192];
+    while (!inflater.finished()) {
+      if (inflater.needsInput()) {
+        if (!input.fill()) {
+          return false;
+        }
+        inflater.setInput(input.myBuffer, input.myOffset, input.myLength - input.myOffset);
+        input.myOffset = input.myLength;
+      }
+      try {
+        inflater.inflate(output);
+      } catch (DataFormatException ex) {
+        return false;
+      }
+      if (inflater.needsDictionary()) {
+        return false;
+      }
+    }
+
+    // return the bytes following the compressed data
+    input.myOffset -= inflater.getRemaining();
+    return true;
+  }
+
+  private static class Input {
+    private final InputStream myIn;
+    private final byte[] myBuffer = new byte[8192];
+    private long myBufferPosition = 0;
+    private int myOffset = 0;
+    private int myLength = 0;
+
+    private Input(@NotNull InputStream in) {
+      myIn = in;
+    }
+
+    private boolean fill() throws IOException {
+      if (myOffset < myLength) {
+        return true;
+      }
+
+      myBufferPosition += myLength;
+      myOffset = 0;
+      myLength = Math.max(myIn.read(myBuffer), 0);
+      return myLength > 0;
+    }
+
+    private int read() throws IOException {
+      return fill() ? myBuffer[myOffset++] & 0xff : -1;
+    }
+
+    private boolean skip(int count) throws IOException {
+      for (int i = 0; i < count; i++) {
+        if (read() == -1) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private boolean skipZeroTerminated() throws IOException {
+      int nextByte = read();
+      while (nextByte > 0) {
+        nextByte = read();
+      }
+
+      return nextByte == 0;
+    }
+
+    private long getPosition() {
+      return myBufferPosition + myOffset;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import java.util.BitSet;
+
+/**
+ * Bitmaps of builds processed on this node since the server start: builds with stored suggestions and builds
+ * which won't get suggestions anymore. Bits are counted from the first build seen, earlier builds are unknown.
+ */
+class SuggestedBuilds {
+  private final BitSet myWithSuggestions = new BitSet();
+  private final BitSet myCompleted = new BitSet();
+  private long myFirstBuildId = -1;
+
+  synchronized void markWithSuggestions(long buildId) {
+    int index = getIndex(buildId);
+    if (index >= 0) {
+      myWithSuggestions.set(index);
+    }
+  }
+
+  synchronized void markCompleted(long buildId) {
+    int index = getIndex(buildId);
+    if (index >= 0) {
+      myCompleted.set(index);
+    }
+  }
+
+  /**
+   * @return true only if the build was completed on this node without suggestions, false if unknown.
+   */
+  synchronized boolean isKnownWithoutSuggestions(long buildId) {
+    if (myFirstBuildId < 0 || buildId < myFirstBuildId || buildId - myFirstBuildId > Integer.MAX_VALUE) {
+      return false;
+    }
+
+    int index = (int)(buildId - myFirstBuildId);
+    return myCompleted.get(index) && !myWithSuggestions.get(index);
+  }
+
+  private int getIndex(long buildId) {
+    if (myFirstBuildId < 0) {
+      myFirstBuildId = buildId;
+    }
+
+    long index = buildId - myFirstBuildId;
+    return index >= 0 && index <= Integer.MAX_VALUE ? (int)index : -1;
+  }
+}
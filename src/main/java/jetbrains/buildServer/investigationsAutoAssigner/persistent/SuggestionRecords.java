@@ -0,0 +1,170 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads and writes suggestion lines of one suggestions file.
+ * <p>
+ * Version 1 stores every suggestion as a full JSON object. Version 2 stores ids as numbers and refers to reasons
+ * by id, every reason is written once per file by a separate definition line before its first use:
+ * <pre>
+ * {"i":0,"s":"was the only committer to the build"}
+ * {"t":111,"u":1,"r":0}
+ * {"t":112,"r":0}
+ * </pre>
+ * A record without an investigator stands for a test filtered by the auto-assigner.
+ */
+class SuggestionRecords {
+  static final int FULL_RECORDS_VERSION = 1;
+  static final int COMPACT_RECORDS_VERSION = 2;
+  static final int CURRENT_VERSION = COMPACT_RECORDS_VERSION;
+  private static final String REASON_DEFINITION_PREFIX = "{\"i\":";
+
+  private final Gson myGson;
+  private final int myVersion;
+  private final Map<Integer, String> myReasonsById = new HashMap<>();
+  private final Map<String, Integer> myIdsByReason = new HashMap<>();
+  private int myNextReasonId = 0;
+
+  SuggestionRecords(@NotNull Gson gson, int version) {
+    myGson = gson;
+    myVersion = version;
+  }
+
+  static boolean isSupported(int version) {
+    return version == FULL_RECORDS_VERSION || version == COMPACT_RECORDS_VERSION;
+  }
+
+  boolean isReasonDefinition(@NotNull String line) {
+    return myVersion == COMPACT_RECORDS_VERSION && line.startsWith(REASON_DEFINITION_PREFIX);
+  }
+
+  /**
+   * @return the suggestion or null if the line defines a reason or is incomplete.
+   */
+  @Nullable
+  ResponsibilityPersistentInfo parse(@NotNull String line) {
+    Line parsed = parseLine(line);
+    return parsed != null ? parsed.myInfo : null;
+  }
+
+  @Nullable
+  Line parseLine(@NotNull String line) {
+    if (line.isEmpty()) return null;
+
+    try {
+      if (myVersion == FULL_RECORDS_VERSION) {
+        ResponsibilityPersistentInfo info = myGson.fromJson(line, ResponsibilityPersistentInfo.class);
+        return info != null && info.testNameId != null && info.investigatorId != null ? new Line(info, null) : null;
+      }
+
+      CompactLine compactLine = myGson.fromJson(line, CompactLine.class);
+      if (compactLine == null) {
+        return null;
+      } else if (compactLine.i != null && compactLine.s != null) {
+        defineReason(compactLine.i, compactLine.s);
+        return new Line(null, compactLine.i);
+      } else if (compactLine.t == null) {
+        return null;
+      }
+
+      String investigatorId = compactLine.u != null ? String.valueOf(compactLine.u) : Constants.ASSIGNEE_FILTERED_LITERAL;
+      String reason = compactLine.r != null ? myReasonsById.get(compactLine.r) : null;
+      return new Line(new ResponsibilityPersistentInfo(String.valueOf(compactLine.t), investigatorId, reason),
+                      compactLine.r);
+    } catch (JsonParseException ex) {
+      Constants.LOGGER.debug("Skipping incomplete suggestion record: " + line);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the suggestion preceded by the definition of its reason if the reason is new for the file.
+   */
+  void write(@NotNull Writer writer, @NotNull ResponsibilityPersistentInfo info) throws IOException {
+    if (myVersion == FULL_RECORDS_VERSION) {
+      myGson.toJson(info, writer);
+      writer.write('\n');
+      return;
+    }
+
+    CompactLine record = new CompactLine();
+    try {
+      record.t = Long.parseLong(info.testNameId);
+      record.u = Constants.ASSIGNEE_FILTERED_LITERAL.equals(info.investigatorId) ? null : Long.parseLong(info.investigatorId);
+    } catch (NumberFormatException ex) {
+      Constants.LOGGER.warn("Skipping suggestion with unexpected ids: test " + info.testNameId +
+                            ", investigator " + info.investigatorId);
+      return;
+    }
+
+    if (info.reason != null) {
+      Integer reasonId = myIdsByReason.get(info.reason);
+      if (reasonId == null) {
+        reasonId = myNextReasonId;
+        defineReason(reasonId, info.reason);
+        CompactLine definition = new CompactLine();
+        definition.i = reasonId;
+        definition.s = info.reason;
+        myGson.toJson(definition, writer);
+        writer.write('\n');
+      }
+      record.r = reasonId;
+    }
+
+    myGson.toJson(record, writer);
+    writer.write('\n');
+  }
+
+  private void defineReason(int reasonId, @NotNull String reason) {
+    myReasonsById.put(reasonId, reason);
+    myIdsByReason.putIfAbsent(reason, reasonId);
+    myNextReasonId = Math.max(myNextReasonId, reasonId + 1);
+  }
+
+  static class Line {
+    @Nullable final ResponsibilityPersistentInfo myInfo;
+    @Nullable final Integer myReasonId;
+
+    private Line(@Nullable ResponsibilityPersistentInfo info, @Nullable Integer reasonId) {
+      myInfo = info;
+      myReasonId = reasonId;
+    }
+
+    boolean isReasonDefinition() {
+      return myInfo == null;
+    }
+  }
+
+  private static class CompactLine {
+    Integer i;
+    String s;
+    Long t;
+    Long u;
+    Integer r;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps parsed suggestions of recently viewed builds, so the test details of one build are served by one parsing.
+ * The cache is limited by the estimated memory size of the parsed suggestions, which may differ from the size of
+ * a compact or compressed file a lot. An entry is used only while the size and the modification time of its file
+ * are unchanged.
+ */
+public class SuggestionsCache {
+  // a map node, a suggestion, and string objects of the test id, the investigator id and the reason
+  private static final int SUGGESTION_OVERHEAD = 200;
+  private final Map<Path, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong myHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
+  private long myCachedSize = 0;
+
+  /**
+   * @return false if the file is too large to be kept in memory, so it is not worth parsing to cache.
+   */
+  boolean canCache(long fileSize) {
+    return fileSize <= getMaxSize() / 8;
+  }
+
+  static long estimateSize(@NotNull Map<String, ResponsibilityPersistentInfo> suggestions) {
+    long size = 0;
+    for (Map.Entry<String, ResponsibilityPersistentInfo> entry : suggestions.entrySet()) {
+      ResponsibilityPersistentInfo info = entry.getValue();
+      size += SUGGESTION_OVERHEAD + 2L * (length(entry.getKey()) + length(info.investigatorId) + length(info.reason));
+    }
+
+    return size;
+  }
+
+  private static int length(@Nullable String value) {
+    return value == null ? 0 : value.length();
+  }
+
+  @Nullable
+  synchronized Map<String, ResponsibilityPersistentInfo> get(@NotNull Path resultsFilePath,
+                                                              @NotNull BasicFileAttributes attributes) {
+    Entry entry = myEntries.get(resultsFilePath);
+    if (entry == null || !entry.isUpToDate(attributes)) {
+      myMissCount.incrementAndGet();
+      return null;
+    }
+
+    myHitCount.incrementAndGet();
+    return entry.mySuggestions;
+  }
+
+  synchronized void put(@NotNull Path resultsFilePath,
+                        @NotNull BasicFileAttributes attributes,
+                        @NotNull Map<String, ResponsibilityPersistentInfo> suggestions) {
+    long estimatedSize = estimateSize(suggestions);
+    if (!canCache(estimatedSize)) {
+      return;
+    }
+
+    invalidate(resultsFilePath);
+    myEntries.put(resultsFilePath, new Entry(attributes, suggestions, estimatedSize));
+    myCachedSize += estimatedSize;
+
+    long maxSize = getMaxSize();
+    Iterator<Entry> eldestFirst = myEntries.values().iterator();
+    while (myCachedSize > maxSize && eldestFirst.hasNext()) {
+      myCachedSize -= eldestFirst.next().myEstimatedSize;
+      eldestFirst.remove();
+    }
+  }
+
+  synchronized void invalidate(@NotNull Path resultsFilePath) {
+    Entry removed = myEntries.remove(resultsFilePath);
+    if (removed != null) {
+      myCachedSize -= removed.myEstimatedSize;
+    }
+  }
+
+  public long getHitCount() {
+    return myHitCount.get();
+  }
+
+  public long getMissCount() {
+    return myMissCount.get();
+  }
+
+  private static long getMaxSize() {
+    return TeamCityProperties.getInteger(Constants.SUGGESTIONS_CACHE_SIZE_KB,
+                                         Constants.DEFAULT_SUGGESTIONS_CACHE_SIZE_KB) * 1024L;
+  }
+
+  private static class Entry {
+    private final long mySize;
+    private final FileTime myLastModifiedTime;
+    private final Map<String, ResponsibilityPersistentInfo> mySuggestions;
+    private final long myEstimatedSize;
+
+    private Entry(@NotNull BasicFileAttributes attributes,
+                  @NotNull Map<String, ResponsibilityPersistentInfo> suggestions,
+                  long estimatedSize) {
+      mySize = attributes.size();
+      myLastModifiedTime = attributes.lastModifiedTime();
+      mySuggestions = suggestions;
+      myEstimatedSize = estimatedSize;
+    }
+
+    private boolean isUpToDate(@NotNull BasicFileAttributes attributes) {
+      return mySize == attributes.size() && myLastModifiedTime.equals(attributes.lastModifiedTime());
+    }
+  }
+}
@@ -17,34 +17,209 @@
 package jetbrains.buildServer.investigationsAutoAssigner.persistent;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.serverSide.ServerSettings;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Suggestions are stored as JSON Lines: the first line is a header with the server UUID and the version of records,
+ * every next line is one record, see {@link SuggestionRecords}. So new suggestions are appended without reading
+ * the file, and a line truncated by a crash only loses itself. The file may be gzip-compressed, then every append
+ * adds a new gzip member, and a member truncated by a crash is cut off before the next append. Files written
+ * by previous versions as a single JSON object are still read and are converted on append.
+ * <p>
+ * Reasons defined in recently appended files are kept in memory while the files are not changed by others,
+ * so consecutive appends don't read the file.
+ */
 public class SuggestionsDao {
   private final Logger LOGGER = Constants.LOGGER;
+  static final String LINES_FORMAT = "lines";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final int MAX_APPENDED_FILES = 1000;
   private final ServerSettings mySettings;
+  private final SuggestionsIndexCache myIndexCache;
   private final Gson myGson;
+  private final Map<Path, AppendedFile> myAppendedFiles =
+    Collections.synchronizedMap(new LinkedHashMap<Path, AppendedFile>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Path, AppendedFile> eldest) {
+        return size() > MAX_APPENDED_FILES;
+      }
+    });
 
-  public SuggestionsDao(@NotNull final ServerSettings settings) {
+  public SuggestionsDao(@NotNull final ServerSettings settings,
+                        @NotNull final SuggestionsIndexCache indexCache) {
     mySettings = settings;
+    myIndexCache = indexCache;
     myGson = new Gson();
   }
 
   public void write(Path resultsFilePath, List<ResponsibilityPersistentInfo> infoToAdd) throws IOException {
-    try (BufferedWriter writer = Files.newBufferedWriter(resultsFilePath, StandardCharsets.UTF_8)) {
-      ArtifactContent artifactContent = new ArtifactContent(mySettings.getServerUUID(), infoToAdd);
-      myGson.toJson(artifactContent, writer);
+    write(resultsFilePath, infoToAdd, false);
+  }
+
+  private void write(@NotNull Path resultsFilePath,
+                     @NotNull List<ResponsibilityPersistentInfo> infoToAdd,
+                     boolean atomically) throws IOException {
+    boolean isCompressed = TeamCityProperties.getBoolean(Constants.SUGGESTIONS_GZIP_ENABLED);
+    SuggestionRecords records = new SuggestionRecords(myGson, SuggestionRecords.CURRENT_VERSION);
+    myAppendedFiles.remove(resultsFilePath);
+    Path targetPath = atomically ? resultsFilePath.resolveSibling(resultsFilePath.getFileName() + TEMP_FILE_SUFFIX)
+                                 : resultsFilePath;
+    try {
+      try (BufferedWriter writer = openWriter(targetPath, isCompressed, false)) {
+        myGson.toJson(new LinesHeader(mySettings.getServerUUID(), SuggestionRecords.CURRENT_VERSION), writer);
+        writer.write('\n');
+        writeRecords(writer, records, infoToAdd);
+      }
+      if (atomically) {
+        try {
+          Files.move(targetPath, resultsFilePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+          Files.move(targetPath, resultsFilePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    } finally {
+      if (atomically) {
+        Files.deleteIfExists(targetPath);
+      }
+    }
+    myAppendedFiles.put(resultsFilePath, new AppendedFile(resultsFilePath, records));
+    Path indexPath = getIndexPath(resultsFilePath);
+    Files.deleteIfExists(indexPath);
+    myIndexCache.invalidate(indexPath);
+  }
+
+  /**
+   * Adds suggestions to the end of the file. Only new suggestions are written unless the file has to be converted
+   * from the previous format or belongs to another server.
+   *
+   * @return true if the file did not contain suggestions before.
+   */
+  public boolean append(Path resultsFilePath, List<ResponsibilityPersistentInfo> infoToAdd) throws IOException {
+    return append(resultsFilePath, infoToAdd, false);
+  }
+
+  /**
+   * Same as {@link #append} but a file which has to be written from scratch is prepared as a temporary file which
+   * then replaces the previous one, so a crash in the middle of the write never leaves a file without a complete
+   * header. New suggestions are appended to an existing file as usual: a record damaged by a crash only loses itself.
+   *
+   * @return true if the file did not contain suggestions before.
+   */
+  public boolean appendAtomically(Path resultsFilePath, List<ResponsibilityPersistentInfo> infoToAdd)
+    throws IOException {
+    return append(resultsFilePath, infoToAdd, true);
+  }
+
+  private boolean append(@NotNull Path resultsFilePath,
+                         @NotNull List<ResponsibilityPersistentInfo> infoToAdd,
+                         boolean atomically) throws IOException {
+    Header header = readHeader(resultsFilePath);
+    if (header == null || !mySettings.getServerUUID().equals(header.serverUUID)) {
+      write(resultsFilePath, infoToAdd, atomically);
+      return true;
+    }
+
+    if (!header.isLinesFormat()) {
+      List<ResponsibilityPersistentInfo> previouslyAdded = read(resultsFilePath);
+      List<ResponsibilityPersistentInfo> allInfo = new ArrayList<>(previouslyAdded);
+      allInfo.addAll(infoToAdd);
+      write(resultsFilePath, allInfo, atomically);
+      return previouslyAdded.isEmpty();
+    }
+
+    SuggestionRecords records = getAppendedRecords(resultsFilePath, header);
+    boolean isLastLineComplete = header.isCompressed || endsWithLineSeparator(resultsFilePath);
+    try (BufferedWriter writer = openWriter(resultsFilePath, header.isCompressed, true)) {
+      if (!isLastLineComplete) {
+        // isolate the line truncated by a crash, so it doesn't corrupt the next record
+        writer.write('\n');
+      }
+      writeRecords(writer, records, infoToAdd);
+    }
+    myAppendedFiles.put(resultsFilePath, new AppendedFile(resultsFilePath, records));
+
+    return false;
+  }
+
+  /**
+   * @return records with reasons already defined in the file, which are referred by their ids. The file is read
+   * only if it was changed since the last write of this server. A damaged gzip member is cut off then, otherwise
+   * records appended after it could not be read.
+   */
+  @NotNull
+  private SuggestionRecords getAppendedRecords(@NotNull Path resultsFilePath, @NotNull Header header)
+    throws IOException {
+    AppendedFile appendedFile = myAppendedFiles.remove(resultsFilePath);
+    if (appendedFile != null && appendedFile.isUpToDate(resultsFilePath)) {
+      return appendedFile.myRecords;
+    }
+
+    if (header.isCompressed) {
+      truncateDamagedMember(resultsFilePath);
+    }
+
+    SuggestionRecords records = new SuggestionRecords(myGson, header.getVersion());
+    if (header.getVersion() == SuggestionRecords.COMPACT_RECORDS_VERSION) {
+      forEachLine(resultsFilePath, line -> {
+        if (records.isReasonDefinition(line)) {
+          records.parse(line);
+        }
+        return true;
+      });
+    }
+
+    return records;
+  }
+
+  private void truncateDamagedMember(@NotNull Path resultsFilePath) throws IOException {
+    long completeLength = GzipMembers.getCompleteLength(resultsFilePath);
+    try (SeekableByteChannel channel = Files.newByteChannel(resultsFilePath, StandardOpenOption.WRITE)) {
+      if (completeLength < channel.size()) {
+        LOGGER.warn(String.format("%s: Cutting off %s bytes of a gzip member damaged by a crash",
+                                  resultsFilePath, channel.size() - completeLength));
+        channel.truncate(completeLength);
+      }
     }
   }
 
@@ -52,25 +227,400 @@ public class SuggestionsDao {
   public List<ResponsibilityPersistentInfo> read(@Nullable Path resultsFilePath) throws IOException {
 
     if (resultsFilePath != null && Files.exists(resultsFilePath) && Files.size(resultsFilePath) != 0) {
-      try (BufferedReader reader = Files.newBufferedReader(resultsFilePath)) {
-        ArtifactContent artifactContent = myGson.fromJson(reader, ArtifactContent.class);
-        if (artifactContent == null || artifactContent.suggestions == null) {
-          return Collections.emptyList();
-        } else if (artifactContent.serverUUID == null ||
-                   !artifactContent.serverUUID.equals(mySettings.getServerUUID())) {
-          LOGGER.warn("%s: Server UUIDs don't match");
-          return Collections.emptyList();
+      Header header = readHeader(resultsFilePath);
+      if (header == null) {
+        return Collections.emptyList();
+      }
+
+      ArtifactContent artifactContent = header.isLinesFormat()
+                                        ? new ArtifactContent(header.serverUUID, readLines(resultsFilePath, header))
+                                        : readArtifactContent(resultsFilePath);
+      if (artifactContent == null || artifactContent.suggestions == null) {
+        return Collections.emptyList();
+      } else if (!isCurrentServer(resultsFilePath, artifactContent.serverUUID)) {
+        return Collections.emptyList();
+      } else {
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug(String.format("Read %s stored investigations", artifactContent.suggestions.size()));
+        }
+
+        return artifactContent.suggestions;
+      }
+    }
+
+    return Collections.emptyList();
+  }
+
+  /**
+   * Looks for the first suggestion for the test. Uses the index of the file when it is up to date and reads only
+   * the matching record, otherwise scans the file up to the first match.
+   */
+  @Nullable
+  public ResponsibilityPersistentInfo find(@Nullable Path resultsFilePath, long testNameId) throws IOException {
+    if (resultsFilePath == null || !Files.exists(resultsFilePath)) {
+      return null;
+    }
+
+    Header header = readHeader(resultsFilePath);
+    if (header == null) {
+      return null;
+    } else if (!header.isLinesFormat()) {
+      return scanArtifactContent(resultsFilePath, String.valueOf(testNameId));
+    } else if (!isCurrentServer(resultsFilePath, header.serverUUID)) {
+      return null;
+    }
+
+    SuggestionsIndex.Location location = SuggestionsIndex.NOT_INDEXED;
+    if (!header.isCompressed) {
+      location = myIndexCache.find(getIndexPath(resultsFilePath), Files.size(resultsFilePath), testNameId);
+    }
+    if (location == SuggestionsIndex.NOT_INDEXED) {
+      return scanLines(resultsFilePath, header, String.valueOf(testNameId));
+    } else if (location == null) {
+      return null;
+    }
+
+    SuggestionRecords records = new SuggestionRecords(myGson, header.getVersion());
+    if (location.myReasonOffset >= 0) {
+      records.parse(readLineAt(resultsFilePath, location.myReasonOffset));
+    }
+    return records.parse(readLineAt(resultsFilePath, location.myRecordOffset));
+  }
+
+  @Nullable
+  private ResponsibilityPersistentInfo scanLines(@NotNull Path resultsFilePath,
+                                                 @NotNull Header header,
+                                                 @NotNull String testNameId) throws IOException {
+    SuggestionRecords records = new SuggestionRecords(myGson, header.getVersion());
+    ResponsibilityPersistentInfo[] found = new ResponsibilityPersistentInfo[1];
+    forEachLine(resultsFilePath, line -> {
+      // parse only the lines which may contain the test
+      if (!records.isReasonDefinition(line) && !line.contains(testNameId)) return true;
+
+      ResponsibilityPersistentInfo info = records.parse(line);
+      if (info != null && testNameId.equals(info.testNameId)) {
+        found[0] = info;
+        return false;
+      }
+      return true;
+    });
+
+    return found[0];
+  }
+
+  /**
+   * Streams the file of the previous format and stops at the first matching suggestion instead of reading them all.
+   */
+  @Nullable
+  private ResponsibilityPersistentInfo scanArtifactContent(@NotNull Path resultsFilePath,
+                                                           @NotNull String testNameId) throws IOException {
+    String serverUUID = null;
+    ResponsibilityPersistentInfo found = null;
+    try (JsonReader reader = new JsonReader(openReader(resultsFilePath))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("serverUUID".equals(name) && reader.peek() == JsonToken.STRING) {
+          serverUUID = reader.nextString();
+          if (!isCurrentServer(resultsFilePath, serverUUID)) {
+            return null;
+          } else if (found != null) {
+            return found;
+          }
+        } else if ("suggestions".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY && found == null) {
+          reader.beginArray();
+          while (reader.hasNext() && found == null) {
+            ResponsibilityPersistentInfo info = myGson.fromJson(reader, ResponsibilityPersistentInfo.class);
+            if (info != null && testNameId.equals(info.testNameId)) {
+              found = info;
+            }
+          }
+
+          if (found != null && serverUUID != null) {
+            return found;
+          }
+          // the server UUID follows the suggestions
+          while (reader.hasNext()) {
+            reader.skipValue();
+          }
+          reader.endArray();
         } else {
-          if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug(String.format("Read %s stored investigations", artifactContent.suggestions.size()));
+          reader.skipValue();
+        }
+      }
+    } catch (EOFException | MalformedJsonException | IllegalStateException | JsonParseException ex) {
+      LOGGER.debug("Malformed suggestions file " + resultsFilePath + ": " + ex.getMessage());
+      return null;
+    }
+
+    return serverUUID != null ? found : null;
+  }
+
+  private boolean isCurrentServer(@NotNull Path resultsFilePath, @Nullable String serverUUID) {
+    if (serverUUID == null || !serverUUID.equals(mySettings.getServerUUID())) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("%s: Server UUIDs don't match", resultsFilePath));
+      }
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Writes the index for {@link #find}. Should be called when no more suggestions are expected for the file,
+   * a later append makes the index outdated. Compressed files are not indexed.
+   */
+  public void writeIndex(@NotNull Path resultsFilePath) throws IOException {
+    Header header = readHeader(resultsFilePath);
+    if (header == null || !header.isLinesFormat() || header.isCompressed) {
+      return;
+    }
+
+    SuggestionRecords records = new SuggestionRecords(myGson, header.getVersion());
+    Map<Integer, Long> reasonOffsets = new HashMap<>();
+    SortedMap<Long, SuggestionsIndex.Location> locationsByTestNameId = new TreeMap<>();
+    long indexedFileSize;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(resultsFilePath))) {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      long position = 0;
+      long lineStart = 0;
+      int nextByte;
+      while ((nextByte = in.read()) != -1) {
+        position++;
+        if (nextByte != '\n') {
+          line.write(nextByte);
+          continue;
+        }
+
+        // the first line is the header
+        SuggestionRecords.Line parsed = lineStart == 0 ? null : records.parseLine(line.toString("UTF-8"));
+        if (parsed != null && parsed.isReasonDefinition()) {
+          reasonOffsets.put(parsed.myReasonId, lineStart);
+        } else if (parsed != null) {
+          long reasonOffset = parsed.myReasonId != null ? reasonOffsets.getOrDefault(parsed.myReasonId, -1L) : -1;
+          try {
+            locationsByTestNameId.putIfAbsent(Long.parseLong(parsed.myInfo.testNameId),
+                                              new SuggestionsIndex.Location(lineStart, reasonOffset));
+          } catch (NumberFormatException ignored) {
           }
+        }
+        line.reset();
+        lineStart = position;
+      }
+      indexedFileSize = position;
+    }
 
-          return artifactContent.suggestions;
+    Path indexPath = getIndexPath(resultsFilePath);
+    SuggestionsIndex.write(indexPath, indexedFileSize, locationsByTestNameId);
+    myIndexCache.invalidate(indexPath);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Indexed %s stored investigations in %s", locationsByTestNameId.size(), resultsFilePath));
+    }
+  }
+
+  @NotNull
+  private static Path getIndexPath(@NotNull Path resultsFilePath) {
+    return resultsFilePath.resolveSibling(Constants.ARTIFACT_INDEX_FILENAME);
+  }
+
+  @NotNull
+  private static String readLineAt(@NotNull Path path, long offset) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+      channel.position(offset);
+      ByteBuffer buffer = ByteBuffer.allocate(512);
+      while (channel.read(buffer) > 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          byte nextByte = buffer.get();
+          if (nextByte == '\n') {
+            return line.toString("UTF-8");
+          }
+          line.write(nextByte);
         }
+        buffer.clear();
       }
     }
 
-    return Collections.emptyList();
+    return line.toString("UTF-8");
+  }
+
+  @NotNull
+  private List<ResponsibilityPersistentInfo> readLines(@NotNull Path resultsFilePath,
+                                                       @NotNull Header header) throws IOException {
+    SuggestionRecords records = new SuggestionRecords(myGson, header.getVersion());
+    List<ResponsibilityPersistentInfo> result = new ArrayList<>();
+    forEachLine(resultsFilePath, line -> {
+      ResponsibilityPersistentInfo info = records.parse(line);
+      if (info != null) {
+        result.add(info);
+      }
+      return true;
+    });
+
+    return result;
+  }
+
+  /**
+   * Passes the lines following the header to the processor until it returns false. A compressed file truncated
+   * by a crash is read up to the damaged part.
+   */
+  private void forEachLine(@NotNull Path resultsFilePath, @NotNull Predicate<String> processor) throws IOException {
+    try (BufferedReader reader = openReader(resultsFilePath)) {
+      reader.readLine(); // header
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!processor.test(line)) {
+          return;
+        }
+      }
+    } catch (EOFException | ZipException ex) {
+      LOGGER.debug("Suggestions file " + resultsFilePath + " is truncated: " + ex.getMessage());
+    }
+  }
+
+  @Nullable
+  private ArtifactContent readArtifactContent(@NotNull Path resultsFilePath) throws IOException {
+    try (BufferedReader reader = openReader(resultsFilePath)) {
+      return myGson.fromJson(reader, ArtifactContent.class);
+    }
+  }
+
+  /**
+   * Reads the server UUID and the format of the file without reading suggestions.
+   *
+   * @return null if the file is empty or doesn't start with a valid header.
+   */
+  @Nullable
+  private static Header readHeader(@NotNull Path resultsFilePath) throws IOException {
+    if (!Files.exists(resultsFilePath) || Files.size(resultsFilePath) == 0) {
+      return null;
+    }
+
+    try (JsonReader reader = new JsonReader(openReader(resultsFilePath))) {
+      Header header = new Header();
+      header.isCompressed = isCompressed(resultsFilePath);
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("suggestions".equals(name)) {
+          // the previous format, suggestions follow the header fields
+          return header;
+        } else if ("serverUUID".equals(name) && reader.peek() == JsonToken.STRING) {
+          header.serverUUID = reader.nextString();
+        } else if ("format".equals(name) && reader.peek() == JsonToken.STRING) {
+          header.format = reader.nextString();
+        } else if ("version".equals(name) && reader.peek() == JsonToken.NUMBER) {
+          header.version = reader.nextInt();
+        } else {
+          reader.skipValue();
+        }
+      }
+
+      if (header.isLinesFormat() && !SuggestionRecords.isSupported(header.getVersion())) {
+        Constants.LOGGER.warn("Unsupported version " + header.version + " of suggestions file " + resultsFilePath);
+        return null;
+      }
+      return header;
+    } catch (EOFException | ZipException | MalformedJsonException | IllegalStateException | JsonParseException ex) {
+      return null;
+    }
+  }
+
+  private static boolean isCompressed(@NotNull Path path) throws IOException {
+    try (InputStream in = Files.newInputStream(path)) {
+      return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) && in.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+  }
+
+  @NotNull
+  private static BufferedReader openReader(@NotNull Path path) throws IOException {
+    InputStream in = Files.newInputStream(path);
+    try {
+      InputStream content = isCompressed(path) ? new GZIPInputStream(in) : in;
+      return new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      in.close();
+      throw ex;
+    }
+  }
+
+  @NotNull
+  private static BufferedWriter openWriter(@NotNull Path path, boolean isCompressed, boolean isAppend)
+    throws IOException {
+    OutputStream out = isAppend ? Files.newOutputStream(path, StandardOpenOption.APPEND) : Files.newOutputStream(path);
+    try {
+      OutputStream content = isCompressed ? new GZIPOutputStream(out) : out;
+      return new BufferedWriter(new OutputStreamWriter(content, StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      out.close();
+      throw ex;
+    }
+  }
+
+  private static boolean endsWithLineSeparator(@NotNull Path path) throws IOException {
+    try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size == 0) return true;
+
+      ByteBuffer lastByte = ByteBuffer.allocate(1);
+      channel.position(size - 1);
+      channel.read(lastByte);
+      return lastByte.get(0) == '\n';
+    }
+  }
+
+  private static void writeRecords(@NotNull BufferedWriter writer,
+                                   @NotNull SuggestionRecords records,
+                                   @NotNull List<ResponsibilityPersistentInfo> infoToAdd) throws IOException {
+    for (ResponsibilityPersistentInfo info : infoToAdd) {
+      records.write(writer, info);
+    }
+  }
+
+  private static class AppendedFile {
+    private final long mySize;
+    private final FileTime myLastModifiedTime;
+    private final SuggestionRecords myRecords;
+
+    private AppendedFile(@NotNull Path path, @NotNull SuggestionRecords records) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      mySize = attributes.size();
+      myLastModifiedTime = attributes.lastModifiedTime();
+      myRecords = records;
+    }
+
+    private boolean isUpToDate(@NotNull Path path) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return mySize == attributes.size() && myLastModifiedTime.equals(attributes.lastModifiedTime());
+    }
+  }
+
+  private static class Header {
+    String serverUUID;
+    String format;
+    Integer version;
+    boolean isCompressed;
+
+    boolean isLinesFormat() {
+      return LINES_FORMAT.equals(format);
+    }
+
+    int getVersion() {
+      return version != null ? version : SuggestionRecords.FULL_RECORDS_VERSION;
+    }
+  }
+
+  private static class LinesHeader {
+    String serverUUID;
+    String format = LINES_FORMAT;
+    int version;
+
+    private LinesHeader(String serverUUID, int version) {
+      this.serverUUID = serverUUID;
+      this.version = version;
+    }
   }
 
   private static class ArtifactContent {
@@ -83,4 +633,3 @@ public class SuggestionsDao {
     }
   }
 }
-
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Binary index of a suggestions file: testNameIds sorted ascending with the offsets of their records and of
+ * the definitions of their reasons. The index remembers the size of the indexed file and is ignored once the file
+ * has changed.
+ */
+class SuggestionsIndex {
+  static final Location NOT_INDEXED = new Location(-1, -1);
+
+  private static final int MAGIC = 0x53494458;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 24;
+  private static final int ENTRY_SIZE = 24;
+
+  private SuggestionsIndex() {
+  }
+
+  static void write(@NotNull Path indexPath,
+                    long indexedFileSize,
+                    @NotNull SortedMap<Long, Location> locationsByTestNameId) throws IOException {
+    Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(indexedFileSize);
+      out.writeLong(locationsByTestNameId.size());
+      for (Map.Entry<Long, Location> entry : locationsByTestNameId.entrySet()) {
+        out.writeLong(entry.getKey());
+        out.writeLong(entry.getValue().myRecordOffset);
+        out.writeLong(entry.getValue().myReasonOffset);
+      }
+    }
+
+    Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Same as {@link #find(ByteBuffer, long, long)}, but reads only the header and the entries visited by the binary
+   * search from the file.
+   *
+   * @return location of the record, null if there is no record for the test or {@link #NOT_INDEXED}
+   * if the index is missing or doesn't match the file of the given size.
+   */
+  @Nullable
+  static Location find(@NotNull Path indexPath, long indexedFileSize, long testNameId) throws IOException {
+    try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      if (!readFully(channel, header, 0) ||
+          header.getInt(0) != MAGIC ||
+          header.getInt(4) != VERSION ||
+          header.getLong(8) != indexedFileSize) {
+        return NOT_INDEXED;
+      }
+
+      long count = header.getLong(16);
+      if (count < 0 || HEADER_SIZE + count * ENTRY_SIZE != channel.size()) {
+        return NOT_INDEXED;
+      }
+
+      ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+      long low = 0;
+      long high = count - 1;
+      while (low <= high) {
+        long middle = (low + high) >>> 1;
+        entry.clear();
+        if (!readFully(channel, entry, HEADER_SIZE + middle * ENTRY_SIZE)) {
+          return NOT_INDEXED;
+        }
+
+        long middleTestNameId = entry.getLong(0);
+        if (middleTestNameId < testNameId) {
+          low = middle + 1;
+        } else if (middleTestNameId > testNameId) {
+          high = middle - 1;
+        } else {
+          return new Location(entry.getLong(8), entry.getLong(16));
+        }
+      }
+
+      return null;
+    } catch (NoSuchFileException ex) {
+      return NOT_INDEXED;
+    }
+  }
+
+  /**
+   * @return location of the record, null if there is no record for the test or {@link #NOT_INDEXED}
+   * if the index doesn't match the file of the given size.
+   */
+  @Nullable
+  static Location find(@NotNull ByteBuffer index, long indexedFileSize, long testNameId) {
+    if (index.limit() < HEADER_SIZE ||
+        index.getInt(0) != MAGIC ||
+        index.getInt(4) != VERSION ||
+        index.getLong(8) != indexedFileSize) {
+      return NOT_INDEXED;
+    }
+
+    long count = index.getLong(16);
+    if (count < 0 || HEADER_SIZE + count * ENTRY_SIZE != index.limit()) {
+      return NOT_INDEXED;
+    }
+
+    // absolute reads only, the buffer is shared by concurrent lookups
+    long low = 0;
+    long high = count - 1;
+    while (low <= high) {
+      long middle = (low + high) >>> 1;
+      int entryOffset = (int)(HEADER_SIZE + middle * ENTRY_SIZE);
+      long middleTestNameId = index.getLong(entryOffset);
+      if (middleTestNameId < testNameId) {
+        low = middle + 1;
+      } else if (middleTestNameId > testNameId) {
+        high = middle - 1;
+      } else {
+        return new Location(index.getLong(entryOffset + 8), index.getLong(entryOffset + 16));
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position)
+    throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  static class Location {
+    final long myRecordOffset;
+    /**
+     * Offset of the line defining the reason of the record, -1 if the reason is stored in the record.
+     */
+    final long myReasonOffset;
+
+    Location(long recordOffset, long reasonOffset) {
+      myRecordOffset = recordOffset;
+      myReasonOffset = reasonOffset;
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
+import jetbrains.buildServer.serverSide.SFinishedBuild;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Looks up records in suggestion indexes. Indexes are written only for files too large for {@link SuggestionsCache},
+ * so by default a lookup reads only the header and the entries visited by the binary search from the index file.
+ * When mapping is enabled, the recently used indexes are kept memory-mapped, so a lookup needs neither file reads
+ * nor allocations. A mapping is unmapped as soon as it is dropped from the cache and no lookup uses it.
+ */
+public class SuggestionsIndexCache {
+  private static final Logger LOGGER = Constants.LOGGER;
+  private final Map<Path, MappedIndex> myIndexes = new LinkedHashMap<>(16, 0.75f, true);
+  // incremented on each invalidation, so an index mapped before it is not cached
+  private long myVersion;
+
+  public SuggestionsIndexCache(@NotNull final BuildServerListenerEventDispatcher buildServerListenerEventDispatcher) {
+    buildServerListenerEventDispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void entryDeleted(@NotNull final SFinishedBuild oldEntry) {
+        invalidateDirectory(oldEntry.getArtifactsDirectory().toPath());
+      }
+    });
+  }
+
+  SuggestionsIndexCache() {
+  }
+
+  /**
+   * @return location of the record, null if there is no record for the test or {@link SuggestionsIndex#NOT_INDEXED}
+   * if the index is missing or doesn't match the file of the given size.
+   */
+  @Nullable
+  SuggestionsIndex.Location find(@NotNull Path indexPath, long indexedFileSize, long testNameId) throws IOException {
+    if (!isMappingEnabled()) {
+      return SuggestionsIndex.find(indexPath, indexedFileSize, testNameId);
+    }
+
+    MappedIndex index = acquire(indexPath);
+    if (index == null) {
+      return SuggestionsIndex.NOT_INDEXED;
+    }
+
+    try {
+      return SuggestionsIndex.find(index.myBuffer, indexedFileSize, testNameId);
+    } finally {
+      release(index);
+    }
+  }
+
+  /**
+   * @return mapped index which can't be unmapped until it is {@link #release(MappedIndex) released},
+   * null if there is no index.
+   */
+  @Nullable
+  MappedIndex acquire(@NotNull Path indexPath) throws IOException {
+    final long version;
+    synchronized (this) {
+      MappedIndex index = myIndexes.get(indexPath);
+      if (index != null) {
+        index.myReferences++;
+        return index;
+      }
+      version = myVersion;
+    }
+
+    ByteBuffer buffer = map(indexPath);
+    if (buffer == null) {
+      return null;
+    }
+
+    // one reference is held by the caller and one by the cache
+    MappedIndex index = new MappedIndex(buffer, 2);
+    List<MappedIndex> evicted = new ArrayList<>();
+    synchronized (this) {
+      MappedIndex cached = myIndexes.get(indexPath);
+      if (cached != null) {
+        cached.myReferences++;
+        evicted.add(index);
+        index = cached;
+      } else if (version != myVersion) {
+        index.myReferences--;
+      } else {
+        myIndexes.put(indexPath, index);
+        int maxSize = TeamCityProperties.getInteger(Constants.SUGGESTIONS_INDEX_CACHE_SIZE,
+                                                    Constants.DEFAULT_SUGGESTIONS_INDEX_CACHE_SIZE);
+        Iterator<MappedIndex> eldest = myIndexes.values().iterator();
+        while (myIndexes.size() > maxSize && eldest.hasNext()) {
+          MappedIndex eldestIndex = eldest.next();
+          eldest.remove();
+          if (--eldestIndex.myReferences == 0) {
+            evicted.add(eldestIndex);
+          }
+        }
+      }
+    }
+
+    evicted.forEach(evictedIndex -> unmap(evictedIndex.myBuffer));
+    return index;
+  }
+
+  void release(@NotNull MappedIndex index) {
+    synchronized (this) {
+      if (--index.myReferences > 0) {
+        return;
+      }
+    }
+
+    unmap(index.myBuffer);
+  }
+
+  void invalidate(@NotNull Path indexPath) {
+    List<MappedIndex> dropped = new ArrayList<>();
+    synchronized (this) {
+      myVersion++;
+      drop(myIndexes.remove(indexPath), dropped);
+    }
+
+    dropped.forEach(index -> unmap(index.myBuffer));
+  }
+
+  void invalidateDirectory(@NotNull Path directory) {
+    List<MappedIndex> dropped = new ArrayList<>();
+    synchronized (this) {
+      myVersion++;
+      Iterator<Map.Entry<Path, MappedIndex>> entries = myIndexes.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<Path, MappedIndex> entry = entries.next();
+        if (entry.getKey().startsWith(directory)) {
+          entries.remove();
+          drop(entry.getValue(), dropped);
+        }
+      }
+    }
+
+    dropped.forEach(index -> unmap(index.myBuffer));
+  }
+
+  synchronized int size() {
+    return myIndexes.size();
+  }
+
+  private static void drop(@Nullable MappedIndex index, @NotNull List<MappedIndex> unused) {
+    if (index != null && --index.myReferences == 0) {
+      unused.add(index);
+    }
+  }
+
+  @Nullable
+  ByteBuffer map(@NotNull Path indexPath) throws IOException {
+    try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Suggestions index is too large: " + indexPath);
+      }
+
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (NoSuchFileException ex) {
+      return null;
+    } catch (UnsupportedOperationException ex) {
+      // the file system doesn't support mapping
+      return ByteBuffer.wrap(Files.readAllBytes(indexPath));
+    }
+  }
+
+  /**
+   * Releases the mapping right away instead of waiting for the buffer to be collected. Must be called only when
+   * no lookup uses the buffer: an access to an unmapped buffer crashes the JVM.
+   */
+  void unmap(@NotNull ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      return;
+    }
+
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException ex) {
+        // Java 8
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        return;
+      }
+
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (Exception ex) {
+      LOGGER.debug("Failed to unmap a suggestions index, it is released when the buffer is collected", ex);
+    }
+  }
+
+  /**
+   * Disabled by default: a mapped file can't be deleted on Windows until it is unmapped, which breaks the cleanup
+   * of build artifacts while the index is cached, and an access to a mapped file on a network share which became
+   * unavailable crashes the JVM instead of throwing an {@link IOException}.
+   */
+  private static boolean isMappingEnabled() {
+    return TeamCityProperties.getBoolean(Constants.SUGGESTIONS_INDEX_MMAP_ENABLED);
+  }
+
+  static final class MappedIndex {
+    @NotNull final ByteBuffer myBuffer;
+    // guarded by the cache
+    private int myReferences;
+
+    private MappedIndex(@NotNull final ByteBuffer buffer, final int references) {
+      myBuffer = buffer;
+      myReferences = references;
+    }
+  }
+}
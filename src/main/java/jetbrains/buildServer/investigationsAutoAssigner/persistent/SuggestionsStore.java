@@ -0,0 +1,913 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
+import jetbrains.buildServer.serverSide.SFinishedBuild;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.serverSide.ServerResponsibility;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.executors.ExecutorServices;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Server-wide storage of suggestions, an alternative to the per-build artifact files. Suggestions of all builds are
+ * appended as JSON lines to segment files under the plugin data directory. Records of deleted builds are dropped by
+ * compaction after the build history cleanup.
+ * <p>
+ * The in-memory index keeps only the positions of the records of each build, which are mostly written by a few
+ * appends in a row. Records are parsed on lookups, parsed records of recently viewed builds are kept up to a limit.
+ * <p>
+ * Only the node processing builds writes to the store. Other nodes follow the records it appends and reload the store
+ * after its compaction, they never change the files. Loading, following and compaction read the files without holding
+ * the lock of the index, so lookups are not blocked by them: lookups made before the store is loaded find nothing.
+ */
+public class SuggestionsStore {
+  private static final Logger LOGGER = Constants.LOGGER;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final int MAX_PARSED_RECORDS = 100_000;
+
+  private final Path myDirectory;
+  private final BooleanSupplier myIsWriter;
+  private final Executor myExecutor;
+  private final Gson myGson = new Gson();
+  // guards the segments and the index, held for in-memory updates, appends and reads of a single build
+  private final ReadWriteLock myLock = new ReentrantReadWriteLock();
+  // serializes loading, following and compaction
+  private final ReentrantLock myMaintenanceLock = new ReentrantLock();
+  private final AtomicBoolean myIsMaintenanceScheduled = new AtomicBoolean();
+  private final TreeMap<Integer, Segment> mySegments = new TreeMap<>();
+  private final Map<Long, BuildRecords> myIndex = new HashMap<>();
+  private final LinkedHashMap<Long, Map<Long, ResponsibilityPersistentInfo>> myParsedBuilds =
+    new LinkedHashMap<>(16, 0.75f, true);
+  private int myParsedRecordsCount = 0;
+  private volatile long myModificationCount = 0;
+  private volatile boolean myIsLoaded = false;
+  private volatile boolean myIsLoadedAsWriter = false;
+  private volatile long myLastRefreshTime = 0;
+  private int myFirstWritableSegmentId = 0;
+  @Nullable private Set<Long> myRemovedDuringCompaction;
+
+  public SuggestionsStore(@NotNull final ServerPaths serverPaths,
+                          @NotNull final BuildServerListenerEventDispatcher buildServerListenerEventDispatcher,
+                          @NotNull final ServerResponsibility serverResponsibility,
+                          @NotNull final ExecutorServices executorServices) {
+    this(Paths.get(serverPaths.getPluginDataDirectory().getPath())
+              .resolve(Constants.PLUGIN_DATA_DIR)
+              .resolve(Constants.SUGGESTIONS_STORE_DIRECTORY),
+         serverResponsibility::canSendNotifications,
+         executorServices.getNormalExecutorService());
+    buildServerListenerEventDispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void serverStartup() {
+        if (isEnabled() || Files.isDirectory(myDirectory)) {
+          scheduleMaintenance();
+        }
+      }
+
+      @Override
+      public void entryDeleted(@NotNull final SFinishedBuild oldEntry) {
+        remove(oldEntry.getBuildId());
+      }
+
+      @Override
+      public void cleanupFinished() {
+        compactIfNeeded();
+      }
+
+      @Override
+      public void serverShutdown() {
+        close();
+      }
+    });
+  }
+
+  SuggestionsStore(@NotNull final Path directory) {
+    this(directory, () -> true, Runnable::run);
+  }
+
+  SuggestionsStore(@NotNull final Path directory,
+                   @NotNull final BooleanSupplier isWriter,
+                   @NotNull final Executor executor) {
+    myDirectory = directory;
+    myIsWriter = isWriter;
+    myExecutor = executor;
+  }
+
+  public boolean isEnabled() {
+    return TeamCityProperties.getBoolean(Constants.SUGGESTIONS_STORE_ENABLED);
+  }
+
+  /**
+   * @return true if the build did not have stored suggestions before.
+   */
+  public boolean append(long buildId, @NotNull List<ResponsibilityPersistentInfo> infoToAdd) throws IOException {
+    if (!myIsWriter.getAsBoolean()) {
+      throw new IOException("Suggestions are stored only by the node processing builds");
+    }
+
+    loadAsWriter();
+    myLock.writeLock().lock();
+    try {
+      BuildRecords buildRecords = myIndex.get(buildId);
+      boolean isFirstAppend = buildRecords == null;
+      if (buildRecords == null) {
+        buildRecords = new BuildRecords();
+      }
+
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      for (ResponsibilityPersistentInfo info : infoToAdd) {
+        try {
+          Long.parseLong(info.testNameId);
+        } catch (NumberFormatException ex) {
+          LOGGER.warn(String.format("Build id:%s :: Skip suggestion with unexpected test name id %s", buildId, info.testNameId));
+          continue;
+        }
+
+        byte[] line = toLine(new StoredRecord(buildId, info));
+        content.write(line, 0, line.length);
+      }
+      if (content.size() == 0) {
+        return isFirstAppend;
+      }
+
+      Segment segment = getSegmentToAppend();
+      long offset = segment.myLength;
+      write(segment, content.toByteArray());
+      buildRecords.add(segment.myId, offset, content.size());
+      myIndex.put(buildId, buildRecords);
+      invalidateParsed(buildId);
+      return isFirstAppend;
+    } finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return true if suggestions of the build are stored here rather than in the build artifacts.
+   */
+  public boolean contains(long buildId) throws IOException {
+    if (!myIsLoaded && !isEnabled()) {
+      return false;
+    }
+
+    scheduleMaintenance();
+    myLock.readLock().lock();
+    try {
+      return myIndex.containsKey(buildId);
+    } finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  @Nullable
+  public ResponsibilityPersistentInfo find(long buildId, long testNameId) throws IOException {
+    if (!myIsLoaded && !isEnabled()) {
+      return null;
+    }
+
+    scheduleMaintenance();
+    Map<Long, ResponsibilityPersistentInfo> parsed = getParsed(buildId);
+    if (parsed == null) {
+      long modificationCount;
+      byte[] content;
+      myLock.readLock().lock();
+      try {
+        BuildRecords buildRecords = myIndex.get(buildId);
+        if (buildRecords == null) {
+          return null;
+        }
+
+        modificationCount = myModificationCount;
+        content = read(buildRecords);
+      } finally {
+        myLock.readLock().unlock();
+      }
+
+      parsed = parse(buildId, content);
+      putParsed(buildId, parsed, modificationCount);
+    }
+
+    return parsed.get(testNameId);
+  }
+
+  void remove(long buildId) {
+    if (!myIsLoaded && !isEnabled()) {
+      return;
+    }
+
+    boolean isWriter = myIsWriter.getAsBoolean();
+    try {
+      if (isWriter) {
+        // the removal is persisted, so the records of the build are not restored by the next load
+        loadAsWriter();
+      }
+
+      myLock.writeLock().lock();
+      try {
+        BuildRecords buildRecords = myIndex.remove(buildId);
+        if (buildRecords == null) {
+          return;
+        }
+
+        myModificationCount++;
+        invalidateParsed(buildId);
+        if (myRemovedDuringCompaction != null) {
+          myRemovedDuringCompaction.add(buildId);
+        }
+        if (isWriter && myIsLoadedAsWriter) {
+          write(getSegmentToAppend(), toLine(StoredRecord.removal(buildId)));
+        }
+      } finally {
+        myLock.writeLock().unlock();
+      }
+    } catch (IOException ex) {
+      LOGGER.warn(String.format("Build id:%s :: An error occurs during removing stored suggestions", buildId), ex);
+    }
+  }
+
+  void compactIfNeeded() {
+    if (!myIsLoadedAsWriter || !myIsWriter.getAsBoolean()) {
+      return;
+    }
+
+    myMaintenanceLock.lock();
+    try {
+      long totalBytes = 0;
+      long liveBytes = 0;
+      myLock.readLock().lock();
+      try {
+        for (Segment segment : mySegments.values()) {
+          totalBytes += segment.myLength;
+        }
+        for (BuildRecords buildRecords : myIndex.values()) {
+          liveBytes += buildRecords.myBytes;
+        }
+      } finally {
+        myLock.readLock().unlock();
+      }
+
+      long deadBytes = totalBytes - liveBytes;
+      if (!myIsLoadedAsWriter ||
+          deadBytes <= 0 ||
+          deadBytes * 100 < totalBytes * Constants.SUGGESTIONS_STORE_COMPACTION_DEAD_PERCENT) {
+        return;
+      }
+
+      compact(totalBytes);
+    } catch (IOException ex) {
+      LOGGER.warn("An error occurs during compaction of stored suggestions", ex);
+    } finally {
+      myMaintenanceLock.unlock();
+    }
+  }
+
+  /**
+   * Rewrites records of existing builds to a new segment and deletes the previous segments. Records appended meanwhile
+   * go to the segments following the new one, so lookups and appends are not blocked while the records are copied.
+   * The new segment gets its name only when it is complete, so an interrupted compaction leaves the previous segments
+   * untouched.
+   */
+  private void compact(long previousTotalBytes) throws IOException {
+    int compactedSegmentId;
+    TreeMap<Integer, Segment> compactedSegments;
+    Map<Long, List<Chunk>> compactedChunks = new HashMap<>();
+    myLock.writeLock().lock();
+    try {
+      compactedSegments = new TreeMap<>(mySegments);
+      compactedSegmentId = mySegments.isEmpty() ? 0 : mySegments.lastKey() + 1;
+      myFirstWritableSegmentId = compactedSegmentId + 1;
+      myRemovedDuringCompaction = new HashSet<>();
+      for (Map.Entry<Long, BuildRecords> buildEntry : myIndex.entrySet()) {
+        List<Chunk> chunks = new ArrayList<>();
+        for (Chunk chunk : buildEntry.getValue().myChunks) {
+          chunks.add(new Chunk(chunk.mySegmentId, chunk.myOffset, chunk.myLength));
+        }
+        compactedChunks.put(buildEntry.getKey(), chunks);
+      }
+    } finally {
+      myLock.writeLock().unlock();
+    }
+
+    Path compactedPath = getSegmentPath(compactedSegmentId);
+    Path tempPath = compactedPath.resolveSibling(compactedPath.getFileName() + TEMP_FILE_SUFFIX);
+    try {
+      Map<Long, BuildRecords> compactedIndex = new HashMap<>();
+      try (FileChannel compacted = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+        long offset = 0;
+        for (Map.Entry<Long, List<Chunk>> buildEntry : compactedChunks.entrySet()) {
+          BuildRecords compactedRecords = new BuildRecords();
+          for (Chunk chunk : buildEntry.getValue()) {
+            ByteBuffer content = ByteBuffer.allocate(chunk.myLength);
+            readFully(compactedSegments.get(chunk.mySegmentId).myChannel, content, chunk.myOffset);
+            content.flip();
+            writeFully(compacted, content, offset);
+            compactedRecords.add(compactedSegmentId, offset, chunk.myLength);
+            offset += chunk.myLength;
+          }
+          compactedIndex.put(buildEntry.getKey(), compactedRecords);
+        }
+        compacted.force(true);
+      }
+
+      Files.move(tempPath, compactedPath, StandardCopyOption.ATOMIC_MOVE);
+      Segment compactedSegment = openSegment(compactedSegmentId, compactedPath, true);
+      compactedSegment.myLength = compactedSegment.myChannel.size();
+
+      myLock.writeLock().lock();
+      try {
+        for (Map.Entry<Long, BuildRecords> buildEntry : myIndex.entrySet()) {
+          BuildRecords compactedRecords = myRemovedDuringCompaction.contains(buildEntry.getKey())
+                                          ? null
+                                          : compactedIndex.get(buildEntry.getKey());
+          BuildRecords buildRecords = compactedRecords != null ? compactedRecords : new BuildRecords();
+          // records appended during the compaction
+          for (Chunk chunk : buildEntry.getValue().myChunks) {
+            if (chunk.mySegmentId > compactedSegmentId) {
+              buildRecords.add(chunk.mySegmentId, chunk.myOffset, chunk.myLength);
+            }
+          }
+          buildEntry.setValue(buildRecords);
+        }
+        for (Integer segmentId : compactedSegments.keySet()) {
+          mySegments.remove(segmentId);
+        }
+        closeSegments(compactedSegments.values());
+        mySegments.put(compactedSegmentId, compactedSegment);
+        myModificationCount++;
+      } finally {
+        myLock.writeLock().unlock();
+      }
+
+      for (Segment segment : compactedSegments.values()) {
+        Files.deleteIfExists(segment.myPath);
+      }
+      LOGGER.info(String.format("Stored suggestions of %s builds are compacted from %s to %s bytes",
+                                compactedIndex.size(), previousTotalBytes, compactedSegment.myLength));
+    } finally {
+      myLock.writeLock().lock();
+      try {
+        myFirstWritableSegmentId = 0;
+        myRemovedDuringCompaction = null;
+      } finally {
+        myLock.writeLock().unlock();
+      }
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  void close() {
+    myLock.writeLock().lock();
+    try {
+      closeSegments(mySegments.values());
+      mySegments.clear();
+      myIndex.clear();
+      myModificationCount++;
+      myIsLoaded = false;
+      myIsLoadedAsWriter = false;
+    } finally {
+      myLock.writeLock().unlock();
+    }
+    clearParsed();
+  }
+
+  private void loadAsWriter() throws IOException {
+    if (myIsLoadedAsWriter) {
+      return;
+    }
+
+    myMaintenanceLock.lock();
+    try {
+      if (!myIsLoadedAsWriter) {
+        load(true);
+      }
+    } finally {
+      myMaintenanceLock.unlock();
+    }
+  }
+
+  /**
+   * Loads the store in background if it is not loaded yet. On other nodes than the writing one, also follows
+   * the records appended since the previous check.
+   */
+  private void scheduleMaintenance() {
+    if (myIsLoaded &&
+        (myIsWriter.getAsBoolean() || System.currentTimeMillis() - myLastRefreshTime < getRefreshIntervalMillis())) {
+      return;
+    }
+    if (!myIsMaintenanceScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      myExecutor.execute(() -> {
+        myMaintenanceLock.lock();
+        try {
+          if (!myIsLoaded) {
+            load(myIsWriter.getAsBoolean());
+          } else if (!myIsWriter.getAsBoolean()) {
+            refresh();
+          }
+        } catch (IOException ex) {
+          LOGGER.warn("An error occurs during loading stored suggestions", ex);
+        } finally {
+          myLastRefreshTime = System.currentTimeMillis();
+          myMaintenanceLock.unlock();
+          myIsMaintenanceScheduled.set(false);
+        }
+      });
+    } catch (RuntimeException ex) {
+      myIsMaintenanceScheduled.set(false);
+      LOGGER.warn("Failed to schedule loading of stored suggestions", ex);
+    }
+  }
+
+  private static long getRefreshIntervalMillis() {
+    return TeamCityProperties.getInteger(Constants.SUGGESTIONS_STORE_REFRESH_INTERVAL_SECONDS,
+                                         Constants.DEFAULT_SUGGESTIONS_STORE_REFRESH_INTERVAL_SECONDS) * 1000L;
+  }
+
+  /**
+   * Reads all segments into a new index which then replaces the current one. Only the writing node drops a record
+   * truncated by a crash and opens the segments for writing.
+   */
+  private void load(boolean asWriter) throws IOException {
+    TreeMap<Integer, Segment> segments = new TreeMap<>();
+    Map<Long, BuildRecords> index = new HashMap<>();
+    try {
+      for (Map.Entry<Integer, Path> segmentPath : listSegments(asWriter).entrySet()) {
+        Segment segment = openSegment(segmentPath.getKey(), segmentPath.getValue(), asWriter);
+        segments.put(segment.myId, segment);
+        segment.myLength = scan(segment, 0, index, null);
+        if (asWriter && segment.myLength < segment.myChannel.size()) {
+          // the last record was truncated by a crash, drop it so the next record starts from a new line
+          segment.myChannel.truncate(segment.myLength);
+        }
+      }
+    } catch (IOException ex) {
+      closeSegments(segments.values());
+      throw ex;
+    }
+
+    myLock.writeLock().lock();
+    try {
+      closeSegments(mySegments.values());
+      mySegments.clear();
+      mySegments.putAll(segments);
+      myIndex.clear();
+      myIndex.putAll(index);
+      myModificationCount++;
+      myIsLoaded = true;
+      myIsLoadedAsWriter = asWriter;
+    } finally {
+      myLock.writeLock().unlock();
+    }
+    clearParsed();
+    LOGGER.debug(String.format("Loaded stored suggestions of %s builds from %s segments", index.size(), segments.size()));
+  }
+
+  /**
+   * Reads the records appended by the writing node since the previous check. A record which is being written is read
+   * by the next check. The store is reloaded if the writing node compacted it.
+   */
+  private void refresh() throws IOException {
+    TreeMap<Integer, Path> segmentPaths = listSegments(false);
+    TreeMap<Integer, Segment> segments;
+    myLock.readLock().lock();
+    try {
+      segments = new TreeMap<>(mySegments);
+    } finally {
+      myLock.readLock().unlock();
+    }
+
+    if (!segmentPaths.keySet().containsAll(segments.keySet())) {
+      load(false);
+      return;
+    }
+
+    Map<Long, BuildRecords> appended = new HashMap<>();
+    Set<Long> removed = new HashSet<>();
+    Map<Integer, Long> lengths = new HashMap<>();
+    List<Segment> newSegments = new ArrayList<>();
+    try {
+      for (Map.Entry<Integer, Path> segmentPath : segmentPaths.entrySet()) {
+        Segment segment = segments.get(segmentPath.getKey());
+        if (segment == null) {
+          segment = openSegment(segmentPath.getKey(), segmentPath.getValue(), false);
+          newSegments.add(segment);
+        }
+        if (segment.myChannel.size() > segment.myLength) {
+          lengths.put(segment.myId, scan(segment, segment.myLength, appended, removed));
+        }
+      }
+    } catch (IOException ex) {
+      closeSegments(newSegments);
+      throw ex;
+    }
+
+    if (appended.isEmpty() && removed.isEmpty() && newSegments.isEmpty()) {
+      return;
+    }
+
+    myLock.writeLock().lock();
+    try {
+      for (Segment segment : newSegments) {
+        mySegments.put(segment.myId, segment);
+      }
+      for (Map.Entry<Integer, Long> length : lengths.entrySet()) {
+        mySegments.get(length.getKey()).myLength = length.getValue();
+      }
+      for (Long buildId : removed) {
+        myIndex.remove(buildId);
+      }
+      for (Map.Entry<Long, BuildRecords> buildEntry : appended.entrySet()) {
+        BuildRecords buildRecords = myIndex.computeIfAbsent(buildEntry.getKey(), id -> new BuildRecords());
+        for (Chunk chunk : buildEntry.getValue().myChunks) {
+          buildRecords.add(chunk.mySegmentId, chunk.myOffset, chunk.myLength);
+        }
+      }
+      myModificationCount++;
+    } finally {
+      myLock.writeLock().unlock();
+    }
+
+    for (Long buildId : removed) {
+      invalidateParsed(buildId);
+    }
+    for (Long buildId : appended.keySet()) {
+      invalidateParsed(buildId);
+    }
+  }
+
+  @NotNull
+  private TreeMap<Integer, Path> listSegments(boolean asWriter) throws IOException {
+    TreeMap<Integer, Path> segmentPaths = new TreeMap<>();
+    if (asWriter) {
+      Files.createDirectories(myDirectory);
+    } else if (!Files.isDirectory(myDirectory)) {
+      return segmentPaths;
+    }
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(myDirectory)) {
+      for (Path file : files) {
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(TEMP_FILE_SUFFIX)) {
+          if (asWriter) {
+            // left by an interrupted compaction
+            Files.delete(file);
+          }
+          continue;
+        }
+
+        Integer segmentId = getSegmentId(fileName);
+        if (segmentId != null) {
+          segmentPaths.put(segmentId, file);
+        }
+      }
+    }
+
+    return segmentPaths;
+  }
+
+  /**
+   * Reads the complete records of the segment starting from the offset. Records are added to the index, removals
+   * of builds are applied to the index and collected to the removed builds.
+   *
+   * @return the offset following the last complete record.
+   */
+  private long scan(@NotNull Segment segment,
+                    long offset,
+                    @NotNull Map<Long, BuildRecords> index,
+                    @Nullable Set<Long> removed) throws IOException {
+    long position = offset;
+    long lineStart = offset;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(segment.myPath))) {
+      long skipped = 0;
+      while (skipped < offset) {
+        long count = in.skip(offset - skipped);
+        if (count <= 0) {
+          return offset;
+        }
+        skipped += count;
+      }
+
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int nextByte;
+      while ((nextByte = in.read()) != -1) {
+        position++;
+        if (nextByte != '\n') {
+          line.write(nextByte);
+          continue;
+        }
+
+        StoredRecord record = parse(line.toString("UTF-8"));
+        if (record != null && record.d != null) {
+          index.remove(record.d);
+          if (removed != null) {
+            removed.add(record.d);
+          }
+        } else if (record != null && record.b != null) {
+          index.computeIfAbsent(record.b, id -> new BuildRecords()).add(segment.myId, lineStart, line.size() + 1);
+        }
+        line.reset();
+        lineStart = position;
+      }
+    }
+
+    return lineStart;
+  }
+
+  @NotNull
+  private Segment getSegmentToAppend() throws IOException {
+    Map.Entry<Integer, Segment> last = mySegments.lastEntry();
+    long maxSize = TeamCityProperties.getLong(Constants.SUGGESTIONS_STORE_SEGMENT_SIZE_KB,
+                                              Constants.DEFAULT_SUGGESTIONS_STORE_SEGMENT_SIZE_KB) * 1024;
+    if (last != null && last.getKey() >= myFirstWritableSegmentId && last.getValue().myLength < maxSize) {
+      return last.getValue();
+    }
+
+    int segmentId = Math.max(last == null ? 0 : last.getKey() + 1, myFirstWritableSegmentId);
+    Segment segment = openSegment(segmentId, getSegmentPath(segmentId), true);
+    mySegments.put(segmentId, segment);
+    return segment;
+  }
+
+  private void write(@NotNull Segment segment, @NotNull byte[] content) throws IOException {
+    writeFully(segment.myChannel, ByteBuffer.wrap(content), segment.myLength);
+    segment.myLength += content.length;
+    myModificationCount++;
+  }
+
+  @NotNull
+  private byte[] read(@NotNull BuildRecords buildRecords) throws IOException {
+    ByteBuffer content = ByteBuffer.allocate((int)buildRecords.myBytes);
+    for (Chunk chunk : buildRecords.myChunks) {
+      content.limit(content.position() + chunk.myLength);
+      ByteBuffer chunkContent = content.slice();
+      readFully(mySegments.get(chunk.mySegmentId).myChannel, chunkContent, chunk.myOffset);
+      content.position(content.limit());
+    }
+
+    return content.array();
+  }
+
+  @NotNull
+  private Map<Long, ResponsibilityPersistentInfo> parse(long buildId, @NotNull byte[] content) {
+    Map<Long, ResponsibilityPersistentInfo> parsed = new HashMap<>();
+    int lineStart = 0;
+    for (int i = 0; i < content.length; i++) {
+      if (content[i] != '\n') {
+        continue;
+      }
+
+      StoredRecord record = parse(new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8));
+      ResponsibilityPersistentInfo info = record != null && record.b != null && record.b == buildId ? record.toInfo() : null;
+      if (info != null) {
+        try {
+          // the first suggestion for the test wins, the same as for the artifact files
+          parsed.putIfAbsent(Long.parseLong(info.testNameId), info);
+        } catch (NumberFormatException ignored) {
+        }
+      }
+      lineStart = i + 1;
+    }
+
+    return parsed;
+  }
+
+  @Nullable
+  private Map<Long, ResponsibilityPersistentInfo> getParsed(long buildId) {
+    synchronized (myParsedBuilds) {
+      return myParsedBuilds.get(buildId);
+    }
+  }
+
+  private void putParsed(long buildId, @NotNull Map<Long, ResponsibilityPersistentInfo> parsed, long modificationCount) {
+    synchronized (myParsedBuilds) {
+      // records of the build might be changed after they were read
+      if (modificationCount != myModificationCount || parsed.size() > MAX_PARSED_RECORDS / 2) {
+        return;
+      }
+
+      Map<Long, ResponsibilityPersistentInfo> previous = myParsedBuilds.put(buildId, parsed);
+      myParsedRecordsCount += parsed.size() - (previous != null ? previous.size() : 0);
+      Iterator<Map<Long, ResponsibilityPersistentInfo>> eldestFirst = myParsedBuilds.values().iterator();
+      while (myParsedRecordsCount > MAX_PARSED_RECORDS && eldestFirst.hasNext()) {
+        myParsedRecordsCount -= eldestFirst.next().size();
+        eldestFirst.remove();
+      }
+    }
+  }
+
+  private void invalidateParsed(long buildId) {
+    synchronized (myParsedBuilds) {
+      Map<Long, ResponsibilityPersistentInfo> removed = myParsedBuilds.remove(buildId);
+      if (removed != null) {
+        myParsedRecordsCount -= removed.size();
+      }
+    }
+  }
+
+  private void clearParsed() {
+    synchronized (myParsedBuilds) {
+      myParsedBuilds.clear();
+      myParsedRecordsCount = 0;
+    }
+  }
+
+  private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long offset)
+    throws IOException {
+    long position = offset;
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long offset)
+    throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of stored suggestions segment");
+      }
+    }
+  }
+
+  @NotNull
+  private static Segment openSegment(int segmentId, @NotNull Path segmentPath, boolean forWriting) throws IOException {
+    FileChannel channel = forWriting
+                          ? FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                          : FileChannel.open(segmentPath, StandardOpenOption.READ);
+    return new Segment(segmentId, segmentPath, channel);
+  }
+
+  private static void closeSegments(@NotNull Iterable<Segment> segments) {
+    for (Segment segment : segments) {
+      try {
+        segment.myChannel.close();
+      } catch (IOException ex) {
+        LOGGER.warn("An error occurs during closing stored suggestions", ex);
+      }
+    }
+  }
+
+  @NotNull
+  private Path getSegmentPath(int segmentId) {
+    return myDirectory.resolve(SEGMENT_PREFIX + segmentId + SEGMENT_SUFFIX);
+  }
+
+  @Nullable
+  private static Integer getSegmentId(@NotNull String fileName) {
+    if (!fileName.startsWith(SEGMENT_PREFIX) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+      return null;
+    }
+
+    try {
+      return Integer.parseInt(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  @NotNull
+  private byte[] toLine(@NotNull StoredRecord record) {
+    return (myGson.toJson(record) + '\n').getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Nullable
+  private StoredRecord parse(@NotNull String line) {
+    try {
+      return myGson.fromJson(line, StoredRecord.class);
+    } catch (JsonParseException ex) {
+      return null;
+    }
+  }
+
+  private static class Segment {
+    private final int myId;
+    private final Path myPath;
+    private final FileChannel myChannel;
+    // end of the last complete record known to the index
+    private long myLength = 0;
+
+    private Segment(int id, @NotNull Path path, @NotNull FileChannel channel) {
+      myId = id;
+      myPath = path;
+      myChannel = channel;
+    }
+  }
+
+  private static class Chunk {
+    private final int mySegmentId;
+    private final long myOffset;
+    private int myLength;
+
+    private Chunk(int segmentId, long offset, int length) {
+      mySegmentId = segmentId;
+      myOffset = offset;
+      myLength = length;
+    }
+  }
+
+  /**
+   * Positions of the records of a build, consecutive records share a chunk.
+   */
+  private static class BuildRecords {
+    private final List<Chunk> myChunks = new ArrayList<>(1);
+    private long myBytes = 0;
+
+    private void add(int segmentId, long offset, int length) {
+      Chunk last = myChunks.isEmpty() ? null : myChunks.get(myChunks.size() - 1);
+      if (last != null && last.mySegmentId == segmentId && last.myOffset + last.myLength == offset) {
+        last.myLength += length;
+      } else {
+        myChunks.add(new Chunk(segmentId, offset, length));
+      }
+      myBytes += length;
+    }
+  }
+
+  /**
+   * A suggestion for the build, or a removal of all suggestions of the build {@code d}.
+   */
+  private static class StoredRecord {
+    private Long b;
+    private Long d;
+    private String t;
+    private String u;
+    private String r;
+
+    @NotNull
+    private static StoredRecord removal(long buildId) {
+      StoredRecord record = new StoredRecord();
+      record.d = buildId;
+      return record;
+    }
+
+    private StoredRecord() {
+    }
+
+    private StoredRecord(long buildId, @NotNull ResponsibilityPersistentInfo info) {
+      b = buildId;
+      t = info.testNameId;
+      u = info.investigatorId;
+      r = info.reason;
+    }
+
+    @Nullable
+    private ResponsibilityPersistentInfo toInfo() {
+      return t != null && u != null && r != null ? new ResponsibilityPersistentInfo(t, u, r) : null;
+    }
+  }
+}
@@ -28,8 +28,12 @@ abstract class BaseProcessor {
   private static final Logger LOGGER = Constants.LOGGER;
 
 
-  protected List<STestRun> requestBrokenTestsWithStats(final SBuild build) {
-    BuildStatisticsOptions options = new BuildStatisticsOptions(BuildStatisticsOptions.FIXED_IN_BUILD, 0);
+  /**
+   * Loads failed tests without per-test statistics. Fixed-in data is expensive to calculate for every failed test,
+   * so it is requested by {@link FailedTestFilter} only for tests which passed all the cheap checks.
+   */
+  protected List<STestRun> requestBrokenTests(final SBuild build) {
+    BuildStatisticsOptions options = new BuildStatisticsOptions(0, 0);
     BuildStatistics stats = build.getBuildStatistics(options);
 
     return stats.getFailedTests();
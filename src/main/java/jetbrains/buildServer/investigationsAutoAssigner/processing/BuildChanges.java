@@ -0,0 +1,143 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.BuildPromotionEx;
+import jetbrains.buildServer.serverSide.ChangeDescriptor;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.users.User;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Build-scoped data about changes of the build, loaded once and shared by all heuristics and processing passes.
+ * May be loaded in advance by {@link BuildChangesCache#prefetch(SBuild)}, so it is thread-safe.
+ * Once everything is loaded in advance, the build itself is released, so cached changes do not retain it.
+ */
+public class BuildChanges {
+  @Nullable private SBuild mySBuild;
+  @Nullable private List<SVcsModification> myChanges;
+  @Nullable private List<SVcsModification> myDetectedChanges;
+  @Nullable private List<SVcsModification> myCandidateChanges;
+  @Nullable private Set<Long> myCommittersIds;
+  // changes are loaded once per build, so the same instances are passed here
+  private final Map<SVcsModification, ModificationAnalyzerFactory.ModificationAnalyzer> myAnalyzers =
+    Collections.synchronizedMap(new IdentityHashMap<>());
+
+  public BuildChanges(@NotNull final SBuild sBuild) {
+    mySBuild = sBuild;
+  }
+
+  /**
+   * @return changes since the last build including changes of dependencies.
+   */
+  @NotNull
+  public synchronized List<SVcsModification> getChanges() {
+    if (myChanges == null) {
+      myChanges = getBuild().getChanges(SelectPrevBuildPolicy.SINCE_LAST_BUILD, true);
+    }
+
+    return myChanges;
+  }
+
+  /**
+   * @return changes detected for the build promotion since the last build.
+   */
+  @NotNull
+  public synchronized List<SVcsModification> getDetectedChanges() {
+    if (myDetectedChanges == null) {
+      final BuildPromotion buildPromotion = getBuild().getBuildPromotion();
+      myDetectedChanges = !(buildPromotion instanceof BuildPromotionEx)
+                          ? Collections.emptyList()
+                          : ((BuildPromotionEx)buildPromotion).getDetectedChanges(SelectPrevBuildPolicy.SINCE_LAST_BUILD, false)
+                                                              .stream()
+                                                              .map(ChangeDescriptor::getRelatedVcsChange)
+                                                              .filter(Objects::nonNull)
+                                                              .collect(Collectors.toList());
+    }
+
+    return myDetectedChanges;
+  }
+
+  /**
+   * @return detected changes with files which can be mentioned in problem texts.
+   */
+  @NotNull
+  public synchronized List<SVcsModification> getCandidateChanges() {
+    if (myCandidateChanges == null) {
+      myCandidateChanges = getDetectedChanges().stream()
+                                               .filter(ModificationAnalyzerFactory::hasCandidateFiles)
+                                               .collect(Collectors.toList());
+    }
+
+    return myCandidateChanges;
+  }
+
+  @NotNull
+  public synchronized Set<Long> getCommittersIds() {
+    if (myCommittersIds == null) {
+      myCommittersIds = getBuild().getCommitters(SelectPrevBuildPolicy.SINCE_LAST_BUILD)
+                                  .getUsers()
+                                  .stream()
+                                  .map(User::getId)
+                                  .collect(Collectors.toSet());
+    }
+
+    return myCommittersIds;
+  }
+
+  /**
+   * @return analyzer of the change which keeps file patterns of the change between calls.
+   */
+  @NotNull
+  public ModificationAnalyzerFactory.ModificationAnalyzer getAnalyzer(@NotNull final ModificationAnalyzerFactory factory,
+                                                                      @NotNull final SVcsModification vcsChange) {
+    return myAnalyzers.computeIfAbsent(vcsChange, factory::getInstance);
+  }
+
+  void prefetch(@NotNull final ModificationAnalyzerFactory factory) {
+    getChanges();
+    getCommittersIds();
+    for (SVcsModification vcsChange : getCandidateChanges()) {
+      getAnalyzer(factory, vcsChange).getFilePatterns();
+    }
+
+    synchronized (this) {
+      mySBuild = null;
+    }
+  }
+
+  @NotNull
+  private SBuild getBuild() {
+    SBuild sBuild = mySBuild;
+    if (sBuild == null) {
+      throw new IllegalStateException("Changes of the build were loaded in advance, the build was released");
+    }
+
+    return sBuild;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.log.LogUtil;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.executors.ExecutorServices;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps {@link BuildChanges} of running builds, so changes loaded at the build start or by the first processing pass
+ * are reused by the later ones. Entries are removed when the build is finished or interrupted; a removed build is
+ * not cached again, and the size limit protects against missed events.
+ */
+public class BuildChangesCache {
+  private static final Logger LOGGER = Constants.LOGGER;
+  private static final int MAX_CACHED_BUILDS = 1000;
+  private final ExecutorServices myExecutorServices;
+  private final ModificationAnalyzerFactory myModificationAnalyzerFactory;
+  private final Object myLock = new Object();
+  private final Map<Long, BuildChanges> myBuildChanges = new LinkedHashMap<Long, BuildChanges>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Long, BuildChanges> eldest) {
+      return size() > MAX_CACHED_BUILDS;
+    }
+  };
+  // prefetching may complete after the build is removed, such builds are remembered not to be cached again
+  private final Map<Long, Boolean> myRemovedBuilds = new LinkedHashMap<Long, Boolean>() {
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Long, Boolean> eldest) {
+      return size() > MAX_CACHED_BUILDS;
+    }
+  };
+
+  public BuildChangesCache(@NotNull final ExecutorServices executorServices,
+                           @NotNull final ModificationAnalyzerFactory modificationAnalyzerFactory) {
+    myExecutorServices = executorServices;
+    myModificationAnalyzerFactory = modificationAnalyzerFactory;
+  }
+
+  /**
+   * @return changes of the build, loaded in advance or to be loaded on demand. Changes of removed builds are not cached.
+   */
+  @NotNull
+  public BuildChanges get(@NotNull final SBuild sBuild) {
+    final long buildId = sBuild.getBuildId();
+    synchronized (myLock) {
+      BuildChanges buildChanges = myBuildChanges.get(buildId);
+      if (buildChanges != null) {
+        return buildChanges;
+      }
+
+      buildChanges = new BuildChanges(sBuild);
+      if (!myRemovedBuilds.containsKey(buildId)) {
+        myBuildChanges.put(buildId, buildChanges);
+      }
+
+      return buildChanges;
+    }
+  }
+
+  /**
+   * Loads changes, committers and file patterns of the build in background.
+   */
+  public void prefetch(@NotNull final SBuild sBuild) {
+    myExecutorServices.getNormalExecutorService().execute(() -> {
+      BuildChanges buildChanges = new BuildChanges(sBuild);
+      try {
+        buildChanges.prefetch(myModificationAnalyzerFactory);
+      } catch (Exception ex) {
+        LOGGER.warn("Failed to load changes in advance. Build: " + LogUtil.describe(sBuild), ex);
+        return;
+      }
+
+      final long buildId = sBuild.getBuildId();
+      synchronized (myLock) {
+        // changes requested in the meantime are already in use, so they are kept
+        if (!myRemovedBuilds.containsKey(buildId)) {
+          myBuildChanges.putIfAbsent(buildId, buildChanges);
+        }
+      }
+    });
+  }
+
+  public void remove(final long buildId) {
+    synchronized (myLock) {
+      myBuildChanges.remove(buildId);
+      myRemovedBuilds.put(buildId, Boolean.TRUE);
+    }
+  }
+}
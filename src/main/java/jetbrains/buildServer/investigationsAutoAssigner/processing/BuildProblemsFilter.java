@@ -63,7 +63,7 @@ public class BuildProblemsFilter {
 
     List<BuildProblem> filteredBuildProblems = buildProblems.stream()
                                                             .filter(failedBuildInfo::checkNotProcessed)
-                                                            .filter(problem -> isApplicable(sProject, sBuild, problem))
+                                                            .filter(problem -> isApplicable(sProject, sBuild, problem, failedBuildInfo.isMassFailure()))
                                                             .limit(failedBuildInfo.getLimitToProcess())
                                                             .collect(Collectors.toList());
 
@@ -83,13 +83,14 @@ public class BuildProblemsFilter {
     }
 
     return allBuildProblems.stream()
-                           .filter(buildProblem -> isApplicable(sProject, sBuild, buildProblem))
+                           .filter(buildProblem -> isApplicable(sProject, sBuild, buildProblem, failedBuildInfo.isMassFailure()))
                            .collect(Collectors.toList());
   }
 
   private boolean isApplicable(@NotNull final SProject project,
                                @NotNull final SBuild sBuild,
-                               @NotNull final BuildProblem problem) {
+                               @NotNull final BuildProblem problem,
+                               final boolean isMassFailure) {
     String reason = null;
     String buildProblemType = problem.getBuildProblemData().getType();
 
@@ -99,7 +100,7 @@ public class BuildProblemsFilter {
       reason = "occurs not for the first time";
     } else if (myInvestigationsManager.checkUnderInvestigation(project, sBuild, problem)) {
       reason = "is already under an investigation";
-    } else if (BuildProblemTypes.TC_FAILED_TESTS_TYPE.equals(problem.getBuildProblemData().getType())) {
+    } else if (BuildProblemTypes.TC_FAILED_TESTS_TYPE.equals(problem.getBuildProblemData().getType()) && !isMassFailure) {
       reason = "has unsupported failed tests build problem type";
     } else if (myCustomParameters.getBuildProblemTypesToIgnore(sBuild).contains(buildProblemType)) {
       reason = "is among build problem types to ignore";
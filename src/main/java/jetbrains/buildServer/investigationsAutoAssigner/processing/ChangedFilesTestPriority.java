@@ -0,0 +1,118 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.VcsFileModification;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Puts first the failed tests whose names mention files changed in the build (e.g. "FooTest" for changed "Foo.java"):
+ * such failures are the most likely to be assigned by the "BrokenFile" heuristic.
+ * The rest of the tests keeps the order in which they were run.
+ */
+public class ChangedFilesTestPriority implements FailedTestPriority {
+  private static final int MIN_FILE_NAME_LENGTH = 4;
+  private static final int MAX_FILES_TO_COLLECT = 10_000;
+  private final BuildChangesCache myBuildChangesCache;
+
+  public ChangedFilesTestPriority(@NotNull final BuildChangesCache buildChangesCache) {
+    myBuildChangesCache = buildChangesCache;
+  }
+
+  /**
+   * Whether a test mentions a changed file is checked once per test, not on every comparison.
+   */
+  @Override
+  public void sort(@NotNull final SBuild sBuild, @NotNull final List<STestRun> testRuns) {
+    testRuns.sort(BY_ORDER_ID);
+    if (!TeamCityProperties.getBoolean(Constants.PRIORITIZE_CHANGED_FILES_TESTS)) {
+      return;
+    }
+
+    Set<String> changedFileNames = collectChangedFileNames(sBuild);
+    if (changedFileNames.isEmpty()) {
+      return;
+    }
+
+    List<STestRun> mentioningTestRuns = new ArrayList<>();
+    List<STestRun> otherTestRuns = new ArrayList<>();
+    for (STestRun testRun : testRuns) {
+      (mentionsChangedFile(testRun, changedFileNames) ? mentioningTestRuns : otherTestRuns).add(testRun);
+    }
+    testRuns.clear();
+    testRuns.addAll(mentioningTestRuns);
+    testRuns.addAll(otherTestRuns);
+  }
+
+  @NotNull
+  private Set<String> collectChangedFileNames(@NotNull final SBuild sBuild) {
+    Set<String> result = new HashSet<>();
+    myBuildChangesCache.get(sBuild)
+                       .getDetectedChanges()
+                       .stream()
+                       .map(SVcsModification::getChanges)
+                       .flatMap(changes -> changes.stream().map(VcsFileModification::getRelativeFileName))
+                       .limit(MAX_FILES_TO_COLLECT)
+                       .map(filePath -> FileUtil.getNameWithoutExtension(new File(filePath)).toLowerCase())
+                       .filter(name -> name.length() >= MIN_FILE_NAME_LENGTH)
+                       .forEach(result::add);
+    return result;
+  }
+
+  static boolean mentionsChangedFile(@NotNull final STestRun testRun, @NotNull final Set<String> changedFileNames) {
+    String testName = testRun.getTest().getName().getAsString().toLowerCase();
+    int tokenStart = 0;
+    for (int i = 0; i <= testName.length(); i++) {
+      if (i < testName.length() && Character.isLetterOrDigit(testName.charAt(i))) {
+        continue;
+      }
+
+      if (i - tokenStart >= MIN_FILE_NAME_LENGTH && isChangedFileName(testName.substring(tokenStart, i), changedFileNames)) {
+        return true;
+      }
+      tokenStart = i + 1;
+    }
+
+    return false;
+  }
+
+  private static boolean isChangedFileName(@NotNull final String token, @NotNull final Set<String> changedFileNames) {
+    if (changedFileNames.contains(token)) {
+      return true;
+    }
+
+    if (token.endsWith("tests")) {
+      return changedFileNames.contains(token.substring(0, token.length() - "tests".length()));
+    }
+    if (token.endsWith("test")) {
+      return changedFileNames.contains(token.substring(0, token.length() - "test".length()));
+    }
+
+    return false;
+  }
+}
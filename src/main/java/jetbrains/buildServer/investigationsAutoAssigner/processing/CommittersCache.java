@@ -0,0 +1,140 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import jetbrains.buildServer.users.SUser;
+import jetbrains.buildServer.users.User;
+import jetbrains.buildServer.users.UserModelEx;
+import jetbrains.buildServer.users.UserModelListener;
+import jetbrains.buildServer.users.UserModelListenerAdapter;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.VcsRootInstance;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps TeamCity users resolved for (VCS root, VCS username) pairs and user ids of ignored usernames,
+ * so the mapping is not recalculated for every change, failure and heuristic.
+ * Everything is dropped on any change of user accounts: VCS usernames are stored in user properties.
+ */
+public class CommittersCache {
+  private static final int MAX_CACHED_COMMITTERS = 10_000;
+  private static final int MAX_CACHED_IGNORE_LISTS = 100;
+  @NotNull private final UserModelEx myUserModel;
+  private final Map<String, List<SUser>> myCommitters = createLruMap(MAX_CACHED_COMMITTERS);
+  private final Map<Set<String>, Set<Long>> myUserIds = createLruMap(MAX_CACHED_IGNORE_LISTS);
+  private final AtomicLong myGeneration = new AtomicLong();
+
+  public CommittersCache(@NotNull final UserModelEx userModel,
+                         @NotNull final EventDispatcher<UserModelListener> userModelEvents) {
+    myUserModel = userModel;
+    userModelEvents.addListener(new UserModelListenerAdapter() {
+      @Override
+      public void userAccountCreated(@NotNull final User user) {
+        invalidate();
+      }
+
+      @Override
+      public void userAccountChanged(@NotNull final User user) {
+        invalidate();
+      }
+
+      @Override
+      public void userAccountRemoved(@NotNull final User user) {
+        invalidate();
+      }
+    });
+  }
+
+  /**
+   * @return TeamCity users corresponding to the VCS username of the change.
+   */
+  @NotNull
+  public Collection<SUser> getCommitters(@NotNull final SVcsModification vcsChange) {
+    final String key = getKey(vcsChange);
+    if (key == null) {
+      return vcsChange.getCommitters();
+    }
+
+    List<SUser> committers = myCommitters.get(key);
+    if (committers == null) {
+      final long generation = myGeneration.get();
+      committers = new ArrayList<>(vcsChange.getCommitters());
+      if (generation == myGeneration.get()) {
+        myCommitters.put(key, committers);
+      }
+    }
+
+    return committers;
+  }
+
+  /**
+   * @return ids of existing TeamCity users with the given usernames.
+   */
+  @NotNull
+  public Set<Long> getUserIds(@NotNull final Set<String> usernames) {
+    if (usernames.isEmpty()) {
+      return Collections.emptySet();
+    }
+
+    Set<Long> userIds = myUserIds.get(usernames);
+    if (userIds == null) {
+      final long generation = myGeneration.get();
+      userIds = usernames.stream()
+                         .map(username -> myUserModel.findUserAccount(null, username))
+                         .filter(Objects::nonNull)
+                         .map(User::getId)
+                         .collect(Collectors.toSet());
+      if (generation == myGeneration.get()) {
+        myUserIds.put(new HashSet<>(usernames), userIds);
+      }
+    }
+
+    return userIds;
+  }
+
+  public void invalidate() {
+    myGeneration.incrementAndGet();
+    myCommitters.clear();
+    myUserIds.clear();
+  }
+
+  @Nullable
+  private static String getKey(@NotNull final SVcsModification vcsChange) {
+    final String userName = vcsChange.getUserName();
+    final VcsRootInstance vcsRoot = vcsChange.isPersonal() ? null : vcsChange.getVcsRoot();
+    if (userName == null || vcsRoot == null) {
+      return null;
+    }
+
+    return vcsRoot.getParentId() + ":" + userName;
+  }
+
+  @NotNull
+  private static <K, V> Map<K, V> createLruMap(final int maxSize) {
+    return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+}
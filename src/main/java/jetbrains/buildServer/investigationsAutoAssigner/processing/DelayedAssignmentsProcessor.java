@@ -29,6 +29,7 @@ import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import org.jetbrains.annotations.NotNull;
 
 public class DelayedAssignmentsProcessor extends BaseProcessor {
   private static final Logger LOGGER = Constants.LOGGER;
@@ -62,9 +63,9 @@ public class DelayedAssignmentsProcessor extends BaseProcessor {
     HeuristicResult heuristicsResult = failedBuildInfo.getHeuristicsResult();
 
     List<STestRun> applicableFailedTests =
-      requestBrokenTestsWithStats(sBuild).stream()
-                                         .filter(failedTest -> heuristicsResult.getResponsibility(failedTest) != null)
-                                         .collect(Collectors.toList());
+      requestBrokenTests(sBuild).stream()
+                                .filter(failedTest -> heuristicsResult.getResponsibility(failedTest) != null)
+                                .collect(Collectors.toList());
 
     List<String> nextBuildProblemIdentities =
       ((BuildEx)nextBuild).getBuildProblems()
@@ -77,7 +78,7 @@ public class DelayedAssignmentsProcessor extends BaseProcessor {
                        .stream()
                        .filter(buildProblem -> heuristicsResult.getResponsibility(buildProblem) != null &&
                                                nextBuildProblemIdentities.contains(buildProblem.getBuildProblemData().getIdentity()) &&
-                                               BuildProblemTypes.TC_EXIT_CODE_TYPE.equals(buildProblem.getBuildProblemData().getType()))
+                                               isDelayedType(failedBuildInfo, buildProblem))
                        .collect(Collectors.toList());
 
     logProblemsNumber(sBuild, applicableFailedTests, applicableProblems);
@@ -91,4 +92,11 @@ public class DelayedAssignmentsProcessor extends BaseProcessor {
 
     myAggregationLogger.logDelayedResults(sBuild, nextBuild, heuristicsResult, testsForAssign, problemsForAssign);
   }
+
+  private static boolean isDelayedType(@NotNull final FailedBuildInfo failedBuildInfo,
+                                       @NotNull final BuildProblem buildProblem) {
+    String type = buildProblem.getBuildProblemData().getType();
+    return BuildProblemTypes.TC_EXIT_CODE_TYPE.equals(type) ||
+           failedBuildInfo.isMassFailure() && BuildProblemTypes.TC_FAILED_TESTS_TYPE.equals(type);
+  }
 }
\ No newline at end of file
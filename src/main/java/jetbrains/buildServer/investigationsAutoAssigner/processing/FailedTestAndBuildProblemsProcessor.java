@@ -17,6 +17,7 @@
 package jetbrains.buildServer.investigationsAutoAssigner.processing;
 
 import com.intellij.openapi.diagnostic.Logger;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +44,7 @@ public class FailedTestAndBuildProblemsProcessor extends BaseProcessor {
   @NotNull private final AssignerArtifactDao myAssignerArtifactDao;
   private final CustomParameters myCustomParameters;
   @NotNull private final ResponsibleUserFinder myResponsibleUserFinder;
+  @NotNull private final BuildChangesCache myBuildChangesCache;
 
 
   public FailedTestAndBuildProblemsProcessor(@NotNull final ResponsibleUserFinder responsibleUserFinder,
@@ -51,7 +53,8 @@ public class FailedTestAndBuildProblemsProcessor extends BaseProcessor {
                                              @NotNull final BuildProblemsFilter buildProblemsFilter,
                                              @NotNull final BuildProblemsAssigner buildProblemsAssigner,
                                              @NotNull final AssignerArtifactDao assignerArtifactDao,
-                                             @NotNull final CustomParameters customParameters) {
+                                             @NotNull final CustomParameters customParameters,
+                                             @NotNull final BuildChangesCache buildChangesCache) {
     myResponsibleUserFinder = responsibleUserFinder;
     myFailedTestFilter = failedTestFilter;
     myFailedTestAssigner = failedTestAssigner;
@@ -59,6 +62,7 @@ public class FailedTestAndBuildProblemsProcessor extends BaseProcessor {
     myBuildProblemsAssigner = buildProblemsAssigner;
     myAssignerArtifactDao = assignerArtifactDao;
     myCustomParameters = customParameters;
+    myBuildChangesCache = buildChangesCache;
   }
 
   public void processBuild(final FailedBuildInfo failedBuildInfo) {
@@ -75,15 +79,30 @@ public class FailedTestAndBuildProblemsProcessor extends BaseProcessor {
       return;
     }
 
+    if (!failedBuildInfo.isMassFailureDecided() && isMassFailure(sBuild)) {
+      LOGGER.info(String.format("Build id:%s. Too many tests failed, the failure will be investigated as a whole.",
+                                sBuild.getBuildId()));
+      failedBuildInfo.decideMassFailure(true);
+    }
+
     Map<Long, String> notApplicableTestsDescription = new HashMap<>();
     List<BuildProblem> allBuildProblems = ((BuildEx)sBuild).getBuildProblems();
-    List<STestRun> allFailedTests = requestBrokenTestsWithStats(sBuild);
+    List<STestRun> allFailedTests =
+      failedBuildInfo.isMassFailure() ? Collections.emptyList() : requestBrokenTests(sBuild);
     List<BuildProblem> applicableProblems = myBuildProblemsFilter.apply(failedBuildInfo, sProject, allBuildProblems);
-    List<STestRun> applicableFailedTests = myFailedTestFilter.apply(failedBuildInfo, sProject, allFailedTests, notApplicableTestsDescription);
+    FailureClusters failureClusters = FailureClusters.isEnabled() ? FailureClusters.fromProperties() : null;
+    List<STestRun> applicableFailedTests =
+      myFailedTestFilter.apply(failedBuildInfo, sProject, allFailedTests, notApplicableTestsDescription, failureClusters);
+    if (!applicableFailedTests.isEmpty()) {
+      failedBuildInfo.decideMassFailure(false);
+    }
     logProblemsNumber(sBuild, applicableFailedTests, applicableProblems);
 
     HeuristicResult heuristicsResult =
-      myResponsibleUserFinder.findResponsibleUser(sBuild, sProject, applicableProblems, applicableFailedTests);
+      myResponsibleUserFinder.findResponsibleUser(sBuild, sProject, applicableProblems, applicableFailedTests,
+                                                  failedBuildInfo.getResponsibilityInterner(),
+                                                  myBuildChangesCache.get(sBuild),
+                                                  failureClusters);
 
     List<STestRun> testsForAssign = myFailedTestFilter.getStillApplicable(failedBuildInfo, sProject, applicableFailedTests, notApplicableTestsDescription);
     List<BuildProblem> problemsForAssign =
@@ -115,7 +134,8 @@ public class FailedTestAndBuildProblemsProcessor extends BaseProcessor {
     } else if (failedBuildInfo.shouldDelayAssignments()) {
       List<BuildProblem> forcedAssignInstantlyProblems =
         problemsForAssign.stream()
-                         .filter(x -> !BuildProblemTypes.TC_EXIT_CODE_TYPE.equals(x.getBuildProblemData().getType()))
+                         .filter(x -> !BuildProblemTypes.TC_EXIT_CODE_TYPE.equals(x.getBuildProblemData().getType()) &&
+                                      !BuildProblemTypes.TC_FAILED_TESTS_TYPE.equals(x.getBuildProblemData().getType()))
                          .collect(Collectors.toList());
       if (!forcedAssignInstantlyProblems.isEmpty()) {
         myBuildProblemsAssigner.assign(heuristicsResult, sProject, sBuild, forcedAssignInstantlyProblems);
@@ -127,4 +147,25 @@ public class FailedTestAndBuildProblemsProcessor extends BaseProcessor {
 
     failedBuildInfo.addHeuristicsResult(heuristicsResult);
   }
+
+  /**
+   * Checks the short statistics only, so the failed tests are not loaded when they are not going to be processed.
+   */
+  private static boolean isMassFailure(@NotNull final SBuild sBuild) {
+    int massFailurePercent = CustomParameters.getMassFailurePercent(sBuild);
+    if (massFailurePercent == 0) {
+      return false;
+    }
+
+    ShortStatistics statistics = sBuild.getShortStatistics();
+    if (statistics == null) {
+      return false;
+    }
+
+    int failedTestCount = statistics.getFailedTestCount();
+    int minFailedTests = TeamCityProperties.getInteger(Constants.MASS_FAILURE_MIN_FAILED_TESTS,
+                                                       Constants.DEFAULT_MASS_FAILURE_MIN_FAILED_TESTS);
+    return failedTestCount >= minFailedTests &&
+           failedTestCount * 100L >= (long)statistics.getAllTestCount() * massFailurePercent;
+  }
 }
@@ -17,7 +17,7 @@
 package jetbrains.buildServer.investigationsAutoAssigner.processing;
 
 import com.intellij.openapi.diagnostic.Logger;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,8 +28,10 @@ import jetbrains.buildServer.investigationsAutoAssigner.utils.FlakyTestDetector;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.InvestigationsManager;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.Utils;
 import jetbrains.buildServer.serverSide.*;
+import jetbrains.buildServer.serverSide.stat.FirstFailedInFixedInCalculator;
 import jetbrains.buildServer.tests.TestName;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -38,12 +40,18 @@ public class FailedTestFilter {
   private static final Logger LOGGER = Constants.LOGGER;
   private final InvestigationsManager myInvestigationsManager;
   private final FlakyTestDetector myFlakyTestDetector;
+  private final FirstFailedInFixedInCalculator myFixedInCalculator;
+  private final FailedTestPriority myFailedTestPriority;
   private final boolean myIgnoreSetupMethods;
 
   public FailedTestFilter(@NotNull FlakyTestDetector flakyTestDetector,
-                          @NotNull InvestigationsManager investigationsManager) {
+                          @NotNull InvestigationsManager investigationsManager,
+                          @NotNull FirstFailedInFixedInCalculator fixedInCalculator,
+                          @NotNull FailedTestPriority failedTestPriority) {
     myFlakyTestDetector = flakyTestDetector;
     myInvestigationsManager = investigationsManager;
+    myFixedInCalculator = fixedInCalculator;
+    myFailedTestPriority = failedTestPriority;
     myIgnoreSetupMethods = TeamCityProperties.getBooleanOrTrue(Constants.IGNORE_SETUP_TEARDOWN_METHODS);
   }
 
@@ -57,20 +65,54 @@ public class FailedTestFilter {
                        @NotNull final SProject sProject,
                        @NotNull final List<STestRun> testRuns,
                        @NotNull final Map<Long, String> notApplicableTestDescription) {
+    return apply(failedBuildInfo, sProject, testRuns, notApplicableTestDescription,
+                 FailureClusters.isEnabled() ? FailureClusters.fromProperties() : null);
+  }
+
+  /**
+   * @param failureClusters collects the failures of applicable tests, the limit is the number of distinct failures
+   *                        then. When it is null, the limit is the number of tests.
+   */
+  List<STestRun> apply(@NotNull final FailedBuildInfo failedBuildInfo,
+                       @NotNull final SProject sProject,
+                       @NotNull final List<STestRun> testRuns,
+                       @NotNull final Map<Long, String> notApplicableTestDescription,
+                       @Nullable final FailureClusters failureClusters) {
     SBuild sBuild = failedBuildInfo.getBuild();
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug(String.format("Filtering of failed tests for build id:%s started", sBuild.getBuildId()));
     }
 
-    List<STestRun> filteredTestRuns = testRuns.stream()
-                                              .sorted(Comparator.comparingInt(STestRun::getOrderId))
-                                              .filter(failedBuildInfo::checkNotProcessed)
-                                              .filter(testRun -> isApplicable(sProject, sBuild, testRun, notApplicableTestDescription))
-                                              .limit(failedBuildInfo.getLimitToProcess())
-                                              .collect(Collectors.toList());
+    final int limit = failedBuildInfo.getLimitToProcess();
+    List<STestRun> notProcessedTestRuns = testRuns.stream()
+                                                  .filter(failedBuildInfo::checkNotProcessed)
+                                                  .collect(Collectors.toList());
+    // the priority matters only when some of the tests do not fit into the limit
+    if (notProcessedTestRuns.size() > limit) {
+      myFailedTestPriority.sort(sBuild, notProcessedTestRuns);
+    } else {
+      notProcessedTestRuns.sort(FailedTestPriority.BY_ORDER_ID);
+    }
+
+    int processedNumber = 0;
+    List<STestRun> filteredTestRuns = new ArrayList<>();
+    for (STestRun testRun : notProcessedTestRuns) {
+      if (processedNumber >= limit) {
+        break;
+      }
+
+      if (!isApplicable(sProject, sBuild, testRun, notApplicableTestDescription, true)) {
+        continue;
+      }
+
+      if (failureClusters == null || failureClusters.add(testRun)) {
+        processedNumber++;
+      }
+      filteredTestRuns.add(testRun);
+    }
 
     failedBuildInfo.addProcessedTestRuns(testRuns);
-    failedBuildInfo.increaseProcessedNumber(filteredTestRuns.size());
+    failedBuildInfo.increaseProcessedNumber(processedNumber);
 
     return filteredTestRuns;
   }
@@ -89,15 +131,17 @@ public class FailedTestFilter {
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug(String.format("Filtering before assign of failed tests for build id:%s started", sBuild.getBuildId()));
     }
+    // fixed-in data was calculated for these tests when they were filtered, it is not calculated again
     return testRuns.stream()
-                   .filter(testRun -> isApplicable(sProject, sBuild, testRun, notApplicableTestDescription))
+                   .filter(testRun -> isApplicable(sProject, sBuild, testRun, notApplicableTestDescription, false))
                    .collect(Collectors.toList());
   }
 
   private boolean isApplicable(@NotNull final SProject project,
                                @NotNull final SBuild sBuild,
                                @NotNull final STestRun testRun,
-                               @NotNull final Map<Long, String> notApplicableTestDescription) {
+                               @NotNull final Map<Long, String> notApplicableTestDescription,
+                               boolean checkFixedIn) {
     String reason = null;
 
     final STest test = testRun.getTest();
@@ -113,6 +157,9 @@ public class FailedTestFilter {
       reason = "was marked as flaky";
     } else if (myIgnoreSetupMethods && isSetUpOrTearDown(testRun.getTest().getName())) {
       reason = "is not a test but rather setUp or tearDown";
+    } else if (checkFixedIn && isFixedLater(testRun)) {
+      // the most expensive check goes last: it is done only for tests which passed all others
+      reason = "was fixed";
     }
 
     boolean isApplicable = reason == null;
@@ -129,6 +176,11 @@ public class FailedTestFilter {
     return isApplicable;
   }
 
+  private boolean isFixedLater(@NotNull final STestRun testRun) {
+    FirstFailedInFixedInCalculator.FFIData ffiData = myFixedInCalculator.calculateFFIData(testRun);
+    return ffiData != null && ffiData.getFixedInId() != null;
+  }
+
   private boolean isSetUpOrTearDown(@NotNull TestName testName) {
     final String methodName = testName.getTestMethodName().toLowerCase();
     return methodName.contains("setup") || methodName.contains("teardown");
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.Comparator;
+import java.util.List;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.STestRun;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Defines which failed tests of a build are processed first. Only a limited number of failures is processed
+ * per build (see {@link jetbrains.buildServer.investigationsAutoAssigner.common.Constants#MAX_TESTS_PER_BUILD_NUMBER}),
+ * so the limit should go to the failures which most likely get a responsible user.
+ */
+public interface FailedTestPriority {
+  Comparator<STestRun> BY_ORDER_ID = Comparator.comparingInt(STestRun::getOrderId);
+
+  /**
+   * Sorts the failures, so the ones to be processed first are at the beginning.
+   */
+  void sort(@NotNull SBuild sBuild, @NotNull List<STestRun> testRuns);
+}
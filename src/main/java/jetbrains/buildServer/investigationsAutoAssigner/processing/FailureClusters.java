@@ -0,0 +1,89 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.HashMap;
+import java.util.Map;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.investigationsAutoAssigner.utils.ProblemTextExtractor;
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Groups failed tests of a build by their failure: tests failed with the same {@link FailureSignature}
+ * are one failure, as well as tests with nearly the same output when {@link NearDuplicateGrouper} is enabled.
+ * A failure is counted once for the limit of tests to process per build, and {@link ResponsibleUserFinder} evaluates
+ * build-level heuristics for one test of the failure only. Other heuristics are still evaluated for every test,
+ * as their results depend on the test (e.g. its name or its previous investigations).
+ */
+final class FailureClusters {
+  private final Map<String, STestRun> mySignature2Representative = new HashMap<>();
+  private final Map<STestRun, STestRun> myRepresentatives = new HashMap<>();
+  private final boolean myGroupBySignature;
+  @Nullable private final NearDuplicateGrouper<STestRun> myNearDuplicateGrouper;
+
+  FailureClusters(final boolean groupBySignature, @Nullable final NearDuplicateGrouper<STestRun> nearDuplicateGrouper) {
+    myGroupBySignature = groupBySignature;
+    myNearDuplicateGrouper = nearDuplicateGrouper;
+  }
+
+  /**
+   * Failure signatures and near-duplicates are enabled separately, either of them is enough to group tests.
+   */
+  static boolean isEnabled() {
+    return TeamCityProperties.getBoolean(Constants.FAILURE_CLUSTERING_ENABLED) || NearDuplicateGrouper.isEnabled();
+  }
+
+  @NotNull
+  static FailureClusters fromProperties() {
+    return new FailureClusters(TeamCityProperties.getBoolean(Constants.FAILURE_CLUSTERING_ENABLED),
+                               NearDuplicateGrouper.isEnabled() ? NearDuplicateGrouper.fromProperties() : null);
+  }
+
+  /**
+   * Loads the test output, so it should be called once per test.
+   * @return true when the test failed differently from all the tests added before.
+   */
+  boolean add(@NotNull final STestRun testRun) {
+    String text = ProblemTextExtractor.getBoundedText(testRun);
+    String signature = myGroupBySignature ? FailureSignature.of(text) : null;
+    STestRun representative = signature != null ? mySignature2Representative.get(signature) : null;
+    if (representative == null && myNearDuplicateGrouper != null) {
+      representative = myNearDuplicateGrouper.add(text, testRun);
+    }
+    if (signature != null) {
+      mySignature2Representative.putIfAbsent(signature, representative != null ? representative : testRun);
+    }
+
+    if (representative == null) {
+      return true;
+    }
+
+    myRepresentatives.put(testRun, representative);
+    return false;
+  }
+
+  /**
+   * @return the first added test failed the same way as the given one, or the test itself.
+   */
+  @NotNull
+  STestRun getRepresentative(@NotNull final STestRun testRun) {
+    return myRepresentatives.getOrDefault(testRun, testRun);
+  }
+}
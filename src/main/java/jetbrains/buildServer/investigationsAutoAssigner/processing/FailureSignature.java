@@ -0,0 +1,127 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Normalized failure signature of a test: the exception type and the top stack trace frames without line numbers,
+ * file names and other digits. Tests which failed with the same signature most likely have the same cause.
+ */
+final class FailureSignature {
+  static final int TOP_FRAMES_NUMBER = 5;
+  private static final int MAX_SCANNED_LINES = 200;
+
+  private FailureSignature() {
+  }
+
+  /**
+   * Only the top of the text is scanned, so the signature is cheap even for megabytes of test output.
+   * @return null when the test output has no stack trace, so there is nothing to group the test by.
+   */
+  @Nullable
+  static String of(@Nullable final String fullText) {
+    if (fullText == null || fullText.isEmpty()) {
+      return null;
+    }
+
+    StringBuilder signature = new StringBuilder();
+    String exceptionHeader = null;
+    String previousLine = null;
+    int frames = 0;
+    int scannedLines = 0;
+    int lineStart = 0;
+    while (lineStart < fullText.length() && frames < TOP_FRAMES_NUMBER && scannedLines++ < MAX_SCANNED_LINES) {
+      int lineEnd = fullText.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = fullText.length();
+      }
+
+      String line = fullText.substring(lineStart, lineEnd).trim();
+      if (line.startsWith("at ")) {
+        if (frames == 0) {
+          String header = exceptionHeader != null ? exceptionHeader : previousLine;
+          if (header == null) {
+            break;
+          }
+          signature.append(getExceptionType(header));
+        }
+        signature.append('\n').append(normalizeFrame(line));
+        frames++;
+      } else if (frames > 0) {
+        // the top of the stack trace is over ("... 42 more", "Caused by:" and so on)
+        break;
+      } else if (!line.isEmpty()) {
+        if (isExceptionHeader(line)) {
+          exceptionHeader = line;
+        }
+        previousLine = line;
+      }
+
+      lineStart = lineEnd + 1;
+    }
+
+    return frames > 0 ? signature.toString() : null;
+  }
+
+  /**
+   * The message of an exception can take several lines, so the header is the last line looking like
+   * "qualified.ExceptionType: message" before the stack trace.
+   */
+  private static boolean isExceptionHeader(@NotNull final String line) {
+    int colon = line.indexOf(':');
+    String type = colon > 0 ? line.substring(0, colon) : line;
+    for (int i = 0; i < type.length(); i++) {
+      if (Character.isWhitespace(type.charAt(i))) {
+        return false;
+      }
+    }
+
+    return type.indexOf('.') > 0 || type.endsWith("Exception") || type.endsWith("Error");
+  }
+
+  @NotNull
+  private static String getExceptionType(@NotNull final String line) {
+    int colon = line.indexOf(':');
+    return normalizeDigits(colon > 0 ? line.substring(0, colon) : line);
+  }
+
+  @NotNull
+  private static String normalizeFrame(@NotNull final String frame) {
+    int sourceStart = frame.indexOf('(');
+    return normalizeDigits(sourceStart > 0 ? frame.substring(0, sourceStart) : frame);
+  }
+
+  @NotNull
+  private static String normalizeDigits(@NotNull final String text) {
+    StringBuilder result = new StringBuilder(text.length());
+    boolean previousIsDigit = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      boolean isDigit = Character.isDigit(c);
+      if (!isDigit) {
+        result.append(c);
+      } else if (!previousIsDigit) {
+        result.append('#');
+      }
+      previousIsDigit = isDigit;
+    }
+
+    return result.toString();
+  }
+}
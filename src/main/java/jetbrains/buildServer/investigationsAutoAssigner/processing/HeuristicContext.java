@@ -18,13 +18,11 @@ package jetbrains.buildServer.investigationsAutoAssigner.processing;
 
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import jetbrains.buildServer.investigationsAutoAssigner.common.ResponsibilityInterner;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
-import jetbrains.buildServer.users.User;
-import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
 import org.jetbrains.annotations.NotNull;
 
 public final class HeuristicContext {
@@ -33,18 +31,41 @@ public final class HeuristicContext {
   private final List<STestRun> mySTestRuns;
   private final SBuild mySBuild;
   private final Set<String> myUsersToIgnore;
-  private Set<Long> myCommitersIds = null;
+  private final ResponsibilityInterner myResponsibilityInterner;
+  private final BuildChanges myBuildChanges;
+  private volatile boolean myIsCancelled = false;
 
   public HeuristicContext(SBuild sBuild,
                           SProject sProject,
                           List<BuildProblem> buildProblems,
                           List<STestRun> sTestRuns,
                           @NotNull Set<String> usernameBlackList) {
+    this(sBuild, sProject, buildProblems, sTestRuns, usernameBlackList, new ResponsibilityInterner());
+  }
+
+  public HeuristicContext(SBuild sBuild,
+                          SProject sProject,
+                          List<BuildProblem> buildProblems,
+                          List<STestRun> sTestRuns,
+                          @NotNull Set<String> usernameBlackList,
+                          @NotNull ResponsibilityInterner responsibilityInterner) {
+    this(sBuild, sProject, buildProblems, sTestRuns, usernameBlackList, responsibilityInterner, new BuildChanges(sBuild));
+  }
+
+  public HeuristicContext(SBuild sBuild,
+                          SProject sProject,
+                          List<BuildProblem> buildProblems,
+                          List<STestRun> sTestRuns,
+                          @NotNull Set<String> usernameBlackList,
+                          @NotNull ResponsibilityInterner responsibilityInterner,
+                          @NotNull BuildChanges buildChanges) {
     mySBuild = sBuild;
     mySProject = sProject;
     myBuildProblems = buildProblems;
     mySTestRuns = sTestRuns;
     myUsersToIgnore = usernameBlackList;
+    myResponsibilityInterner = responsibilityInterner;
+    myBuildChanges = buildChanges;
   }
 
   @NotNull
@@ -70,21 +91,37 @@ public final class HeuristicContext {
     return myUsersToIgnore;
   }
 
+  /**
+   * @return build-scoped table which should be used to create {@link jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility}
+   * objects, so equal responsibilities found for different failures are shared.
+   */
   @NotNull
-  public Set<Long> getCommitersIds() {
-    if (myCommitersIds == null) {
-      myCommitersIds = calculateCommitersIds(mySBuild);
-    }
+  public ResponsibilityInterner getResponsibilityInterner() {
+    return myResponsibilityInterner;
+  }
 
-    return myCommitersIds;
+  /**
+   * @return true when results of the heuristic are not needed anymore, e.g. all failures were already
+   * assigned by heuristics with higher priority. Long-running heuristics should check it and stop.
+   */
+  public boolean isCancelled() {
+    return myIsCancelled;
   }
 
-  private static Set<Long> calculateCommitersIds(SBuild sBuild) {
-    return sBuild.getCommitters(SelectPrevBuildPolicy.SINCE_LAST_BUILD)
-                 .getUsers()
-                 .stream()
-                 .map(User::getId)
-                 .collect(Collectors.toSet());
+  void cancel() {
+    myIsCancelled = true;
   }
-}
 
+  /**
+   * @return changes of the build shared by all heuristics, possibly loaded in advance when the build started.
+   */
+  @NotNull
+  public BuildChanges getBuildChanges() {
+    return myBuildChanges;
+  }
+
+  @NotNull
+  public Set<Long> getCommitersIds() {
+    return myBuildChanges.getCommittersIds();
+  }
+}
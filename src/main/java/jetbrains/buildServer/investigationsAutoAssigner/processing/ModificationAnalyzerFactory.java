@@ -40,22 +40,30 @@ import static com.intellij.openapi.util.text.StringUtil.join;
  */
 public class ModificationAnalyzerFactory {
   private static final int TOO_SMALL_PATTERN_THRESHOLD = 15;
+  @NotNull private final CommittersCache myCommittersCache;
+
+  public ModificationAnalyzerFactory(@NotNull final CommittersCache committersCache) {
+    myCommittersCache = committersCache;
+  }
 
   public ModificationAnalyzer getInstance(SVcsModification vcsChange) {
-    return new ModificationAnalyzer(vcsChange);
+    return new ModificationAnalyzer(vcsChange, myCommittersCache);
   }
 
   public static class ModificationAnalyzer {
     private final SVcsModification myVcsChange;
+    @NotNull private final CommittersCache myCommittersCache;
+    @Nullable private volatile List<Pair<String, List<String>>> myFilePatterns;
 
-    private ModificationAnalyzer(@NotNull SVcsModification vcsChange) {
+    private ModificationAnalyzer(@NotNull SVcsModification vcsChange, @NotNull CommittersCache committersCache) {
       myVcsChange = vcsChange;
+      myCommittersCache = committersCache;
     }
 
     @Nullable
     public Pair<User, String> findProblematicFile(String problemText, Set<String> usersToIgnore)
       throws HeuristicNotApplicableException {
-      String filePath = findBrokenFile(myVcsChange, problemText);
+      String filePath = findBrokenFile(problemText);
       if (filePath == null) {
         return null;
       }
@@ -72,14 +80,15 @@ public class ModificationAnalyzerFactory {
 
     @Nullable
     public User getOnlyCommitter(Set<String> usersToIgnore) throws HeuristicNotApplicableException {
-      Collection<SUser> committers = myVcsChange.getCommitters();
+      Collection<SUser> committers = myCommittersCache.getCommitters(myVcsChange);
       if (committers.size() == 0) {
         throw new HeuristicNotApplicableException(
           "committer \"" + myVcsChange.getUserName() + "\" does not have corresponding TeamCity user");
       }
 
+      Set<Long> userIdsToIgnore = myCommittersCache.getUserIds(usersToIgnore);
       List<User> filteredCommitters = committers.stream()
-                                                .filter(user -> !usersToIgnore.contains(user.getUsername()))
+                                                .filter(user -> !userIdsToIgnore.contains(user.getId()))
                                                 .collect(Collectors.toList());
 
       if (filteredCommitters.isEmpty()) {
@@ -92,19 +101,53 @@ public class ModificationAnalyzerFactory {
 
       return filteredCommitters.get(0);
     }
+
+    @Nullable
+    private String findBrokenFile(@NotNull final String problemText) {
+      for (Pair<String, List<String>> filePatterns : getFilePatterns()) {
+        for (String pattern : filePatterns.second) {
+          if (problemText.contains(pattern)) {
+            return filePatterns.first;
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Patterns do not depend on the problem text, so they are calculated once per change
+     * instead of once per problem.
+     */
+    @NotNull
+    List<Pair<String, List<String>>> getFilePatterns() {
+      List<Pair<String, List<String>>> filePatterns = myFilePatterns;
+      if (filePatterns == null) {
+        filePatterns = new ArrayList<>();
+        for (VcsFileModification modification : myVcsChange.getChanges()) {
+          final String filePath = modification.getRelativeFileName();
+          List<String> patterns = getPatterns(filePath);
+          if (!patterns.isEmpty()) {
+            filePatterns.add(Pair.create(filePath, patterns));
+          }
+        }
+        myFilePatterns = filePatterns;
+      }
+
+      return filePatterns;
+    }
   }
 
-  @Nullable
-  private static String findBrokenFile(@NotNull final SVcsModification vcsChange, @NotNull final String problemText) {
+  /**
+   * @return true if the change contains files which can be found in a problem text.
+   * Allows to skip loading of problem texts when there is nothing to look for.
+   */
+  public static boolean hasCandidateFiles(@NotNull final SVcsModification vcsChange) {
     for (VcsFileModification modification : vcsChange.getChanges()) {
-      final String filePath = modification.getRelativeFileName();
-      for (String pattern : getPatterns(filePath)) {
-        if (problemText.contains(pattern)) {
-          return filePath;
-        }
+      if (!getPatterns(modification.getRelativeFileName()).isEmpty()) {
+        return true;
       }
     }
-    return null;
+    return false;
   }
 
   /**
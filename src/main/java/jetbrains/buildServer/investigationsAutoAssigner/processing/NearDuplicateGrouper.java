@@ -0,0 +1,188 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Finds failed tests with nearly the same output (e.g. differing only in timestamps, ports or random ids)
+ * using MinHash signatures of word shingles and locality-sensitive hashing over signature bands.
+ * Only a fixed-size signature is kept per distinct failure, so the memory is bounded by the number of grouped tests.
+ */
+final class NearDuplicateGrouper<T> {
+  static final int HASHES_NUMBER = 64;
+  private static final int BANDS_NUMBER = 16;
+  private static final int ROWS_PER_BAND = HASHES_NUMBER / BANDS_NUMBER;
+  private static final int SHINGLE_SIZE = 3;
+  static final int MIN_SHINGLES_NUMBER = 8;
+  private static final int MAX_TEXT_LENGTH = 8 * 1024;
+  private static final int DEFAULT_SIMILARITY_PERCENT = 70;
+  private static final int DEFAULT_MAX_TESTS_TO_GROUP = 1000;
+
+  private static final int[] HASH_A = new int[HASHES_NUMBER];
+  private static final int[] HASH_B = new int[HASHES_NUMBER];
+
+  static {
+    Random random = new Random(20220101L);
+    for (int i = 0; i < HASHES_NUMBER; i++) {
+      HASH_A[i] = random.nextInt() | 1;
+      HASH_B[i] = random.nextInt();
+    }
+  }
+
+  private final double mySimilarity;
+  private final int myMaxTestsToGroup;
+  private final List<int[]> mySignatures = new ArrayList<>();
+  private final List<T> myItems = new ArrayList<>();
+  private final Map<Long, Integer> myBucket2Signature = new HashMap<>();
+
+  NearDuplicateGrouper(final double similarity, final int maxTestsToGroup) {
+    mySimilarity = similarity;
+    myMaxTestsToGroup = maxTestsToGroup;
+  }
+
+  static boolean isEnabled() {
+    return TeamCityProperties.getBoolean(Constants.NEAR_DUPLICATE_GROUPING_ENABLED);
+  }
+
+  @NotNull
+  static <T> NearDuplicateGrouper<T> fromProperties() {
+    int similarityPercent = TeamCityProperties.getInteger(Constants.NEAR_DUPLICATE_SIMILARITY_PERCENT,
+                                                          DEFAULT_SIMILARITY_PERCENT);
+    int maxTestsToGroup = TeamCityProperties.getInteger(Constants.NEAR_DUPLICATE_MAX_TESTS_TO_GROUP,
+                                                        DEFAULT_MAX_TESTS_TO_GROUP);
+    return new NearDuplicateGrouper<>(Math.max(1, Math.min(100, similarityPercent)) / 100.0, maxTestsToGroup);
+  }
+
+  /**
+   * Only texts which are not near-duplicates are remembered along with their items, at most maxTestsToGroup of them.
+   * @return the item of the text added before which the given text is a near-duplicate of, or null.
+   */
+  @Nullable
+  T add(@Nullable final String text, @NotNull final T item) {
+    int[] signature = computeSignature(text);
+    if (signature == null) {
+      return null;
+    }
+
+    for (int band = 0; band < BANDS_NUMBER; band++) {
+      Integer candidate = myBucket2Signature.get(getBandHash(signature, band));
+      if (candidate != null && estimateSimilarity(mySignatures.get(candidate), signature) >= mySimilarity) {
+        return myItems.get(candidate);
+      }
+    }
+
+    if (mySignatures.size() < myMaxTestsToGroup) {
+      for (int band = 0; band < BANDS_NUMBER; band++) {
+        myBucket2Signature.putIfAbsent(getBandHash(signature, band), mySignatures.size());
+      }
+      mySignatures.add(signature);
+      myItems.add(item);
+    }
+
+    return null;
+  }
+
+  /**
+   * @return null when the text is too short to be compared reliably: short generic messages
+   * like "expected true but was false" do not mean that failures have the same cause.
+   */
+  @Nullable
+  static int[] computeSignature(@Nullable final String text) {
+    if (text == null) {
+      return null;
+    }
+
+    List<String> tokens = tokenize(text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text);
+    Set<Integer> shingles = new HashSet<>();
+    for (int i = 0; i + SHINGLE_SIZE <= tokens.size(); i++) {
+      int hash = 1;
+      for (int j = i; j < i + SHINGLE_SIZE; j++) {
+        hash = 31 * hash + tokens.get(j).hashCode();
+      }
+      shingles.add(hash);
+    }
+    if (shingles.size() < MIN_SHINGLES_NUMBER) {
+      return null;
+    }
+
+    int[] signature = new int[HASHES_NUMBER];
+    for (int i = 0; i < HASHES_NUMBER; i++) {
+      int min = Integer.MAX_VALUE;
+      for (int shingle : shingles) {
+        min = Math.min(min, mix(HASH_A[i] * shingle + HASH_B[i]));
+      }
+      signature[i] = min;
+    }
+
+    return signature;
+  }
+
+  static double estimateSimilarity(@NotNull final int[] first, @NotNull final int[] second) {
+    int equal = 0;
+    for (int i = 0; i < HASHES_NUMBER; i++) {
+      if (first[i] == second[i]) {
+        equal++;
+      }
+    }
+
+    return (double)equal / HASHES_NUMBER;
+  }
+
+  @NotNull
+  private static List<String> tokenize(@NotNull final String text) {
+    List<String> tokens = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean isTokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (isTokenChar && start < 0) {
+        start = i;
+      } else if (!isTokenChar && start >= 0) {
+        tokens.add(text.substring(start, i));
+        start = -1;
+      }
+    }
+
+    return tokens;
+  }
+
+  private static long getBandHash(@NotNull final int[] signature, final int band) {
+    long hash = band;
+    for (int i = band * ROWS_PER_BAND; i < (band + 1) * ROWS_PER_BAND; i++) {
+      hash = hash * 1_000_003L + signature[i];
+    }
+
+    return hash;
+  }
+
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    return hash;
+  }
+}
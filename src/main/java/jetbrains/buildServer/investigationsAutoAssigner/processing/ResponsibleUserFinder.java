@@ -16,65 +16,385 @@
 
 package jetbrains.buildServer.investigationsAutoAssigner.processing;
 
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
+import jetbrains.buildServer.investigationsAutoAssigner.common.ResponsibilityInterner;
+import jetbrains.buildServer.investigationsAutoAssigner.heuristics.AsyncHeuristic;
 import jetbrains.buildServer.investigationsAutoAssigner.heuristics.Heuristic;
+import jetbrains.buildServer.investigationsAutoAssigner.heuristics.HeuristicEvaluator;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.CustomParameters;
+import jetbrains.buildServer.log.LogUtil;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.executors.ExecutorServices;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class ResponsibleUserFinder {
+  private static final Logger LOGGER = Constants.LOGGER;
   private final List<Heuristic> myOrderedHeuristics;
   private final CustomParameters myCustomParameters;
+  private final ExecutorServices myExecutorServices;
 
   public ResponsibleUserFinder(@NotNull final List<Heuristic> orderedHeuristics,
-                               @NotNull final CustomParameters customParameters) {
+                               @NotNull final CustomParameters customParameters,
+                               @NotNull final ExecutorServices executorServices) {
     myOrderedHeuristics = orderedHeuristics;
     myCustomParameters = customParameters;
+    myExecutorServices = executorServices;
   }
 
   HeuristicResult findResponsibleUser(SBuild sBuild,
                                       SProject sProject,
                                       List<BuildProblem> buildProblems,
                                       List<STestRun> testRuns) {
+    return findResponsibleUser(sBuild, sProject, buildProblems, testRuns, new ResponsibilityInterner());
+  }
+
+  HeuristicResult findResponsibleUser(SBuild sBuild,
+                                      SProject sProject,
+                                      List<BuildProblem> buildProblems,
+                                      List<STestRun> testRuns,
+                                      @NotNull ResponsibilityInterner responsibilityInterner) {
+    return findResponsibleUser(sBuild, sProject, buildProblems, testRuns, responsibilityInterner, new BuildChanges(sBuild));
+  }
+
+  HeuristicResult findResponsibleUser(SBuild sBuild,
+                                      SProject sProject,
+                                      List<BuildProblem> buildProblems,
+                                      List<STestRun> testRuns,
+                                      @NotNull ResponsibilityInterner responsibilityInterner,
+                                      @NotNull BuildChanges buildChanges) {
+    return findResponsibleUser(sBuild, sProject, buildProblems, testRuns, responsibilityInterner, buildChanges, null);
+  }
+
+  HeuristicResult findResponsibleUser(SBuild sBuild,
+                                      SProject sProject,
+                                      List<BuildProblem> buildProblems,
+                                      List<STestRun> testRuns,
+                                      @NotNull ResponsibilityInterner responsibilityInterner,
+                                      @NotNull BuildChanges buildChanges,
+                                      @Nullable FailureClusters failureClusters) {
 
     if (buildProblems.isEmpty() && testRuns.isEmpty()) {
       return new HeuristicResult();
     }
 
+    Set<String> usernamesBlackList = myCustomParameters.getIgnoredUsernames(sBuild);
+    // failure clusters are not needed in one pass: build-level evaluators find their responsible user once per build
+    return TeamCityProperties.getBoolean(Constants.FUSED_HEURISTICS_EVALUATION)
+           ? evaluateInOnePass(sBuild, sProject, buildProblems, testRuns, usernamesBlackList,
+                               responsibilityInterner, buildChanges)
+           : evaluateSequentially(sBuild, sProject, buildProblems, testRuns, usernamesBlackList,
+                                  responsibilityInterner, buildChanges, failureClusters);
+  }
+
+  @NotNull
+  private HeuristicResult evaluateSequentially(SBuild sBuild,
+                                               SProject sProject,
+                                               List<BuildProblem> buildProblems,
+                                               List<STestRun> testRuns,
+                                               Set<String> usernamesBlackList,
+                                               @NotNull ResponsibilityInterner responsibilityInterner,
+                                               @NotNull BuildChanges buildChanges,
+                                               @Nullable FailureClusters failureClusters) {
     HeuristicResult result = new HeuristicResult();
-    Set<String> usernamesBlackList = CustomParameters.getUsersToIgnore(sBuild);
+    Map<Heuristic, StartedHeuristic> startedHeuristics =
+      TeamCityProperties.getBoolean(Constants.ASYNC_HEURISTICS_ENABLED)
+      ? startAsyncHeuristics(sBuild, sProject, buildProblems, testRuns, usernamesBlackList, responsibilityInterner,
+                             buildChanges)
+      : Collections.emptyMap();
+    try {
+      for (Heuristic heuristic : myOrderedHeuristics) {
+        if (myCustomParameters.isHeuristicsDisabled(heuristic.getId())) {
+          continue;
+        }
+
+        Map<STestRun, STestRun> clusterTestRuns =
+          failureClusters != null && heuristic.isBuildLevel() ? selectOnePerCluster(testRuns, failureClusters) : null;
+        HeuristicContext heuristicContext =
+          new HeuristicContext(sBuild, sProject, buildProblems,
+                               clusterTestRuns != null ? new ArrayList<>(clusterTestRuns.values()) : testRuns,
+                               usernamesBlackList, responsibilityInterner, buildChanges);
+        StartedHeuristic startedHeuristic = startedHeuristics.remove(heuristic);
+        HeuristicResult heuristicResult = startedHeuristic != null
+                                          ? startedHeuristic.getResult(heuristicContext)
+                                          : heuristic.findResponsibleUser(heuristicContext);
+        if (clusterTestRuns != null) {
+          fanOut(heuristicResult, testRuns, clusterTestRuns, failureClusters);
+        }
+
+        buildProblems = heuristicContext.getBuildProblems()
+                                        .stream()
+                                        .filter(buildProblem -> heuristicResult.getResponsibility(buildProblem) == null)
+                                        .collect(Collectors.toList());
+
+        testRuns = testRuns.stream()
+                           .filter(sTestRun -> heuristicResult.getResponsibility(sTestRun) == null)
+                           .collect(Collectors.toList());
+
+        result.merge(heuristicResult);
+
+        if (buildProblems.isEmpty() && testRuns.isEmpty()) {
+          break;
+        }
+      }
+    } finally {
+      startedHeuristics.values().forEach(StartedHeuristic::cancel);
+    }
+
+    return result;
+  }
+
+  /**
+   * Starts not cheap asynchronous heuristics for all failures, so they run while the previous heuristics are evaluated.
+   */
+  @NotNull
+  private Map<Heuristic, StartedHeuristic> startAsyncHeuristics(SBuild sBuild,
+                                                                SProject sProject,
+                                                                List<BuildProblem> buildProblems,
+                                                                List<STestRun> testRuns,
+                                                                Set<String> usernamesBlackList,
+                                                                @NotNull ResponsibilityInterner responsibilityInterner,
+                                                                @NotNull BuildChanges buildChanges) {
+    Map<Heuristic, StartedHeuristic> result = new IdentityHashMap<>();
+    Executor executor = null;
+    boolean changesRequested = false;
     for (Heuristic heuristic : myOrderedHeuristics) {
-      if (myCustomParameters.isHeuristicsDisabled(heuristic.getId())) {
+      if (!(heuristic instanceof AsyncHeuristic) || myCustomParameters.isHeuristicsDisabled(heuristic.getId())) {
+        continue;
+      }
+
+      AsyncHeuristic asyncHeuristic = (AsyncHeuristic)heuristic;
+      if (asyncHeuristic.getCostClass() == AsyncHeuristic.CostClass.CHEAP) {
         continue;
       }
 
+      if (executor == null) {
+        executor = myExecutorServices.getNormalExecutorService();
+      }
+      if (!changesRequested && asyncHeuristic.getRequiredData().contains(AsyncHeuristic.RequiredData.CHANGES)) {
+        // the changes are shared by all heuristics of the build, so they are loaded once while heuristics start
+        CompletableFuture.runAsync(buildChanges::getChanges, executor);
+        changesRequested = true;
+      }
+
       HeuristicContext heuristicContext =
-        new HeuristicContext(sBuild, sProject, buildProblems, testRuns, usernamesBlackList);
-      HeuristicResult heuristicResult = heuristic.findResponsibleUser(heuristicContext);
+        new HeuristicContext(sBuild, sProject, buildProblems, testRuns, usernamesBlackList, responsibilityInterner,
+                             buildChanges);
+      result.put(heuristic, new StartedHeuristic(heuristicContext,
+                                                 asyncHeuristic.findResponsibleUserAsync(heuristicContext, executor)));
+    }
+
+    return result;
+  }
+
+  /**
+   * @return the first of the given tests for each failure cluster by the cluster representative.
+   */
+  @NotNull
+  private static Map<STestRun, STestRun> selectOnePerCluster(@NotNull final List<STestRun> testRuns,
+                                                             @NotNull final FailureClusters failureClusters) {
+    Map<STestRun, STestRun> result = new LinkedHashMap<>();
+    for (STestRun testRun : testRuns) {
+      result.putIfAbsent(failureClusters.getRepresentative(testRun), testRun);
+    }
+
+    return result;
+  }
 
-      buildProblems = heuristicContext.getBuildProblems()
-                                      .stream()
-                                      .filter(buildProblem -> heuristicResult.getResponsibility(buildProblem) == null)
-                                      .collect(Collectors.toList());
+  /**
+   * Gives the responsible user found by a build-level heuristic for the selected test of a cluster
+   * to the other tests of the cluster.
+   */
+  private static void fanOut(@NotNull final HeuristicResult heuristicResult,
+                             @NotNull final List<STestRun> testRuns,
+                             @NotNull final Map<STestRun, STestRun> clusterTestRuns,
+                             @NotNull final FailureClusters failureClusters) {
+    for (STestRun testRun : testRuns) {
+      if (heuristicResult.getResponsibility(testRun) != null) {
+        continue;
+      }
 
-      testRuns = heuristicContext.getTestRuns()
-                                 .stream()
-                                 .filter(sTestRun -> heuristicResult.getResponsibility(sTestRun) == null)
-                                 .collect(Collectors.toList());
+      Responsibility responsibility =
+        heuristicResult.getResponsibility(clusterTestRuns.get(failureClusters.getRepresentative(testRun)));
+      if (responsibility != null) {
+        heuristicResult.addResponsibility(testRun, responsibility);
+      }
+    }
+  }
+
+  private static class StartedHeuristic {
+    private final HeuristicContext myHeuristicContext;
+    private final CompletableFuture<HeuristicResult> myFuture;
 
-      result.merge(heuristicResult);
+    private StartedHeuristic(@NotNull final HeuristicContext heuristicContext,
+                             @NotNull final CompletableFuture<HeuristicResult> future) {
+      myHeuristicContext = heuristicContext;
+      myFuture = future;
+    }
+
+    /**
+     * The heuristic was started for all failures, so only results for the failures from the current context are taken.
+     */
+    @NotNull
+    HeuristicResult getResult(@NotNull final HeuristicContext currentContext) {
+      HeuristicResult heuristicResult;
+      try {
+        heuristicResult = myFuture.join();
+      } catch (CancellationException | CompletionException ex) {
+        LOGGER.warn("Asynchronous heuristic failed. Build: " + LogUtil.describe(currentContext.getBuild()), ex);
+        return new HeuristicResult();
+      }
 
-      if (buildProblems.isEmpty() && testRuns.isEmpty()) {
-        break;
+      HeuristicResult result = new HeuristicResult();
+      for (STestRun sTestRun : currentContext.getTestRuns()) {
+        Responsibility responsibility = heuristicResult.getResponsibility(sTestRun);
+        if (responsibility != null) {
+          result.addResponsibility(sTestRun, responsibility);
+        }
+      }
+      for (BuildProblem buildProblem : currentContext.getBuildProblems()) {
+        Responsibility responsibility = heuristicResult.getResponsibility(buildProblem);
+        if (responsibility != null) {
+          result.addResponsibility(buildProblem, responsibility);
+        }
+      }
+
+      return result;
+    }
+
+    void cancel() {
+      myHeuristicContext.cancel();
+      myFuture.cancel(false);
+    }
+  }
+
+  /**
+   * Asks every enabled heuristic about each failure in turn, stopping at the first found responsible user,
+   * so neither intermediate failure lists are built nor resolved failures are passed to next heuristics.
+   * When a heuristic turns out to be not applicable, the failures it resolved are passed to next heuristics,
+   * so the result is the same as of the sequential evaluation.
+   */
+  @NotNull
+  private HeuristicResult evaluateInOnePass(SBuild sBuild,
+                                            SProject sProject,
+                                            List<BuildProblem> buildProblems,
+                                            List<STestRun> testRuns,
+                                            Set<String> usernamesBlackList,
+                                            @NotNull ResponsibilityInterner responsibilityInterner,
+                                            @NotNull BuildChanges buildChanges) {
+    HeuristicContext heuristicContext =
+      new HeuristicContext(sBuild, sProject, buildProblems, testRuns, usernamesBlackList, responsibilityInterner,
+                           buildChanges);
+    List<HeuristicEvaluator> evaluators = new ArrayList<>(myOrderedHeuristics.size());
+    for (Heuristic heuristic : myOrderedHeuristics) {
+      if (!myCustomParameters.isHeuristicsDisabled(heuristic.getId())) {
+        evaluators.add(heuristic.getEvaluator(heuristicContext));
       }
     }
 
+    OnePassEvaluation<STestRun> testRunsEvaluation = new OnePassEvaluation<>(testRuns, HeuristicEvaluator::evaluate);
+    OnePassEvaluation<BuildProblem> buildProblemsEvaluation =
+      new OnePassEvaluation<>(buildProblems, HeuristicEvaluator::evaluate);
+    testRunsEvaluation.evaluate(evaluators);
+    buildProblemsEvaluation.evaluate(evaluators);
+    boolean isChanged;
+    do {
+      // a heuristic may become not applicable while the failures resolved by the other heuristics are re-evaluated
+      isChanged = testRunsEvaluation.discardNotApplicable(evaluators);
+      isChanged |= buildProblemsEvaluation.discardNotApplicable(evaluators);
+    } while (isChanged);
+
+    HeuristicResult result = new HeuristicResult();
+    testRunsEvaluation.collect(result::addResponsibility);
+    buildProblemsEvaluation.collect(result::addResponsibility);
+
     return result;
   }
+
+  /**
+   * Responsible users found in one pass for failures of one kind along with the evaluators which found them.
+   */
+  private static class OnePassEvaluation<T> {
+    private final List<T> myFailures;
+    private final BiFunction<HeuristicEvaluator, T, Responsibility> myEvaluation;
+    private final int[] myEvaluatorIndexes;
+    private final Responsibility[] myResponsibilities;
+
+    private OnePassEvaluation(@NotNull final List<T> failures,
+                              @NotNull final BiFunction<HeuristicEvaluator, T, Responsibility> evaluation) {
+      myFailures = failures;
+      myEvaluation = evaluation;
+      myEvaluatorIndexes = new int[failures.size()];
+      myResponsibilities = new Responsibility[failures.size()];
+    }
+
+    void evaluate(@NotNull final List<HeuristicEvaluator> evaluators) {
+      for (int i = 0; i < myFailures.size(); i++) {
+        evaluate(i, 0, evaluators);
+      }
+    }
+
+    /**
+     * @return true if some failures were resolved by not applicable heuristics and so were evaluated again.
+     */
+    boolean discardNotApplicable(@NotNull final List<HeuristicEvaluator> evaluators) {
+      boolean isDiscarded = false;
+      for (int i = 0; i < myFailures.size(); i++) {
+        int evaluatorIndex = myEvaluatorIndexes[i];
+        if (myResponsibilities[i] != null && !evaluators.get(evaluatorIndex).isApplicable()) {
+          evaluate(i, evaluatorIndex + 1, evaluators);
+          isDiscarded = true;
+        }
+      }
+
+      return isDiscarded;
+    }
+
+    void collect(@NotNull final BiConsumer<T, Responsibility> consumer) {
+      for (int i = 0; i < myFailures.size(); i++) {
+        if (myResponsibilities[i] != null) {
+          consumer.accept(myFailures.get(i), myResponsibilities[i]);
+        }
+      }
+    }
+
+    private void evaluate(final int failureIndex, final int firstEvaluatorIndex,
+                          @NotNull final List<HeuristicEvaluator> evaluators) {
+      myResponsibilities[failureIndex] = null;
+      for (int evaluatorIndex = firstEvaluatorIndex; evaluatorIndex < evaluators.size(); evaluatorIndex++) {
+        HeuristicEvaluator evaluator = evaluators.get(evaluatorIndex);
+        if (!evaluator.isApplicable()) {
+          continue;
+        }
+
+        Responsibility responsibility = myEvaluation.apply(evaluator, myFailures.get(failureIndex));
+        if (responsibility != null) {
+          myEvaluatorIndexes[failureIndex] = evaluatorIndex;
+          myResponsibilities[failureIndex] = responsibility;
+          return;
+        }
+      }
+    }
+  }
 }
@@ -98,6 +98,12 @@ public class AutoAssignerDetailsController extends BaseController {
       return null;
     }
 
+    // suggestions are stored only for the build where the test failed for the first time
+    boolean isFirstFailure = sTestRun.isNewFailure();
+    if (isFirstFailure && myAssignerArtifactDao.isKnownWithoutSuggestions(build)) {
+      return null;
+    }
+
     boolean assignShouldNotBeShow = !isDefaultBranch ||
                                      myFlakyTestDetector.isFlaky(sTestRun.getTest().getTestNameId()) ||
                                      isUnderInvestigation(build, sTestRun.getTest());
@@ -106,9 +112,17 @@ public class AutoAssignerDetailsController extends BaseController {
       return null;
     }
 
-    final FirstFailedInFixedInCalculator.FFIData ffiData = myStatisticsProvider.calculateFFIData(sTestRun);
+    @Nullable SBuild firstFailedBuild;
+    if (isFirstFailure) {
+      firstFailedBuild = build;
+    } else {
+      final FirstFailedInFixedInCalculator.FFIData ffiData = myStatisticsProvider.calculateFFIData(sTestRun);
+      firstFailedBuild = myServer.findBuildInstanceById(ffiData.getFirstFailedInId());
+      if (firstFailedBuild != null && myAssignerArtifactDao.isKnownWithoutSuggestions(firstFailedBuild)) {
+        return null;
+      }
+    }
 
-    @Nullable SBuild firstFailedBuild = myServer.findBuildInstanceById(ffiData.getFirstFailedInId());
     Responsibility responsibility = myAssignerArtifactDao.get(firstFailedBuild, sTestRun);
     if (responsibility != null) {
       final ModelAndView modelAndView = new ModelAndView(myDynamicTestDetailsExtensionPath);
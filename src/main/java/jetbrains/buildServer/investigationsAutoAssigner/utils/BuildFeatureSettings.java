@@ -0,0 +1,122 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.utils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import jetbrains.buildServer.BuildProblemTypes;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildFeatureDescriptor;
+import jetbrains.buildServer.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable settings of the Investigations Auto-Assigner build feature parsed once from the build feature parameters.
+ */
+public final class BuildFeatureSettings {
+  static final BuildFeatureSettings DISABLED =
+    new BuildFeatureSettings(false, null, Collections.emptySet(), false, Collections.emptyList());
+
+  private final boolean myIsEnabled;
+  @Nullable private final String myDefaultResponsible;
+  @NotNull private final Set<String> myUsersToIgnore;
+  private final boolean myShouldDelayAssignments;
+  @NotNull private final List<String> myBuildProblemTypesToIgnore;
+
+  private BuildFeatureSettings(final boolean isEnabled,
+                               @Nullable final String defaultResponsible,
+                               @NotNull final Set<String> usersToIgnore,
+                               final boolean shouldDelayAssignments,
+                               @NotNull final List<String> buildProblemTypesToIgnore) {
+    myIsEnabled = isEnabled;
+    myDefaultResponsible = defaultResponsible;
+    myUsersToIgnore = usersToIgnore;
+    myShouldDelayAssignments = shouldDelayAssignments;
+    myBuildProblemTypesToIgnore = buildProblemTypesToIgnore;
+  }
+
+  @NotNull
+  static BuildFeatureSettings of(@NotNull final SBuild build) {
+    Collection<SBuildFeatureDescriptor> descriptors = build.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE);
+    if (descriptors.isEmpty()) {
+      return DISABLED;
+    }
+
+    Map<String, String> parameters = descriptors.iterator().next().getParameters();
+    return new BuildFeatureSettings(true,
+                                    parameters.get(Constants.DEFAULT_RESPONSIBLE),
+                                    parseUsersToIgnore(parameters.get(Constants.USERS_TO_IGNORE)),
+                                    StringUtil.isTrue(parameters.get(Constants.ASSIGN_ON_SECOND_FAILURE)),
+                                    parseBuildProblemTypesToIgnore(parameters));
+  }
+
+  @NotNull
+  static Set<String> parseUsersToIgnore(@Nullable final String usersToIgnore) {
+    if (usersToIgnore == null) {
+      return Collections.emptySet();
+    }
+
+    return Collections.unmodifiableSet(Arrays.stream(usersToIgnore.split("\n"))
+                                             .map(String::trim)
+                                             .collect(Collectors.toSet()));
+  }
+
+  @NotNull
+  static List<String> parseBuildProblemTypesToIgnore(@NotNull final Map<String, String> parameters) {
+    boolean shouldIgnoreCompilation = "true".equals(parameters.get(Constants.SHOULD_IGNORE_COMPILATION_PROBLEMS));
+    boolean shouldIgnoreExitCode = "true".equals(parameters.get(Constants.SHOULD_IGNORE_EXITCODE_PROBLEMS));
+
+    if (shouldIgnoreExitCode || shouldIgnoreCompilation) {
+      ArrayList<String> result = new ArrayList<>();
+      if (shouldIgnoreCompilation) {
+        result.add(BuildProblemTypes.TC_COMPILATION_ERROR_TYPE);
+      }
+      if (shouldIgnoreExitCode) {
+        result.add(BuildProblemTypes.TC_EXIT_CODE_TYPE);
+      }
+
+      return Collections.unmodifiableList(result);
+    }
+
+    return Collections.emptyList();
+  }
+
+  public boolean isEnabled() {
+    return myIsEnabled;
+  }
+
+  @Nullable
+  public String getDefaultResponsible() {
+    return myDefaultResponsible;
+  }
+
+  @NotNull
+  public Set<String> getUsersToIgnore() {
+    return myUsersToIgnore;
+  }
+
+  public boolean shouldDelayAssignments() {
+    return myShouldDelayAssignments;
+  }
+
+  @NotNull
+  public List<String> getBuildProblemTypesToIgnore() {
+    return myBuildProblemTypesToIgnore;
+  }
+}
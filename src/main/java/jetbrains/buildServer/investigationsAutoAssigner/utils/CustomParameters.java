@@ -17,12 +17,10 @@
 package jetbrains.buildServer.investigationsAutoAssigner.utils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import jetbrains.buildServer.BuildProblemTypes;
+import java.util.concurrent.ConcurrentHashMap;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
-import jetbrains.buildServer.serverSide.SBuild;
-import jetbrains.buildServer.serverSide.SBuildFeatureDescriptor;
-import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.parameters.ReferencesResolverUtil;
+import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -30,6 +28,36 @@ import org.jetbrains.annotations.Nullable;
 public class CustomParameters {
   private final static Integer MINIMAL_PROCESSING_DELAY = 5;
   private final static Integer DEFAULT_PROCESSING_DELAY_IN_SECONDS = 30;
+  private final static long HEURISTICS_PROPERTIES_TTL_MS = 10_000;
+  private final Map<String, CachedSettings> myBuildTypeSettings = new ConcurrentHashMap<>();
+  private final Map<String, Long> myBuildTypeChangeTimes = new ConcurrentHashMap<>();
+  private volatile long myLastConfigurationChangeTime = System.currentTimeMillis();
+  private final Map<String, Boolean> myDisabledHeuristics = new ConcurrentHashMap<>();
+  private volatile long myDisabledHeuristicsReadTime = System.currentTimeMillis();
+
+  public CustomParameters(@NotNull final BuildServerListenerEventDispatcher buildServerListenerEventDispatcher) {
+    buildServerListenerEventDispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void buildTypePersisted(@NotNull final SBuildType buildType) {
+        invalidate(buildType.getInternalId());
+      }
+
+      @Override
+      public void buildTypeUnregistered(@NotNull final SBuildType buildType) {
+        invalidate(buildType.getInternalId());
+      }
+
+      @Override
+      public void buildTypeTemplatePersisted(@NotNull final BuildTypeTemplate buildTemplate) {
+        invalidateAll();
+      }
+
+      @Override
+      public void projectPersisted(@NotNull final String projectId) {
+        invalidateAll();
+      }
+    });
+  }
 
   @Nullable
   public static String getDefaultResponsible(final SBuild build) {
@@ -45,12 +73,80 @@ public class CustomParameters {
       return Collections.emptySet();
     }
 
-    String usersToIgnore = sBuildFeature.getParameters().get(Constants.USERS_TO_IGNORE);
-    if (usersToIgnore == null) {
-      return Collections.emptySet();
+    return BuildFeatureSettings.parseUsersToIgnore(sBuildFeature.getParameters().get(Constants.USERS_TO_IGNORE));
+  }
+
+  /**
+   * Same as {@link #getUsersToIgnore(SBuild)}, but takes the already parsed settings of the build configuration.
+   */
+  @NotNull
+  public Set<String> getIgnoredUsernames(@NotNull final SBuild build) {
+    return getSettings(build).getUsersToIgnore();
+  }
+
+  /**
+   * Build feature settings are read from the build, but builds of the same configuration started after the last
+   * change of the configuration share the parsed settings. Builds which could be started with other settings
+   * (before the change or from a feature branch with versioned settings) are parsed every time, as well as settings
+   * with parameter references, which are resolved differently in each build.
+   */
+  @NotNull
+  public BuildFeatureSettings getSettings(@NotNull final SBuild build) {
+    final String buildTypeId = build.getBuildTypeId();
+    final Date startDate = build.getStartDate();
+    final Branch branch = build.getBranch();
+    if (buildTypeId == null || startDate == null || (branch != null && !branch.isDefaultBranch())) {
+      return BuildFeatureSettings.of(build);
+    }
+
+    final long startTime = startDate.getTime();
+    CachedSettings cachedSettings = myBuildTypeSettings.get(buildTypeId);
+    if (cachedSettings != null && startTime > getLastChangeTime(buildTypeId)) {
+      return cachedSettings.mySettings != null ? cachedSettings.mySettings : BuildFeatureSettings.of(build);
+    }
+
+    final SBuildType buildType = build.getBuildType();
+    final BuildFeatureSettings settings = BuildFeatureSettings.of(build);
+    if (buildType == null) {
+      return settings;
+    }
+
+    cachedSettings = new CachedSettings(hasReferences(buildType) ? null : settings);
+    synchronized (this) {
+      if (startTime > getLastChangeTime(buildTypeId)) {
+        myBuildTypeSettings.put(buildTypeId, cachedSettings);
+      }
+    }
+
+    return settings;
+  }
+
+  private static boolean hasReferences(@NotNull final SBuildType buildType) {
+    for (SBuildFeatureDescriptor descriptor : buildType.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE)) {
+      for (String value : descriptor.getParameters().values()) {
+        if (ReferencesResolverUtil.mayContainReference(value)) {
+          return true;
+        }
+      }
     }
 
-    return Arrays.stream(usersToIgnore.split("\n")).map(String::trim).collect(Collectors.toSet());
+    return false;
+  }
+
+  private long getLastChangeTime(@NotNull final String buildTypeId) {
+    return Math.max(myLastConfigurationChangeTime, myBuildTypeChangeTimes.getOrDefault(buildTypeId, 0L));
+  }
+
+  private synchronized void invalidate(@NotNull final String buildTypeId) {
+    myBuildTypeChangeTimes.put(buildTypeId, System.currentTimeMillis());
+    myBuildTypeSettings.remove(buildTypeId);
+  }
+
+  private synchronized void invalidateAll() {
+    myLastConfigurationChangeTime = System.currentTimeMillis();
+    myBuildTypeChangeTimes.clear();
+    myBuildTypeSettings.clear();
+    myDisabledHeuristics.clear();
   }
 
   public boolean isDefaultSilentModeEnabled(final SBuild build) {
@@ -92,26 +188,30 @@ public class CustomParameters {
     return TeamCityProperties.getInteger(Constants.MAX_TESTS_PER_BUILD_NUMBER, Constants.DEFAULT_TEST_COUNT_THRESHOLD);
   }
 
+  /**
+   * @return the share of failed tests (in percents) starting from which the build is considered as a mass failure,
+   * 0 if mass failures should not be detected.
+   */
+  public static int getMassFailurePercent(SBuild build) {
+    @Nullable
+    String massFailurePercent = build.getBuildOwnParameters().get(Constants.MASS_FAILURE_PERCENT);
+    int value = StringUtil.isNotEmpty(massFailurePercent)
+                ? StringUtil.parseInt(massFailurePercent, Constants.DEFAULT_MASS_FAILURE_PERCENT)
+                : TeamCityProperties.getInteger(Constants.MASS_FAILURE_PERCENT, Constants.DEFAULT_MASS_FAILURE_PERCENT);
+    return value > 0 && value <= 100 ? value : 0;
+  }
+
   private static int parseThreshold(@NotNull String value) {
     int parsedValue = StringUtil.parseInt(value, Constants.DEFAULT_TEST_COUNT_THRESHOLD);
     return parsedValue >= 0 ? parsedValue : Integer.MAX_VALUE;
   }
 
   public boolean shouldDelayAssignments(final SBuild sBuild) {
-    final SBuildFeatureDescriptor sBuildFeature = getBuildFeatureDescriptor(sBuild);
-    if (sBuildFeature == null) {
-      return false;
-    }
-
-    @Nullable
-    String shouldDelayAssignments = sBuildFeature.getParameters().get(Constants.ASSIGN_ON_SECOND_FAILURE);
-    return StringUtil.isTrue(shouldDelayAssignments);
+    return getSettings(sBuild).shouldDelayAssignments();
   }
 
   public boolean isBuildFeatureEnabled(@NotNull SBuild sBuild) {
-    Collection<SBuildFeatureDescriptor> descriptors = sBuild.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE);
-
-    return !descriptors.isEmpty();
+    return getSettings(sBuild).isEnabled();
   }
 
   public static boolean shouldRunForFeatureBranches(SBuild build) {
@@ -128,31 +228,31 @@ public class CustomParameters {
 
   @NotNull
   public List<String> getBuildProblemTypesToIgnore(final SBuild sBuild) {
-    final SBuildFeatureDescriptor sBuildFeature = getBuildFeatureDescriptor(sBuild);
-    if (sBuildFeature == null) {
-      return Collections.emptyList();
-    }
-
-    boolean shouldIgnoreCompilation = "true".equals(sBuildFeature.getParameters().get(Constants.SHOULD_IGNORE_COMPILATION_PROBLEMS));
-    boolean shouldIgnoreExitCode = "true".equals(sBuildFeature.getParameters().get(Constants.SHOULD_IGNORE_EXITCODE_PROBLEMS));
-
-    if (shouldIgnoreExitCode || shouldIgnoreCompilation) {
-      ArrayList<String> result = new ArrayList<>();
-      if (shouldIgnoreCompilation) {
-        result.add(BuildProblemTypes.TC_COMPILATION_ERROR_TYPE);
-      }
-      if (shouldIgnoreExitCode) {
-        result.add(BuildProblemTypes.TC_EXIT_CODE_TYPE);
-      }
+    return getSettings(sBuild).getBuildProblemTypesToIgnore();
+  }
 
-      return result;
+  /**
+   * The internal properties are read again when the configuration changes or after a few seconds.
+   */
+  public boolean  isHeuristicsDisabled(@NotNull final String heuristicId) {
+    final long now = System.currentTimeMillis();
+    if (now - myDisabledHeuristicsReadTime > HEURISTICS_PROPERTIES_TTL_MS) {
+      myDisabledHeuristicsReadTime = now;
+      myDisabledHeuristics.clear();
     }
 
-    return Collections.emptyList();
+    return myDisabledHeuristics.computeIfAbsent(heuristicId, id -> {
+      String propertyName = "teamcity.investigationsAutoAssigner.heuristics." + id + ".enabled";
+      return !TeamCityProperties.getBooleanOrTrue(propertyName);
+    });
   }
 
-  public boolean  isHeuristicsDisabled(@NotNull final String heuristicId) {
-    String propertyName = "teamcity.investigationsAutoAssigner.heuristics." + heuristicId + ".enabled";
-    return !TeamCityProperties.getBooleanOrTrue(propertyName);
+  private static final class CachedSettings {
+    // null when the settings contain parameter references
+    @Nullable private final BuildFeatureSettings mySettings;
+
+    private CachedSettings(@Nullable final BuildFeatureSettings settings) {
+      mySettings = settings;
+    }
   }
 }
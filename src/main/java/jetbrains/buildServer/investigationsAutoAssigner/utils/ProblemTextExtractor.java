@@ -16,7 +16,10 @@
 
 package jetbrains.buildServer.investigationsAutoAssigner.utils;
 
-import java.util.List;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import jetbrains.buildServer.BuildProblemTypes;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
@@ -36,27 +39,69 @@ import org.jetbrains.annotations.Nullable;
 import static jetbrains.buildServer.serverSide.impl.problems.types.CompilationErrorTypeDetailsProvider.COMPILE_BLOCK_INDEX;
 
 public class ProblemTextExtractor {
+  /**
+   * Compile errors text by build id and build problem id. Logged compile errors do not change, so the build log
+   * is read once per problem instead of once per processing pass. Entries are removed when the build is processed
+   * for the last time, the size limit only covers builds whose finish was missed.
+   */
+  private final Map<Long, Map<Integer, String>> myCompileErrorsCache =
+    Collections.synchronizedMap(new LinkedHashMap<Long, Map<Integer, String>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, Map<Integer, String>> eldest) {
+        return size() > TeamCityProperties.getInteger(Constants.COMPILE_ERRORS_CACHE_BUILDS,
+                                                      Constants.DEFAULT_COMPILE_ERRORS_CACHE_BUILDS);
+      }
+    });
+
   public String getBuildProblemText(@NotNull final BuildProblem problem, @NotNull final SBuild build) {
-    StringBuilder problemSpecificText = new StringBuilder();
+    String problemSpecificText = "";
 
     // todo make an extension point here
     if (problem.getBuildProblemData().getType().equals(BuildProblemTypes.TC_COMPILATION_ERROR_TYPE)) {
       final Integer compileBlockIndex = getCompileBlockIndex(problem);
       if (compileBlockIndex != null) {
-        AtomicInteger maxErrors = new AtomicInteger(TeamCityProperties.getInteger(Constants.MAX_COMPILE_ERRORS_TO_PROCESS, 100));
-        BuildLogCompileErrorCollector.collectCompileErrors(compileBlockIndex, build, new ItemProcessor<LogMessage>() {
-          @Override
-          public boolean processItem(final LogMessage item) {
-            problemSpecificText.append(item.getText()).append(" ");
-            return maxErrors.decrementAndGet() > 0;
-          }
-        });
+        problemSpecificText = getCompileErrorsText(problem, build, compileBlockIndex);
       }
     }
 
     return problemSpecificText + " " + problem.getBuildProblemDescription();
   }
 
+  @NotNull
+  private String getCompileErrorsText(@NotNull final BuildProblem problem,
+                                      @NotNull final SBuild build,
+                                      final int compileBlockIndex) {
+    Map<Integer, String> buildCache = myCompileErrorsCache.computeIfAbsent(build.getBuildId(), devNull -> new ConcurrentHashMap<>());
+    String cached = buildCache.get(problem.getId());
+    if (cached != null) {
+      return cached;
+    }
+
+    StringBuilder compileErrorsText = new StringBuilder();
+    AtomicInteger maxErrors = new AtomicInteger(TeamCityProperties.getInteger(Constants.MAX_COMPILE_ERRORS_TO_PROCESS, 100));
+    collectCompileErrors(compileBlockIndex, build, new ItemProcessor<LogMessage>() {
+      @Override
+      public boolean processItem(final LogMessage item) {
+        compileErrorsText.append(item.getText()).append(" ");
+        return maxErrors.decrementAndGet() > 0;
+      }
+    });
+
+    String result = compileErrorsText.toString();
+    buildCache.put(problem.getId(), result);
+    return result;
+  }
+
+  void collectCompileErrors(final int compileBlockIndex,
+                            @NotNull final SBuild build,
+                            @NotNull final ItemProcessor<LogMessage> processor) {
+    BuildLogCompileErrorCollector.collectCompileErrors(compileBlockIndex, build, processor);
+  }
+
+  public void remove(final long buildId) {
+    myCompileErrorsCache.remove(buildId);
+  }
+
   @Nullable
   private static Integer getCompileBlockIndex(@NotNull final BuildProblem problem) {
     final String compilationBlockIndex = problem.getBuildProblemData().getAdditionalData();
@@ -70,9 +115,57 @@ public class ProblemTextExtractor {
     }
   }
 
+  /**
+   * Test output may take megabytes, so only a bounded window of it is used: the beginning of the text
+   * and the stack trace frames from the rest (they refer source files, which is what heuristics look for).
+   */
   public String getBuildProblemText(STestRun sTestRun) {
     final STest test = sTestRun.getTest();
     final TestName testName = test.getName();
-    return testName.getAsString() + " " + sTestRun.getFullText();
+    return testName.getAsString() + " " + getBoundedText(sTestRun);
+  }
+
+  @NotNull
+  public static String getBoundedText(@NotNull final STestRun sTestRun) {
+    int windowSize = TeamCityProperties.getInteger(Constants.TEST_TEXT_WINDOW_KB, Constants.DEFAULT_TEST_TEXT_WINDOW_KB) * 1024;
+    return getBoundedText(sTestRun.getFullText(), windowSize);
+  }
+
+  @NotNull
+  static String getBoundedText(@Nullable final String fullText, final int windowSize) {
+    if (fullText == null) {
+      return "";
+    }
+    if (windowSize <= 0 || fullText.length() <= windowSize) {
+      return fullText;
+    }
+
+    StringBuilder result = new StringBuilder(windowSize * 2);
+    result.append(fullText, 0, windowSize).append('\n');
+
+    int framesBudget = windowSize;
+    int lineStart = fullText.indexOf('\n', windowSize) + 1;
+    while (lineStart > 0 && lineStart < fullText.length() && framesBudget > 0) {
+      int lineEnd = fullText.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = fullText.length();
+      }
+
+      if (isStackTraceFrame(fullText, lineStart, lineEnd)) {
+        int length = Math.min(lineEnd - lineStart, framesBudget);
+        result.append(fullText, lineStart, lineStart + length).append('\n');
+        framesBudget -= length;
+      }
+      lineStart = lineEnd + 1;
+    }
+
+    return result.toString();
+  }
+
+  private static boolean isStackTraceFrame(@NotNull final String text, int lineStart, final int lineEnd) {
+    while (lineStart < lineEnd && Character.isWhitespace(text.charAt(lineStart))) {
+      lineStart++;
+    }
+    return text.startsWith("at ", lineStart) && lineStart + 3 < lineEnd;
   }
 }
@@ -16,7 +16,11 @@
 
 package jetbrains.buildServer.investigationsAutoAssigner.utils;
 
-import jetbrains.buildServer.serverSide.Parameter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
 import jetbrains.buildServer.serverSide.ProjectManager;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.auth.Permission;
@@ -31,20 +35,78 @@ import static jetbrains.buildServer.investigationsAutoAssigner.common.Constants.
 
 public class TargetProjectFinder {
 
+  private static final String NO_PREFERRED_PROJECT = "";
   private final @NotNull ProjectManager myProjectManager;
+  /**
+   * Base project internal id -> internal id of its preferred investigation project or {@link #NO_PREFERRED_PROJECT}.
+   * Parameters are inherited from parent projects, so everything is dropped on any change of projects.
+   */
+  private final Map<String, String> myPreferredProjectIds = new ConcurrentHashMap<>();
+  private final AtomicLong myProjectModelVersion = new AtomicLong();
 
-  public TargetProjectFinder(@NotNull final ProjectManager projectManager) {
+  public TargetProjectFinder(@NotNull final ProjectManager projectManager,
+                             @NotNull final BuildServerListenerEventDispatcher buildServerListenerEventDispatcher) {
     myProjectManager = projectManager;
+    buildServerListenerEventDispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void projectPersisted(@NotNull final String projectId) {
+        invalidate();
+      }
+
+      @Override
+      public void projectRemoved(@NotNull final String projectId) {
+        invalidate();
+      }
+
+      @Override
+      public void projectRestored(@NotNull final String projectId) {
+        invalidate();
+      }
+
+      @Override
+      public void projectMoved(@NotNull final SProject project, @NotNull final SProject originalParentProject) {
+        invalidate();
+      }
+    });
+  }
+
+  private void invalidate() {
+    myProjectModelVersion.incrementAndGet();
+    myPreferredProjectIds.clear();
   }
 
   @Nullable
   public SProject getPreferredInvestigationProject(@NotNull SProject baseProject, @Nullable SUser currentUser) {
+    final SProject p = findPreferredInvestigationProject(baseProject);
+    if (p != null && (currentUser == null || hasModifyPermission(currentUser, p))) {
+      return p;
+    }
+    return null;
+  }
+
+  @Nullable
+  private SProject findPreferredInvestigationProject(@NotNull SProject baseProject) {
+    final String cachedProjectId = myPreferredProjectIds.get(baseProject.getProjectId());
+    if (cachedProjectId != null) {
+      return NO_PREFERRED_PROJECT.equals(cachedProjectId) ? null : myProjectManager.findProjectById(cachedProjectId);
+    }
+
+    final long projectModelVersion = myProjectModelVersion.get();
+    final SProject p = resolvePreferredInvestigationProject(baseProject);
+    if (projectModelVersion == myProjectModelVersion.get()) {
+      myPreferredProjectIds.put(baseProject.getProjectId(), p != null ? p.getProjectId() : NO_PREFERRED_PROJECT);
+    }
+    return p;
+  }
+
+  @Nullable
+  private SProject resolvePreferredInvestigationProject(@NotNull SProject baseProject) {
     final boolean tryDetectPreferredProject = ((ProjectEx)baseProject).getBooleanInternalParameterOrTrue(USE_PREFERRED_PROJECT);
     final String preferredProjectExtId = ((ProjectEx)baseProject).getInternalParameterValue(PREFERRED_INVESTIGATION_PROJECT, "");
 
     if (tryDetectPreferredProject && StringUtil.isNotEmpty(preferredProjectExtId)) {
       final SProject p = myProjectManager.findProjectByExternalId(preferredProjectExtId);
-      if (p != null && !p.isRootProject() && (currentUser == null || hasModifyPermission(currentUser, p))) {
+      if (p != null && !p.isRootProject()) {
         return p;
       }
     }
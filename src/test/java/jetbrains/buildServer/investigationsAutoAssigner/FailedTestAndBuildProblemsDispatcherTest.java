@@ -18,14 +18,19 @@ package jetbrains.buildServer.investigationsAutoAssigner;
 
 import java.util.Collections;
 import jetbrains.buildServer.agentServer.Server;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.investigationsAutoAssigner.persistent.AssignerArtifactDao;
 import jetbrains.buildServer.investigationsAutoAssigner.persistent.StatisticsReporter;
+import jetbrains.buildServer.investigationsAutoAssigner.processing.BuildChangesCache;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.DelayedAssignmentsProcessor;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.FailedTestAndBuildProblemsProcessor;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.CustomParameters;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.AggregationLogger;
+import jetbrains.buildServer.investigationsAutoAssigner.utils.ProblemTextExtractor;
 import jetbrains.buildServer.parameters.ParametersProvider;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.impl.auth.SecurityContextImpl;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -47,6 +52,9 @@ public class FailedTestAndBuildProblemsDispatcherTest {
   private CustomParameters myCustomParameters;
   private DelayedAssignmentsProcessor myDelayedAssignmentsProcessor;
   private SBuildType mySBuildType;
+  private BuildChangesCache myBuildChangesCache;
+  private AssignerArtifactDao myAssignerArtifactDao;
+  private ProblemTextExtractor myProblemTextExtractor;
 
   @BeforeMethod
   public void setUp() throws Throwable {
@@ -99,6 +107,9 @@ public class FailedTestAndBuildProblemsDispatcherTest {
     when(myCustomParameters.isBuildFeatureEnabled(any())).thenReturn(true);
     StatisticsReporter statisticsReporter = mock(StatisticsReporter.class);
 
+    myBuildChangesCache = mock(BuildChangesCache.class);
+    myAssignerArtifactDao = mock(AssignerArtifactDao.class);
+    myProblemTextExtractor = mock(ProblemTextExtractor.class);
     ServerResponsibility serverResponsibility = mock(ServerResponsibility.class);
     when(serverResponsibility.canSendNotifications()).thenReturn(true);
 
@@ -108,7 +119,11 @@ public class FailedTestAndBuildProblemsDispatcherTest {
                                              aggregationLogger,
                                              statisticsReporter,
                                              myCustomParameters,
-                                             serverResponsibility);
+                                             serverResponsibility,
+                                             mock(SBuildServer.class),
+                                             myBuildChangesCache,
+                                             myAssignerArtifactDao,
+                                             myProblemTextExtractor);
 
   }
 
@@ -167,6 +182,62 @@ public class FailedTestAndBuildProblemsDispatcherTest {
     verifyMarkOfPassForBuildFinished(1);
   }
 
+  public void Test_BuildFinished_SuggestionsIndexed() {
+    myBsDispatcher.getMulticaster().buildProblemsChanged(myBuild, Collections.emptyList(), Collections.emptyList());
+    myBsDispatcher.getMulticaster().buildFinished(myRunningBuild);
+
+    verify(myAssignerArtifactDao, timeout(1000)).completeBuild(myRunningBuild);
+  }
+
+  public void Test_BuildFinished_NotFailedBuildNotIndexed() {
+    myBsDispatcher.getMulticaster().buildFinished(myRunningBuild);
+    // dropping of the prefetched changes is the last task for the finished build
+    verify(myBuildChangesCache, timeout(1000)).remove(239L);
+
+    verify(myAssignerArtifactDao, never()).completeBuild(any());
+  }
+
+  public void Test_BuildFinished_CompileErrorsDroppedAfterProcessing() {
+    myBsDispatcher.getMulticaster().buildProblemsChanged(myBuild, Collections.emptyList(), Collections.emptyList());
+    myBsDispatcher.getMulticaster().buildFinished(myRunningBuild);
+
+    verify(myProblemTextExtractor, timeout(1000)).remove(239L);
+    InOrder inOrder = inOrder(myAssignerArtifactDao, myProblemTextExtractor);
+    inOrder.verify(myAssignerArtifactDao).completeBuild(myRunningBuild);
+    inOrder.verify(myProblemTextExtractor).remove(239L);
+  }
+
+  public void Test_BuildInterrupted_CompileErrorsDropped() {
+    myBsDispatcher.getMulticaster().buildInterrupted(myRunningBuild);
+    verify(myProblemTextExtractor).remove(239L);
+  }
+
+  public void Test_BuildStarted_ChangesPrefetched() {
+    System.setProperty(Constants.PREFETCH_BUILD_CHANGES, "true");
+    try {
+      myBsDispatcher.getMulticaster().buildStarted(myRunningBuild);
+    } finally {
+      System.clearProperty(Constants.PREFETCH_BUILD_CHANGES);
+    }
+    verify(myBuildChangesCache).prefetch(myRunningBuild);
+  }
+
+  public void Test_BuildStarted_NotPrefetchedByDefault() {
+    myBsDispatcher.getMulticaster().buildStarted(myRunningBuild);
+    verify(myBuildChangesCache, never()).prefetch(any());
+  }
+
+  public void Test_BuildStarted_PersonalBuildIgnored() {
+    when(myRunningBuild.isPersonal()).thenReturn(true);
+    System.setProperty(Constants.PREFETCH_BUILD_CHANGES, "true");
+    try {
+      myBsDispatcher.getMulticaster().buildStarted(myRunningBuild);
+    } finally {
+      System.clearProperty(Constants.PREFETCH_BUILD_CHANGES);
+    }
+    verify(myBuildChangesCache, never()).prefetch(any());
+  }
+
   private void verifyMarkOfPassBuildProblemsChanged(int expectedExecutions) {
     await().atMost(1, SECONDS)
            .pollDelay(50, MILLISECONDS)
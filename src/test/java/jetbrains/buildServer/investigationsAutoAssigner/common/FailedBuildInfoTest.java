@@ -0,0 +1,96 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.common;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildServer;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+@Test
+public class FailedBuildInfoTest {
+  private static final long BUILD_ID = 239L;
+  private static final int BUILD_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+  public void testReleasedInfoDoesNotRetainBuild() throws InterruptedException {
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(createHeavyBuild(), true);
+    WeakReference<SBuild> buildReference = new WeakReference<>(failedBuildInfo.getBuild());
+
+    failedBuildInfo.releaseBuild();
+
+    for (int i = 0; i < 50 && buildReference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertNull(buildReference.get(), "Released FailedBuildInfo should not retain the build");
+    assertFalse(failedBuildInfo.isBuildLoaded());
+    assertEquals(failedBuildInfo.getBuildId(), BUILD_ID);
+  }
+
+  public void testReloadBuild() {
+    SBuild sBuild = Mockito.mock(SBuild.class);
+    when(sBuild.getBuildId()).thenReturn(BUILD_ID);
+    when(sBuild.getBuildOwnParameters()).thenReturn(Collections.emptyMap());
+    SBuildServer buildServer = Mockito.mock(SBuildServer.class);
+    when(buildServer.findBuildInstanceById(BUILD_ID)).thenReturn(sBuild);
+
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(sBuild, true);
+    failedBuildInfo.releaseBuild();
+
+    assertTrue(failedBuildInfo.reloadBuild(buildServer));
+    assertSame(failedBuildInfo.getBuild(), sBuild);
+  }
+
+  public void testReloadRemovedBuild() {
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(createHeavyBuild(), true);
+    failedBuildInfo.releaseBuild();
+
+    assertFalse(failedBuildInfo.reloadBuild(Mockito.mock(SBuildServer.class)));
+    try {
+      failedBuildInfo.getBuild();
+      fail("Build should not be available after unsuccessful reload");
+    } catch (IllegalStateException ignored) {
+    }
+  }
+
+  /**
+   * Proxy instead of a Mockito mock: Mockito keeps invocations of mocks, which would keep the build reachable.
+   */
+  private static SBuild createHeavyBuild() {
+    final byte[] payload = new byte[BUILD_PAYLOAD_SIZE];
+    return (SBuild)Proxy.newProxyInstance(SBuild.class.getClassLoader(), new Class[]{SBuild.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getBuildId":
+          return BUILD_ID;
+        case "getBuildOwnParameters":
+          return Collections.emptyMap();
+        case "hashCode":
+          return payload.length;
+        case "equals":
+          return proxy == args[0];
+        default:
+          return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+      }
+    });
+  }
+}
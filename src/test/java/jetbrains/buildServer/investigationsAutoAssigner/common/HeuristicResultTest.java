@@ -0,0 +1,89 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.common;
+
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import jetbrains.buildServer.users.SUser;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+@Test
+public class HeuristicResultTest {
+  private SUser myUser;
+
+  @BeforeMethod
+  public void setUp() {
+    myUser = Mockito.mock(SUser.class);
+    when(myUser.getId()).thenReturn(239L);
+  }
+
+  public void testManyTestRunsShareInternedResponsibility() {
+    ResponsibilityInterner interner = new ResponsibilityInterner();
+    HeuristicResult result = new HeuristicResult();
+    for (int testRunId = 0; testRunId < 1000; testRunId++) {
+      result.addResponsibility(mockTestRun(testRunId), interner.intern(myUser, "was the only committer to the build"));
+    }
+
+    assertEquals(interner.size(), 1);
+    assertEquals(result.getAllResponsibilities().size(), 1000);
+    for (int testRunId = 0; testRunId < 1000; testRunId++) {
+      assertSame(result.getResponsibility(mockTestRun(testRunId)), result.getResponsibility(mockTestRun(0)));
+    }
+    assertNull(result.getResponsibility(mockTestRun(1000)));
+  }
+
+  public void testMergeOverridesAndKeepsSeparateKeySpaces() {
+    Responsibility first = new Responsibility(myUser, "first");
+    Responsibility second = new Responsibility(myUser, "second");
+    BuildProblem buildProblem = Mockito.mock(BuildProblem.class);
+    when(buildProblem.getId()).thenReturn(7);
+
+    HeuristicResult result = new HeuristicResult();
+    result.addResponsibility(mockTestRun(7), first);
+    HeuristicResult another = new HeuristicResult();
+    another.addResponsibility(mockTestRun(-7), second);
+    another.addResponsibility(buildProblem, second);
+
+    result.merge(another);
+    result.merge(new HeuristicResult());
+
+    assertSame(result.getResponsibility(mockTestRun(7)), first);
+    assertSame(result.getResponsibility(mockTestRun(-7)), second);
+    assertSame(result.getResponsibility(buildProblem), second);
+    assertEquals(result.getAllResponsibilities().size(), 3);
+  }
+
+  public void testEmpty() {
+    HeuristicResult result = new HeuristicResult();
+    assertTrue(result.isEmpty());
+    assertTrue(result.getAllResponsibilities().isEmpty());
+
+    result.addResponsibility(mockTestRun(0), new Responsibility(myUser, "any"));
+    assertFalse(result.isEmpty());
+  }
+
+  private static STestRun mockTestRun(int testRunId) {
+    STestRun testRun = Mockito.mock(STestRun.class);
+    when(testRun.getTestRunId()).thenReturn(testRunId);
+    return testRun;
+  }
+}
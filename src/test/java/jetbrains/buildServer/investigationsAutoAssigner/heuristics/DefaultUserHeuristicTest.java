@@ -25,13 +25,18 @@ import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
 import jetbrains.buildServer.investigationsAutoAssigner.processing.HeuristicContext;
+import jetbrains.buildServer.investigationsAutoAssigner.utils.CustomParameters;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SBuildFeatureDescriptor;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.users.User;
 import jetbrains.buildServer.users.UserModelEx;
+import jetbrains.buildServer.users.UserModelListener;
 import jetbrains.buildServer.users.impl.UserEx;
+import jetbrains.buildServer.util.EventDispatcher;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -51,13 +56,16 @@ public class DefaultUserHeuristicTest extends BaseTestCase {
   private HashMap<String, String> myBuildFeatureParams;
   private STestRun mySTestRun;
   private HeuristicContext myHeuristicContext;
+  private EventDispatcher<UserModelListener> myUserModelEvents;
 
   @BeforeMethod
   @Override
   protected void setUp() throws Exception {
     super.setUp();
     myUserModelEx = Mockito.mock(UserModelEx.class);
-    myHeuristic = new DefaultUserHeuristic(myUserModelEx);
+    myUserModelEvents = Mockito.mock(EventDispatcher.class);
+    myHeuristic = new DefaultUserHeuristic(myUserModelEx, myUserModelEvents,
+                                           new CustomParameters(Mockito.mock(BuildServerListenerEventDispatcher.class)));
     final SBuildFeatureDescriptor descriptor = Mockito.mock(SBuildFeatureDescriptor.class);
     mySBuild = Mockito.mock(SBuild.class);
     SProject sProject = Mockito.mock(SProject.class);
@@ -119,4 +127,32 @@ public class DefaultUserHeuristicTest extends BaseTestCase {
     assert responsibility != null;
     Assert.assertEquals(responsibility.getUser(), myUserEx);
   }
+
+  public void TestResponsibleIsResolvedOncePerBuildType() {
+    myBuildFeatureParams.put(Constants.DEFAULT_RESPONSIBLE, USER_NAME);
+    when(mySBuild.getBuildTypeId()).thenReturn("bt1");
+    when(myUserModelEx.findUserAccount(null, USER_NAME)).thenReturn(myUserEx);
+
+    myHeuristic.findResponsibleUser(myHeuristicContext);
+    HeuristicResult heuristicResult = myHeuristic.findResponsibleUser(myHeuristicContext);
+
+    Responsibility responsibility = heuristicResult.getResponsibility(mySTestRun);
+    Assert.assertNotNull(responsibility);
+    Assert.assertEquals(responsibility.getUser(), myUserEx);
+    Mockito.verify(myUserModelEx, Mockito.times(1)).findUserAccount(null, USER_NAME);
+  }
+
+  public void TestResolvedResponsibleDroppedOnUserChange() {
+    myBuildFeatureParams.put(Constants.DEFAULT_RESPONSIBLE, USER_NAME);
+    when(mySBuild.getBuildTypeId()).thenReturn("bt1");
+    when(myUserModelEx.findUserAccount(null, USER_NAME)).thenReturn(null);
+    Assert.assertTrue(myHeuristic.findResponsibleUser(myHeuristicContext).isEmpty());
+
+    ArgumentCaptor<UserModelListener> listener = ArgumentCaptor.forClass(UserModelListener.class);
+    Mockito.verify(myUserModelEvents).addListener(listener.capture());
+    when(myUserModelEx.findUserAccount(null, USER_NAME)).thenReturn(myUserEx);
+    listener.getValue().userAccountCreated(myUserEx);
+
+    Assert.assertFalse(myHeuristic.findResponsibleUser(myHeuristicContext).isEmpty());
+  }
 }
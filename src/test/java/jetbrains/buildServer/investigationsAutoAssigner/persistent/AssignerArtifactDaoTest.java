@@ -16,11 +16,16 @@
 
 package jetbrains.buildServer.investigationsAutoAssigner.persistent;
 
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
 import jetbrains.buildServer.investigationsAutoAssigner.persistent.AssignerArtifactDao;
@@ -28,6 +33,7 @@ import jetbrains.buildServer.investigationsAutoAssigner.persistent.AssignerResul
 import jetbrains.buildServer.investigationsAutoAssigner.persistent.ResponsibilityPersistentInfo;
 import jetbrains.buildServer.investigationsAutoAssigner.persistent.SuggestionsDao;
 import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildServer;
 import jetbrains.buildServer.serverSide.STest;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.ServerSettings;
@@ -37,6 +43,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.mockito.Mockito;
 import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -51,6 +58,10 @@ public class AssignerArtifactDaoTest {
   private Path myPath;
   private MySuggestedDaoChecker mySuggestedDaoChecker;
   private AssignerArtifactDao myAssignerArtifactDaoForTest;
+  private AssignerResultsFilePath myAssignerResultsFilePath;
+  private SuggestionsCache mySuggestionsCache;
+  private SuggestionsStore mySuggestionsStore;
+  private SBuildServer myBuildServer;
 
   @BeforeMethod
   public void setUp() throws IOException {
@@ -63,7 +74,7 @@ public class AssignerArtifactDaoTest {
     final STest STest2 = Mockito.mock(STest.class);
     mySTestRun2 = Mockito.mock(STestRun.class);
     myPath = Mockito.mock(Path.class);
-    final AssignerResultsFilePath assignerResultsFilePath = Mockito.mock(AssignerResultsFilePath.class);
+    myAssignerResultsFilePath = Mockito.mock(AssignerResultsFilePath.class);
 
     Mockito.when(mySTestRun.getTest()).thenReturn(mySTest);
     Mockito.when(mySTestRun.getTestRunId()).thenReturn(1);
@@ -73,12 +84,24 @@ public class AssignerArtifactDaoTest {
     Mockito.when(STest2.getTestNameId()).thenReturn(112L);
     Mockito.when(myUser.getId()).thenReturn(239L);
     Mockito.when(userModelEx.findUserById(myUser.getId())).thenReturn(myUser);
-    Mockito.when(assignerResultsFilePath.get(mySBuild)).thenReturn(myPath);
+    Mockito.when(myAssignerResultsFilePath.get(mySBuild)).thenReturn(myPath);
     mySuggestedDaoChecker = new MySuggestedDaoChecker();
+    mySuggestionsCache = new SuggestionsCache();
+    mySuggestionsStore = Mockito.mock(SuggestionsStore.class);
+    myBuildServer = Mockito.mock(SBuildServer.class);
+    Mockito.when(myBuildServer.findBuildInstanceById(mySBuild.getBuildId())).thenReturn(mySBuild);
     myAssignerArtifactDaoForTest = new AssignerArtifactDao(userModelEx,
                                                            mySuggestedDaoChecker,
-                                                           assignerResultsFilePath,
-                                                           Mockito.mock(StatisticsReporter.class));
+                                                           myAssignerResultsFilePath,
+                                                           Mockito.mock(StatisticsReporter.class),
+                                                           mySuggestionsCache,
+                                                           mySuggestionsStore,
+                                                           myBuildServer);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    System.clearProperty(Constants.SUGGESTIONS_WRITE_BEHIND_ENABLED);
   }
 
   @Test
@@ -99,6 +122,7 @@ public class AssignerArtifactDaoTest {
 
     myAssignerArtifactDaoForTest
       .appendHeuristicsResult(mySBuild, Arrays.asList(mySTestRun, mySTestRun2), myHeuristicResult);
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
 
     Assert.assertEquals(mySuggestedDaoChecker.setResultsFilePath, myPath);
     Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.get(0).investigatorId, String.valueOf(myUser.getId()));
@@ -133,16 +157,202 @@ public class AssignerArtifactDaoTest {
 
     myAssignerArtifactDaoForTest
       .appendHeuristicsResult(mySBuild, Arrays.asList(mySTestRun, mySTestRun2), myHeuristicResult);
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
 
     Assert.assertEquals(mySuggestedDaoChecker.setResultsFilePath, myPath);
-    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.size(), 2);
+    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.size(), 1);
     Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.get(0).investigatorId, String.valueOf(myUser.getId()));
     Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.get(0).testNameId, String.valueOf(mySTest.getTestNameId()));
     Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.get(0).reason, description);
+  }
+
+  @Test
+  public void testGetParsesSuggestionsOnce() throws IOException {
+    Path resultsFilePath = createResultsFile();
+    Mockito.when(myAssignerResultsFilePath.getIfExist(mySBuild, mySTestRun)).thenReturn(resultsFilePath);
+    Mockito.when(myAssignerResultsFilePath.getIfExist(mySBuild, mySTestRun2)).thenReturn(resultsFilePath);
+    mySuggestedDaoChecker.mockReadResult(Collections.singletonList(
+      new ResponsibilityPersistentInfo(String.valueOf(mySTest.getTestNameId()), String.valueOf(myUser.getId()), "reason")));
+
+    Responsibility responsibility = myAssignerArtifactDaoForTest.get(mySBuild, mySTestRun);
+    Responsibility noResponsibility = myAssignerArtifactDaoForTest.get(mySBuild, mySTestRun2);
+
+    Assert.assertNotNull(responsibility);
+    Assert.assertEquals(responsibility.getUser(), myUser);
+    Assert.assertEquals(responsibility.getDescription(), "reason");
+    Assert.assertNull(noResponsibility);
+    Assert.assertEquals(mySuggestedDaoChecker.readCount, 1);
+    Assert.assertEquals(mySuggestionsCache.getMissCount(), 1);
+    Assert.assertEquals(mySuggestionsCache.getHitCount(), 1);
+  }
+
+  @Test
+  public void testAppendInvalidatesCachedSuggestions() throws IOException {
+    Path resultsFilePath = createResultsFile();
+    Mockito.when(myAssignerResultsFilePath.get(mySBuild)).thenReturn(resultsFilePath);
+    Mockito.when(myAssignerResultsFilePath.getIfExist(mySBuild, mySTestRun)).thenReturn(resultsFilePath);
+    myAssignerArtifactDaoForTest.get(mySBuild, mySTestRun);
+
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
+    myAssignerArtifactDaoForTest.get(mySBuild, mySTestRun);
+
+    Assert.assertEquals(mySuggestedDaoChecker.readCount, 2);
+    Assert.assertEquals(mySuggestionsCache.getHitCount(), 0);
+  }
+
+  @Test
+  public void testSuggestionsBufferedUntilBuildCompleted() {
+    System.setProperty(Constants.SUGGESTIONS_WRITE_BEHIND_ENABLED, "true");
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+    Assert.assertFalse(mySuggestedDaoChecker.wasCalled);
+
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
+    Assert.assertTrue(mySuggestedDaoChecker.wasCalled);
+    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.size(), 1);
+
+    mySuggestedDaoChecker.wasCalled = false;
+    myAssignerArtifactDaoForTest.flushPending(0);
+    Assert.assertFalse(mySuggestedDaoChecker.wasCalled);
+  }
+
+  @Test
+  public void testGetReturnsBufferedSuggestion() {
+    System.setProperty(Constants.SUGGESTIONS_WRITE_BEHIND_ENABLED, "true");
+    Mockito.when(mySTestRun.getBuild()).thenReturn(mySBuild);
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+
+    Responsibility responsibility = myAssignerArtifactDaoForTest.get(null, mySTestRun);
+    Responsibility noResponsibility = myAssignerArtifactDaoForTest.get(mySBuild, mySTestRun2);
+
+    Assert.assertFalse(mySuggestedDaoChecker.wasCalled);
+    Assert.assertNotNull(responsibility);
+    Assert.assertEquals(responsibility.getUser(), myUser);
+    Assert.assertEquals(responsibility.getDescription(), "any description");
+    Assert.assertNull(noResponsibility);
+  }
+
+  @Test
+  public void testSuggestionsWrittenWhenBufferIsFull() {
+    System.setProperty(Constants.SUGGESTIONS_WRITE_BEHIND_ENABLED, "true");
+    System.setProperty(Constants.SUGGESTIONS_WRITE_BEHIND_MAX_RECORDS, "2");
+    try {
+      myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+      myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+      Assert.assertFalse(mySuggestedDaoChecker.wasCalled);
+
+      myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+      Assert.assertTrue(mySuggestedDaoChecker.wasCalled);
+      Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.size(), 2);
+    } finally {
+      System.clearProperty(Constants.SUGGESTIONS_WRITE_BEHIND_MAX_RECORDS);
+    }
+  }
+
+  @Test
+  public void testSuggestionsWrittenImmediatelyByDefault() {
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+
+    Assert.assertTrue(mySuggestedDaoChecker.wasCalled);
+    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.size(), 1);
+  }
+
+  @Test
+  public void testBufferedSuggestionsOfRemovedBuildDropped() {
+    System.setProperty(Constants.SUGGESTIONS_WRITE_BEHIND_ENABLED, "true");
+    Mockito.when(mySTestRun.getBuild()).thenReturn(mySBuild);
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+    Mockito.when(myBuildServer.findBuildInstanceById(mySBuild.getBuildId())).thenReturn(null);
+
+    myAssignerArtifactDaoForTest.flushPending(0);
+
+    Assert.assertFalse(mySuggestedDaoChecker.wasCalled);
+    Assert.assertNull(myAssignerArtifactDaoForTest.get(null, mySTestRun));
+  }
+
+  @Test
+  public void testSuggestionsStoreUsedWhenEnabled() throws IOException {
+    Mockito.when(mySBuild.getBuildId()).thenReturn(239L);
+    Mockito.when(mySuggestionsStore.isEnabled()).thenReturn(true);
+    Mockito.when(mySuggestionsStore.contains(239L)).thenReturn(true);
+    Mockito.when(mySuggestionsStore.find(239L, mySTest.getTestNameId()))
+           .thenReturn(new ResponsibilityPersistentInfo(String.valueOf(mySTest.getTestNameId()), String.valueOf(myUser.getId()), "reason"));
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
+    Responsibility responsibility = myAssignerArtifactDaoForTest.get(mySBuild, mySTestRun);
+
+    Mockito.verify(mySuggestionsStore).append(Mockito.eq(239L), Mockito.anyList());
+    Assert.assertFalse(mySuggestedDaoChecker.wasCalled);
+    Mockito.verify(myAssignerResultsFilePath, Mockito.never()).getIfExist(Mockito.any(), Mockito.any());
+    Assert.assertNotNull(responsibility);
+    Assert.assertEquals(responsibility.getDescription(), "reason");
+  }
+
+  @Test
+  public void testGetForgetsDeletedResultsFile() throws IOException {
+    Path resultsFilePath = createResultsFile();
+    Files.delete(resultsFilePath);
+    Mockito.when(myAssignerResultsFilePath.getIfExist(mySBuild, mySTestRun)).thenReturn(resultsFilePath);
+
+    Assert.assertNull(myAssignerArtifactDaoForTest.get(mySBuild, mySTestRun));
+    Mockito.verify(myAssignerResultsFilePath).invalidate(mySBuild);
+  }
+
+  @Test
+  public void testAppendRetriedWhenResultsFileDeleted() throws IOException {
+    Path newPath = Mockito.mock(Path.class);
+    Mockito.when(myAssignerResultsFilePath.get(mySBuild)).thenReturn(myPath, newPath);
+    mySuggestedDaoChecker.appendFailures = 1;
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
+
+    Mockito.verify(myAssignerResultsFilePath).invalidate(mySBuild);
+    Assert.assertEquals(mySuggestedDaoChecker.setResultsFilePath, newPath);
+    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.size(), 1);
+  }
+
+  @Test
+  public void testCompletedBuildKnownWithoutSuggestions() {
+    Assert.assertFalse(myAssignerArtifactDaoForTest.isKnownWithoutSuggestions(mySBuild));
+
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
+
+    Assert.assertTrue(myAssignerArtifactDaoForTest.isKnownWithoutSuggestions(mySBuild));
+  }
+
+  @Test
+  public void testCompletedBuildWithSuggestions() {
+    myHeuristicResult.addResponsibility(mySTestRun, new Responsibility(myUser, "any description"));
+    myAssignerArtifactDaoForTest.appendHeuristicsResult(mySBuild, Collections.singletonList(mySTestRun), myHeuristicResult);
 
-    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.get(1).investigatorId, investigatorId);
-    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.get(1).testNameId, testNameId);
-    Assert.assertEquals(mySuggestedDaoChecker.setInfoToAdd.get(1).reason, reason);
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
+
+    Assert.assertFalse(myAssignerArtifactDaoForTest.isKnownWithoutSuggestions(mySBuild));
+  }
+
+  @Test
+  public void testCompletedBuildWithPreviouslyStoredSuggestions() throws IOException {
+    Mockito.when(myAssignerResultsFilePath.getIfExist(mySBuild, null)).thenReturn(createResultsFile());
+
+    myAssignerArtifactDaoForTest.completeBuild(mySBuild);
+
+    Assert.assertFalse(myAssignerArtifactDaoForTest.isKnownWithoutSuggestions(mySBuild));
+  }
+
+  private static Path createResultsFile() throws IOException {
+    Path resultsFilePath = Jimfs.newFileSystem(Configuration.unix()).getPath("/" + Constants.ARTIFACT_FILENAME);
+    Files.write(resultsFilePath, "{}".getBytes());
+    return resultsFilePath;
   }
 
   private class MySuggestedDaoChecker extends SuggestionsDao {
@@ -150,23 +360,38 @@ public class AssignerArtifactDaoTest {
     Path setResultsFilePath;
     List<ResponsibilityPersistentInfo> setInfoToAdd;
     boolean wasCalled = false;
+    int readCount = 0;
+    int appendFailures = 0;
     private List<ResponsibilityPersistentInfo> myReadResult;
 
     MySuggestedDaoChecker() {
-      super(Mockito.mock(ServerSettings.class));
+      super(Mockito.mock(ServerSettings.class), new SuggestionsIndexCache());
     }
 
 
     @Override
-    public void write(final Path resultsFilePath, final List<ResponsibilityPersistentInfo> infoToAdd) {
+    public boolean append(final Path resultsFilePath, final List<ResponsibilityPersistentInfo> infoToAdd)
+      throws IOException {
+      if (appendFailures > 0) {
+        appendFailures--;
+        throw new NoSuchFileException(String.valueOf(resultsFilePath));
+      }
       wasCalled = true;
       setResultsFilePath = resultsFilePath;
       setInfoToAdd = infoToAdd;
+      return myReadResult == null || myReadResult.isEmpty();
+    }
+
+    @Override
+    public boolean appendAtomically(final Path resultsFilePath, final List<ResponsibilityPersistentInfo> infoToAdd)
+      throws IOException {
+      return append(resultsFilePath, infoToAdd);
     }
 
     @NotNull
     @Override
     public List<ResponsibilityPersistentInfo> read(@Nullable final Path resultsFilePath) {
+      readCount++;
       return myReadResult == null ? Collections.emptyList() : myReadResult;
     }
 
@@ -129,4 +129,84 @@ class AssignerResultsFilePathTest {
 
         Assert.assertNotNull(result)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testGetIfExistRemembersPath() {
+        Files.createDirectory(myTeamCityDir)
+        Files.createDirectories(myAutoAssignerArtifactDir)
+        Files.createFile(myAutoAssignerArtifactFile)
+
+        val result = myInstance.getIfExist(mySBuild, null)
+        val cachedResult = myInstance.getIfExist(mySBuild, null)
+
+        Assert.assertEquals(cachedResult, result)
+        Mockito.verify(mySBuild, Mockito.times(1)).artifactsDirectory
+    }
+
+    @Test
+    fun testGetIfExistRemembersMissingFile() {
+        Files.createDirectory(myTeamCityDir)
+        myInstance.getIfExist(mySBuild, null)
+        Files.createDirectories(myAutoAssignerArtifactDir)
+        Files.createFile(myAutoAssignerArtifactFile)
+
+        val result = myInstance.getIfExist(mySBuild, null)
+
+        Assert.assertNull(result)
+        Mockito.verify(mySBuild, Mockito.times(1)).artifactsDirectory
+    }
+
+    @Test
+    fun testGetIfExistAfterGet() {
+        Files.createDirectory(myTeamCityDir)
+        Assert.assertNull(myInstance.getIfExist(mySBuild, null))
+
+        myInstance.get(mySBuild)
+        val result = myInstance.getIfExist(mySBuild, null)
+
+        Assert.assertEquals(result, myAutoAssignerArtifactFile)
+    }
+
+    @Test
+    fun testMissingFileRememberedForLimitedTime() {
+        System.setProperty(Constants.RESULTS_PATH_MISSING_TTL_SECONDS, "0")
+        try {
+            Files.createDirectory(myTeamCityDir)
+            myInstance.getIfExist(mySBuild, null)
+            Files.createDirectories(myAutoAssignerArtifactDir)
+            Files.createFile(myAutoAssignerArtifactFile)
+
+            val result = myInstance.getIfExist(mySBuild, null)
+
+            Assert.assertEquals(result, myAutoAssignerArtifactFile)
+        } finally {
+            System.clearProperty(Constants.RESULTS_PATH_MISSING_TTL_SECONDS)
+        }
+    }
+
+    @Test
+    fun testGetCreatesDeletedFileAgain() {
+        Files.createDirectory(myTeamCityDir)
+        myInstance.get(mySBuild)
+        Files.delete(myAutoAssignerArtifactFile)
+        Files.delete(myAutoAssignerArtifactDir)
+
+        val result = myInstance.get(mySBuild)
+
+        Assert.assertEquals(result, myAutoAssignerArtifactFile)
+        Assert.assertTrue(Files.exists(myAutoAssignerArtifactFile))
+    }
+
+    @Test
+    fun testInvalidate() {
+        Files.createDirectory(myTeamCityDir)
+        Files.createDirectories(myAutoAssignerArtifactDir)
+        Files.createFile(myAutoAssignerArtifactFile)
+        myInstance.getIfExist(mySBuild, null)
+        Files.delete(myAutoAssignerArtifactFile)
+
+        myInstance.invalidate(mySBuild)
+
+        Assert.assertNull(myInstance.getIfExist(mySBuild, null))
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.when;
+
+@Test
+public class SuggestionsCacheTest extends BaseTestCase {
+  private SuggestionsCache mySuggestionsCache;
+  private Map<String, ResponsibilityPersistentInfo> mySuggestions;
+  private Path myFirstPath;
+  private Path mySecondPath;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    setInternalProperty(Constants.SUGGESTIONS_CACHE_SIZE_KB, "8");
+    mySuggestionsCache = new SuggestionsCache();
+    mySuggestions = Collections.singletonMap("111", new ResponsibilityPersistentInfo("111", "1", "any reason"));
+    myFirstPath = Paths.get("first", Constants.ARTIFACT_FILENAME);
+    mySecondPath = Paths.get("second", Constants.ARTIFACT_FILENAME);
+  }
+
+  public void Test_CachedUntilFileChanged() {
+    BasicFileAttributes attributes = createAttributes(100, 1);
+    mySuggestionsCache.put(myFirstPath, attributes, mySuggestions);
+
+    assertSame(mySuggestions, mySuggestionsCache.get(myFirstPath, attributes));
+    assertNull(mySuggestionsCache.get(myFirstPath, createAttributes(200, 1)));
+    assertNull(mySuggestionsCache.get(myFirstPath, createAttributes(100, 2)));
+    assertEquals(1, mySuggestionsCache.getHitCount());
+    assertEquals(2, mySuggestionsCache.getMissCount());
+  }
+
+  public void Test_Invalidate() {
+    BasicFileAttributes attributes = createAttributes(100, 1);
+    mySuggestionsCache.put(myFirstPath, attributes, mySuggestions);
+
+    mySuggestionsCache.invalidate(myFirstPath);
+
+    assertNull(mySuggestionsCache.get(myFirstPath, attributes));
+  }
+
+  public void Test_LargeFileNotCached() {
+    assertFalse(mySuggestionsCache.canCache(1025));
+  }
+
+  public void Test_LargeSuggestionsNotCached() {
+    // a small compressed file may expand to many suggestions
+    BasicFileAttributes attributes = createAttributes(100, 1);
+    Map<String, ResponsibilityPersistentInfo> suggestions = createSuggestions(10);
+    assertTrue(SuggestionsCache.estimateSize(suggestions) > 1024);
+
+    mySuggestionsCache.put(myFirstPath, attributes, suggestions);
+
+    assertNull(mySuggestionsCache.get(myFirstPath, attributes));
+  }
+
+  public void Test_LeastRecentlyUsedEvicted() {
+    Map<String, ResponsibilityPersistentInfo> suggestions = createSuggestions(4);
+    long estimatedSize = SuggestionsCache.estimateSize(suggestions);
+    assertTrue(estimatedSize <= 1024);
+    BasicFileAttributes firstAttributes = createAttributes(100, 1);
+    BasicFileAttributes secondAttributes = createAttributes(100, 1);
+    mySuggestionsCache.put(myFirstPath, firstAttributes, suggestions);
+    mySuggestionsCache.put(mySecondPath, secondAttributes, suggestions);
+    mySuggestionsCache.get(myFirstPath, firstAttributes);
+
+    for (long i = 2 * estimatedSize; i <= 8 * 1024; i += estimatedSize) {
+      mySuggestionsCache.put(Paths.get(String.valueOf(i), Constants.ARTIFACT_FILENAME), createAttributes(100, 1), suggestions);
+    }
+
+    assertSame(suggestions, mySuggestionsCache.get(myFirstPath, firstAttributes));
+    assertNull(mySuggestionsCache.get(mySecondPath, secondAttributes));
+  }
+
+  private static Map<String, ResponsibilityPersistentInfo> createSuggestions(int count) {
+    Map<String, ResponsibilityPersistentInfo> suggestions = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      String testNameId = String.valueOf(i);
+      suggestions.put(testNameId, new ResponsibilityPersistentInfo(testNameId, "1", "any reason"));
+    }
+
+    return suggestions;
+  }
+
+  private static BasicFileAttributes createAttributes(long size, long lastModifiedMillis) {
+    BasicFileAttributes attributes = Mockito.mock(BasicFileAttributes.class);
+    when(attributes.size()).thenReturn(size);
+    when(attributes.lastModifiedTime()).thenReturn(FileTime.fromMillis(lastModifiedMillis));
+    return attributes;
+  }
+}
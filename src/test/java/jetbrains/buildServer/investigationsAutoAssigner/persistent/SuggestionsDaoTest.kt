@@ -29,6 +29,7 @@ import org.testng.annotations.Test
 import java.nio.file.Files
 import java.nio.file.Path
 import java.util.*
+import java.util.zip.GZIPInputStream
 
 class SuggestionsDaoTest {
 
@@ -50,7 +51,7 @@ class SuggestionsDaoTest {
         `when`(mySettings.serverUUID).thenReturn(myCorrectUUID)
 
 
-        myInstance = SuggestionsDao(mySettings)
+        myInstance = SuggestionsDao(mySettings, SuggestionsIndexCache())
     }
 
     @Test
@@ -60,7 +61,7 @@ class SuggestionsDaoTest {
 
         val result = String(Files.readAllBytes(myArtifactsFile))
 
-        Assert.assertEquals(result, readGold("SuggestionsDaoTest_TestOneRow_Gold.txt"))
+        Assert.assertEquals(result, readGold("SuggestionsDaoTest_TestOneRowCompact_Gold.txt"))
     }
 
     @Test
@@ -71,7 +72,7 @@ class SuggestionsDaoTest {
 
         val result = String(Files.readAllBytes(myArtifactsFile))
 
-        Assert.assertEquals(result, readGold("SuggestionsDaoTest_TestTwoRows_Gold.txt"))
+        Assert.assertEquals(result, readGold("SuggestionsDaoTest_TestTwoRowsCompact_Gold.txt"))
     }
 
     @Test
@@ -101,6 +102,319 @@ class SuggestionsDaoTest {
         Assert.assertEquals(result[1].reason, "any reason 2")
     }
 
+    @Test
+    fun testReadTwoRowsLines() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestTwoRowsLines_Gold.txt").toByteArray())
+
+        val result = myInstance.read(myArtifactsFile)
+
+        Assert.assertEquals(result.size, 2)
+        Assert.assertEquals(result[0].testNameId, "111")
+        Assert.assertEquals(result[1].testNameId, "112")
+        Assert.assertEquals(result[1].investigatorId, "2")
+        Assert.assertEquals(result[1].reason, "any reason 2")
+    }
+
+    @Test
+    fun testReadTruncatedLastLine() {
+        val content = readGold("SuggestionsDaoTest_TestTwoRowsLines_Gold.txt")
+        Files.write(myArtifactsFile, content.substring(0, content.length - 10).toByteArray())
+
+        val result = myInstance.read(myArtifactsFile)
+
+        Assert.assertEquals(result.size, 1)
+        Assert.assertEquals(result[0].testNameId, "111")
+    }
+
+    @Test
+    fun testReadIncorrectUUIDLines() {
+        `when`(mySettings.serverUUID).thenReturn(myIncorrectUUID)
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestOneRowLines_Gold.txt").toByteArray())
+
+        val result = myInstance.read(myArtifactsFile)
+
+        Assert.assertEquals(result.size, 0)
+    }
+
+    @Test
+    fun testAppendToEmptyFile() {
+        val isFirstAppend = myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+
+        Assert.assertTrue(isFirstAppend)
+        Assert.assertEquals(String(Files.readAllBytes(myArtifactsFile)), readGold("SuggestionsDaoTest_TestOneRowCompact_Gold.txt"))
+    }
+
+    @Test
+    fun testAppendToLinesFile() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestOneRowLines_Gold.txt").toByteArray())
+
+        val isFirstAppend = myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+
+        Assert.assertFalse(isFirstAppend)
+        Assert.assertEquals(String(Files.readAllBytes(myArtifactsFile)), readGold("SuggestionsDaoTest_TestTwoRowsLines_Gold.txt"))
+    }
+
+    @Test
+    fun testAppendToCompactFile() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+
+        val isFirstAppend = myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+
+        Assert.assertFalse(isFirstAppend)
+        Assert.assertEquals(String(Files.readAllBytes(myArtifactsFile)), readGold("SuggestionsDaoTest_TestTwoRowsCompact_Gold.txt"))
+    }
+
+    @Test
+    fun testAppendAtomically() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+
+        val isFirstAppend = myInstance.appendAtomically(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+
+        Assert.assertFalse(isFirstAppend)
+        Assert.assertEquals(String(Files.readAllBytes(myArtifactsFile)), readGold("SuggestionsDaoTest_TestTwoRowsCompact_Gold.txt"))
+        Files.list(myArtifactsFile.parent).use { Assert.assertEquals(it.count(), 1L) }
+    }
+
+    @Test
+    fun testAppendAtomicallyToMissingFile() {
+        Files.delete(myArtifactsFile)
+
+        val isFirstAppend = myInstance.appendAtomically(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+
+        Assert.assertTrue(isFirstAppend)
+        Assert.assertEquals(String(Files.readAllBytes(myArtifactsFile)), readGold("SuggestionsDaoTest_TestOneRowCompact_Gold.txt"))
+    }
+
+    @Test
+    fun testCompactReasonsAreWrittenOnce() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason"),
+                                                        ResponsibilityPersistentInfo("112", Constants.ASSIGNEE_FILTERED_LITERAL, "any reason")))
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("113", "2", "any reason")))
+
+        val content = String(Files.readAllBytes(myArtifactsFile))
+        Assert.assertEquals(content.split("any reason").size, 2)
+
+        val result = myInstance.read(myArtifactsFile)
+        Assert.assertEquals(result.size, 3)
+        Assert.assertEquals(result[1].investigatorId, Constants.ASSIGNEE_FILTERED_LITERAL)
+        Assert.assertEquals(result[2].testNameId, "113")
+        Assert.assertEquals(result[2].investigatorId, "2")
+        Assert.assertEquals(result[2].reason, "any reason")
+    }
+
+    @Test
+    fun testCompactReasonsAreReadFromFileWrittenByOtherInstance() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+        val otherInstance = SuggestionsDao(mySettings, SuggestionsIndexCache())
+
+        otherInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("113", "3", "any reason 2")))
+
+        val content = String(Files.readAllBytes(myArtifactsFile))
+        Assert.assertEquals(content.split("any reason 2").size, 2)
+        Assert.assertEquals(myInstance.read(myArtifactsFile)[2].reason, "any reason 2")
+    }
+
+    @Test
+    fun testAppendAfterDamagedCompressedMember() {
+        System.setProperty(Constants.SUGGESTIONS_GZIP_ENABLED, "true")
+        try {
+            myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+        } finally {
+            System.clearProperty(Constants.SUGGESTIONS_GZIP_ENABLED)
+        }
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+        val content = Files.readAllBytes(myArtifactsFile)
+        Files.write(myArtifactsFile, content.copyOf(content.size - 5))
+
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("113", "3", "any reason 2")))
+        val result = myInstance.read(myArtifactsFile)
+
+        Assert.assertEquals(result.size, 2)
+        Assert.assertEquals(result[0].testNameId, "111")
+        Assert.assertEquals(result[1].testNameId, "113")
+        Assert.assertEquals(result[1].reason, "any reason 2")
+    }
+
+    @Test
+    fun testReadTruncatedCompactLine() {
+        val content = readGold("SuggestionsDaoTest_TestTwoRowsCompact_Gold.txt")
+        Files.write(myArtifactsFile, content.substring(0, content.length - 5).toByteArray())
+
+        val result = myInstance.read(myArtifactsFile)
+
+        Assert.assertEquals(result.size, 1)
+        Assert.assertEquals(result[0].reason, "any reason")
+    }
+
+    @Test
+    fun testCompressedFile() {
+        System.setProperty(Constants.SUGGESTIONS_GZIP_ENABLED, "true")
+        try {
+            myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+        } finally {
+            System.clearProperty(Constants.SUGGESTIONS_GZIP_ENABLED)
+        }
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+        myInstance.writeIndex(myArtifactsFile)
+
+        val decompressed = GZIPInputStream(Files.newInputStream(myArtifactsFile)).reader().readText()
+        Assert.assertEquals(decompressed, readGold("SuggestionsDaoTest_TestTwoRowsCompact_Gold.txt"))
+        Assert.assertEquals(myInstance.read(myArtifactsFile).size, 2)
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+        Assert.assertFalse(Files.exists(myArtifactsFile.resolveSibling(Constants.ARTIFACT_INDEX_FILENAME)))
+    }
+
+    @Test
+    fun testFindCompactWithIndex() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestTwoRowsCompact_Gold.txt").toByteArray())
+        myInstance.writeIndex(myArtifactsFile)
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 111)!!.reason, "any reason")
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.investigatorId, "2")
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+    }
+
+    @Test
+    fun testAppendAfterTruncatedLine() {
+        val content = readGold("SuggestionsDaoTest_TestOneRowLines_Gold.txt")
+        Files.write(myArtifactsFile, (content + "{\"testNameId\":\"11").toByteArray())
+
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+        val result = myInstance.read(myArtifactsFile)
+
+        Assert.assertEquals(result.size, 2)
+        Assert.assertEquals(result[0].testNameId, "111")
+        Assert.assertEquals(result[1].testNameId, "112")
+    }
+
+    @Test
+    fun testAppendToLegacyFile() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestOneRow_Gold.txt").toByteArray())
+
+        val isFirstAppend = myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+
+        Assert.assertFalse(isFirstAppend)
+        Assert.assertEquals(String(Files.readAllBytes(myArtifactsFile)), readGold("SuggestionsDaoTest_TestTwoRowsCompact_Gold.txt"))
+    }
+
+    @Test
+    fun testAppendIncorrectUUID() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestOneRowLines_Gold.txt").replace(myCorrectUUID, myIncorrectUUID).toByteArray())
+
+        val isFirstAppend = myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+
+        Assert.assertTrue(isFirstAppend)
+        Assert.assertEquals(String(Files.readAllBytes(myArtifactsFile)), readGold("SuggestionsDaoTest_TestOneRowCompact_Gold.txt"))
+    }
+
+    @Test
+    fun testFindWithoutIndex() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestTwoRowsLines_Gold.txt").toByteArray())
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+        Assert.assertNull(myInstance.find(myArtifactsFile, 113))
+    }
+
+    @Test
+    fun testFindWithIndex() {
+        val infos = (300 downTo 1).map { ResponsibilityPersistentInfo(it.toString(), "1", "reason $it") }
+        myInstance.write(myArtifactsFile, infos)
+        myInstance.writeIndex(myArtifactsFile)
+
+        Assert.assertTrue(Files.exists(myArtifactsFile.resolveSibling(Constants.ARTIFACT_INDEX_FILENAME)))
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 1)!!.reason, "reason 1")
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 150)!!.reason, "reason 150")
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 300)!!.reason, "reason 300")
+        Assert.assertNull(myInstance.find(myArtifactsFile, 301))
+    }
+
+    @Test
+    fun testFindFirstRecordWithIndex() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "first"),
+                                                        ResponsibilityPersistentInfo("111", "2", "second")))
+        myInstance.writeIndex(myArtifactsFile)
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 111)!!.reason, "first")
+    }
+
+    @Test
+    fun testFindAfterAppendToIndexedFile() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+        myInstance.writeIndex(myArtifactsFile)
+
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+    }
+
+    @Test
+    fun testFindWithUpdatedIndex() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("111", "1", "any reason")))
+        myInstance.writeIndex(myArtifactsFile)
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 111)!!.reason, "any reason")
+
+        myInstance.append(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+        myInstance.writeIndex(myArtifactsFile)
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 111)!!.reason, "any reason")
+    }
+
+    @Test
+    fun testFindWithIndexIncorrectUUID() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestTwoRowsLines_Gold.txt").toByteArray())
+        myInstance.writeIndex(myArtifactsFile)
+        `when`(mySettings.serverUUID).thenReturn(myIncorrectUUID)
+
+        Assert.assertNull(myInstance.find(myArtifactsFile, 111))
+    }
+
+    @Test
+    fun testLegacyFileIsNotIndexed() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestTwoRows_Gold.txt").toByteArray())
+        myInstance.writeIndex(myArtifactsFile)
+
+        Assert.assertFalse(Files.exists(myArtifactsFile.resolveSibling(Constants.ARTIFACT_INDEX_FILENAME)))
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+    }
+
+    @Test
+    fun testFindLegacyFormat() {
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestTwoRows_Gold.txt").toByteArray())
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 111)!!.reason, "any reason")
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+        Assert.assertNull(myInstance.find(myArtifactsFile, 113))
+    }
+
+    @Test
+    fun testFindLegacyFormatIncorrectUUID() {
+        `when`(mySettings.serverUUID).thenReturn(myIncorrectUUID)
+        Files.write(myArtifactsFile, readGold("SuggestionsDaoTest_TestTwoRows_Gold.txt").toByteArray())
+
+        Assert.assertNull(myInstance.find(myArtifactsFile, 111))
+    }
+
+    @Test
+    fun testFindLegacyFormatServerUUIDAfterSuggestions() {
+        Files.write(myArtifactsFile, ("{\"suggestions\":[{\"testNameId\":\"111\",\"investigatorId\":\"1\",\"reason\":\"any reason\"}," +
+                                      "{\"testNameId\":\"112\",\"investigatorId\":\"2\",\"reason\":\"any reason 2\"}]," +
+                                      "\"serverUUID\":\"$myCorrectUUID\"}").toByteArray())
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 111)!!.reason, "any reason")
+        `when`(mySettings.serverUUID).thenReturn(myIncorrectUUID)
+        Assert.assertNull(myInstance.find(myArtifactsFile, 111))
+    }
+
+    @Test
+    fun testFindSkipsOtherRecordsMentioningTestNameId() {
+        myInstance.write(myArtifactsFile, Arrays.asList(ResponsibilityPersistentInfo("1", "112", "112"),
+                                                        ResponsibilityPersistentInfo("112", "2", "any reason 2")))
+
+        Assert.assertEquals(myInstance.find(myArtifactsFile, 112)!!.reason, "any reason 2")
+    }
+
     @Test
     fun testReadIncorrectUUID() {
         `when`(mySettings.serverUUID).thenReturn(myIncorrectUUID)
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class SuggestionsIndexCacheTest extends BaseTestCase {
+  private static final long INDEXED_FILE_SIZE = 100;
+  private static final long TEST_NAME_ID = 111;
+  private static final long RECORD_OFFSET = 42;
+  private CountingIndexCache myIndexCache;
+  private Path myFirstIndex;
+  private Path mySecondIndex;
+  private Path myThirdIndex;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    setInternalProperty(Constants.SUGGESTIONS_INDEX_MMAP_ENABLED, "true");
+    myIndexCache = new CountingIndexCache();
+    myFirstIndex = createIndex();
+    mySecondIndex = createIndex();
+    myThirdIndex = createIndex();
+  }
+
+  public void Test_IndexMappedOnce() throws IOException {
+    assertFound(myFirstIndex);
+    assertFound(myFirstIndex);
+    assertNull(myIndexCache.find(myFirstIndex, INDEXED_FILE_SIZE, TEST_NAME_ID + 1));
+
+    assertEquals(1, myIndexCache.myMapped.size());
+    assertTrue(myIndexCache.myMapped.get(0).isDirect());
+    assertEquals(1, myIndexCache.size());
+  }
+
+  public void Test_MissingIndex() throws IOException {
+    assertSame(SuggestionsIndex.NOT_INDEXED,
+               myIndexCache.find(myFirstIndex.resolveSibling("missing"), INDEXED_FILE_SIZE, TEST_NAME_ID));
+    assertEquals(0, myIndexCache.size());
+  }
+
+  public void Test_UnmappedWhenInvalidated() throws IOException {
+    assertFound(myFirstIndex);
+    assertFound(mySecondIndex);
+
+    myIndexCache.invalidate(myFirstIndex);
+
+    assertEquals(1, myIndexCache.size());
+    assertEquals(1, myIndexCache.myUnmapped.size());
+    assertSame(myIndexCache.myMapped.get(0), myIndexCache.myUnmapped.get(0));
+    assertFound(myFirstIndex);
+    assertEquals(3, myIndexCache.myMapped.size());
+  }
+
+  public void Test_UnmappedForDeletedBuild() throws IOException {
+    assertFound(myFirstIndex);
+    assertFound(mySecondIndex);
+
+    myIndexCache.invalidateDirectory(myFirstIndex.getParent());
+
+    assertEquals(1, myIndexCache.size());
+    assertSame(myIndexCache.myMapped.get(0), myIndexCache.myUnmapped.get(0));
+    assertFound(mySecondIndex);
+    assertEquals(2, myIndexCache.myMapped.size());
+  }
+
+  public void Test_LeastRecentlyUsedEvicted() throws IOException {
+    setInternalProperty(Constants.SUGGESTIONS_INDEX_CACHE_SIZE, "2");
+    assertFound(myFirstIndex);
+    assertFound(mySecondIndex);
+    assertFound(myFirstIndex);
+
+    assertFound(myThirdIndex);
+
+    assertEquals(2, myIndexCache.size());
+    assertEquals(1, myIndexCache.myUnmapped.size());
+    assertSame(myIndexCache.myMapped.get(1), myIndexCache.myUnmapped.get(0));
+  }
+
+  public void Test_NotUnmappedWhileInUse() throws IOException {
+    SuggestionsIndexCache.MappedIndex index = myIndexCache.acquire(myFirstIndex);
+    assertNotNull(index);
+
+    myIndexCache.invalidate(myFirstIndex);
+
+    assertEquals(0, myIndexCache.size());
+    assertTrue(myIndexCache.myUnmapped.isEmpty());
+    assertEquals(RECORD_OFFSET,
+                 SuggestionsIndex.find(index.myBuffer, INDEXED_FILE_SIZE, TEST_NAME_ID).myRecordOffset);
+
+    myIndexCache.release(index);
+
+    assertEquals(1, myIndexCache.myUnmapped.size());
+  }
+
+  public void Test_ReadWhenMappingDisabled() throws IOException {
+    setInternalProperty(Constants.SUGGESTIONS_INDEX_MMAP_ENABLED, "false");
+
+    assertFound(myFirstIndex);
+    assertSame(SuggestionsIndex.NOT_INDEXED, myIndexCache.find(myFirstIndex, INDEXED_FILE_SIZE + 1, TEST_NAME_ID));
+
+    assertTrue(myIndexCache.myMapped.isEmpty());
+    assertEquals(0, myIndexCache.size());
+  }
+
+  public void Test_NotMappedByDefault() throws IOException {
+    System.clearProperty(Constants.SUGGESTIONS_INDEX_MMAP_ENABLED);
+
+    assertFound(myFirstIndex);
+
+    assertTrue(myIndexCache.myMapped.isEmpty());
+    assertEquals(0, myIndexCache.size());
+  }
+
+  private void assertFound(@NotNull Path indexPath) throws IOException {
+    SuggestionsIndex.Location location = myIndexCache.find(indexPath, INDEXED_FILE_SIZE, TEST_NAME_ID);
+    assertNotNull(location);
+    assertEquals(RECORD_OFFSET, location.myRecordOffset);
+  }
+
+  private Path createIndex() throws IOException {
+    Path indexPath = createTempDir().toPath().resolve(Constants.ARTIFACT_INDEX_FILENAME);
+    TreeMap<Long, SuggestionsIndex.Location> locations = new TreeMap<>();
+    locations.put(TEST_NAME_ID - 1, new SuggestionsIndex.Location(0, -1));
+    locations.put(TEST_NAME_ID, new SuggestionsIndex.Location(RECORD_OFFSET, -1));
+    SuggestionsIndex.write(indexPath, INDEXED_FILE_SIZE, locations);
+    return indexPath;
+  }
+
+  private static class CountingIndexCache extends SuggestionsIndexCache {
+    private final List<ByteBuffer> myMapped = new ArrayList<>();
+    private final List<ByteBuffer> myUnmapped = new ArrayList<>();
+
+    @Nullable
+    @Override
+    ByteBuffer map(@NotNull Path indexPath) throws IOException {
+      ByteBuffer buffer = super.map(indexPath);
+      if (buffer != null) {
+        myMapped.add(buffer);
+      }
+      return buffer;
+    }
+
+    @Override
+    void unmap(@NotNull ByteBuffer buffer) {
+      // the buffer is kept mapped, so the test can compare it with the mapped ones
+      myUnmapped.add(buffer);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.persistent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class SuggestionsStoreTest extends BaseTestCase {
+  private Path myDirectory;
+  private SuggestionsStore myStore;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    setInternalProperty(Constants.SUGGESTIONS_STORE_ENABLED, "true");
+    myDirectory = createTempDir().toPath();
+    myStore = new SuggestionsStore(myDirectory);
+  }
+
+  @AfterMethod
+  @Override
+  protected void tearDown() throws Exception {
+    myStore.close();
+    super.tearDown();
+  }
+
+  public void Test_FindAppended() throws IOException {
+    assertTrue(myStore.append(1, Arrays.asList(new ResponsibilityPersistentInfo("111", "1", "any reason"),
+                                               new ResponsibilityPersistentInfo("112", "2", "any reason 2"))));
+    assertFalse(myStore.append(1, Arrays.asList(new ResponsibilityPersistentInfo("111", "3", "other reason"),
+                                                new ResponsibilityPersistentInfo("113", "3", "any reason 3"))));
+    assertTrue(myStore.append(2, Collections.singletonList(new ResponsibilityPersistentInfo("111", "4", "any reason 4"))));
+
+    assertEquals("1", myStore.find(1, 111).investigatorId);
+    assertEquals("any reason 3", myStore.find(1, 113).reason);
+    assertEquals("4", myStore.find(2, 111).investigatorId);
+    assertNull(myStore.find(2, 112));
+    assertTrue(myStore.contains(1));
+    assertFalse(myStore.contains(3));
+  }
+
+  public void Test_LoadedAfterRestart() throws IOException {
+    myStore.append(1, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+    myStore.append(2, Collections.singletonList(new ResponsibilityPersistentInfo("111", "2", "any reason")));
+    myStore.remove(1);
+    myStore.close();
+
+    assertFalse(myStore.contains(1));
+    assertEquals("2", myStore.find(2, 111).investigatorId);
+  }
+
+  public void Test_TruncatedRecordDropped() throws IOException {
+    myStore.append(1, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+    myStore.close();
+    Path segment = getSegments()[0];
+    Files.write(segment, "{\"b\":1,\"t\":\"11".getBytes(), StandardOpenOption.APPEND);
+
+    myStore.append(1, Collections.singletonList(new ResponsibilityPersistentInfo("112", "2", "any reason")));
+    myStore.close();
+
+    assertEquals("1", myStore.find(1, 111).investigatorId);
+    assertEquals("2", myStore.find(1, 112).investigatorId);
+  }
+
+  public void Test_NewSegmentStartedWhenFull() throws IOException {
+    setInternalProperty(Constants.SUGGESTIONS_STORE_SEGMENT_SIZE_KB, "1");
+    for (long buildId = 1; buildId <= 50; buildId++) {
+      myStore.append(buildId, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+    }
+
+    assertTrue(getSegments().length > 1);
+    assertEquals("1", myStore.find(1, 111).investigatorId);
+    assertEquals("1", myStore.find(50, 111).investigatorId);
+  }
+
+  public void Test_CompactedAfterRemoval() throws IOException {
+    setInternalProperty(Constants.SUGGESTIONS_STORE_SEGMENT_SIZE_KB, "1");
+    for (long buildId = 1; buildId <= 50; buildId++) {
+      myStore.append(buildId, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+    }
+    for (long buildId = 1; buildId <= 40; buildId++) {
+      myStore.remove(buildId);
+    }
+
+    myStore.compactIfNeeded();
+
+    assertEquals(1, getSegments().length);
+    assertFalse(myStore.contains(40));
+    assertEquals("1", myStore.find(41, 111).investigatorId);
+    myStore.close();
+    assertFalse(myStore.contains(40));
+    assertEquals("1", myStore.find(50, 111).investigatorId);
+  }
+
+  public void Test_NotCompactedWithoutRemovals() throws IOException {
+    setInternalProperty(Constants.SUGGESTIONS_STORE_SEGMENT_SIZE_KB, "1");
+    for (long buildId = 1; buildId <= 50; buildId++) {
+      myStore.append(buildId, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+    }
+    int segmentsCount = getSegments().length;
+
+    myStore.compactIfNeeded();
+
+    assertEquals(segmentsCount, getSegments().length);
+  }
+
+  public void Test_ReaderFollowsWriter() throws IOException {
+    setInternalProperty(Constants.SUGGESTIONS_STORE_REFRESH_INTERVAL_SECONDS, "0");
+    SuggestionsStore reader = new SuggestionsStore(myDirectory, () -> false, Runnable::run);
+    try {
+      myStore.append(1, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+      assertEquals("1", reader.find(1, 111).investigatorId);
+
+      Path segment = getSegments()[0];
+      Files.write(segment, "{\"b\":2,\"t\":\"111\",\"u\":\"2\"".getBytes(), StandardOpenOption.APPEND);
+      long size = Files.size(segment);
+      assertFalse(reader.contains(2));
+      assertEquals(size, Files.size(segment));
+
+      Files.write(segment, ",\"r\":\"any reason\"}\n".getBytes(), StandardOpenOption.APPEND);
+      assertTrue(reader.contains(2));
+      assertEquals("2", reader.find(2, 111).investigatorId);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public void Test_ReaderReloadedAfterCompaction() throws IOException {
+    setInternalProperty(Constants.SUGGESTIONS_STORE_REFRESH_INTERVAL_SECONDS, "0");
+    setInternalProperty(Constants.SUGGESTIONS_STORE_SEGMENT_SIZE_KB, "1");
+    SuggestionsStore reader = new SuggestionsStore(myDirectory, () -> false, Runnable::run);
+    try {
+      for (long buildId = 1; buildId <= 50; buildId++) {
+        myStore.append(buildId, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+      }
+      assertTrue(reader.contains(40));
+
+      for (long buildId = 1; buildId <= 40; buildId++) {
+        myStore.remove(buildId);
+      }
+      myStore.compactIfNeeded();
+
+      assertFalse(reader.contains(40));
+      assertEquals("1", reader.find(41, 111).investigatorId);
+      assertEquals(1, getSegments().length);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public void Test_ReaderDoesNotAppend() {
+    SuggestionsStore reader = new SuggestionsStore(myDirectory, () -> false, Runnable::run);
+    try {
+      reader.append(1, Collections.singletonList(new ResponsibilityPersistentInfo("111", "1", "any reason")));
+      fail("Suggestions should be appended only by the writing node");
+    } catch (IOException ignored) {
+    } finally {
+      reader.close();
+    }
+  }
+
+  private Path[] getSegments() throws IOException {
+    try (Stream<Path> files = Files.list(myDirectory)) {
+      return files.toArray(Path[]::new);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.executors.ExecutorServices;
+import jetbrains.buildServer.users.SUser;
+import jetbrains.buildServer.users.UserSet;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
+import org.jetbrains.annotations.NotNull;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Test
+public class BuildChangesTest extends BaseTestCase {
+  private SBuild mySBuild;
+  private SVcsModification myVcsChange;
+  private BuildChanges myBuildChanges;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myVcsChange = Mockito.mock(SVcsModification.class);
+    mySBuild = Mockito.mock(SBuild.class);
+    when(mySBuild.getChanges(SelectPrevBuildPolicy.SINCE_LAST_BUILD, true))
+      .thenReturn(Collections.singletonList(myVcsChange));
+    myBuildChanges = new BuildChanges(mySBuild);
+  }
+
+  public void Test_ChangesAreLoadedOnce() {
+    assertEquals(Collections.singletonList(myVcsChange), myBuildChanges.getChanges());
+    assertEquals(Collections.singletonList(myVcsChange), myBuildChanges.getChanges());
+
+    verify(mySBuild, times(1)).getChanges(SelectPrevBuildPolicy.SINCE_LAST_BUILD, true);
+  }
+
+  public void Test_AnalyzerIsCreatedOncePerChange() {
+    ModificationAnalyzerFactory factory = Mockito.spy(new ModificationAnalyzerFactory(Mockito.mock(CommittersCache.class)));
+
+    ModificationAnalyzerFactory.ModificationAnalyzer analyzer = myBuildChanges.getAnalyzer(factory, myVcsChange);
+
+    assertSame(analyzer, myBuildChanges.getAnalyzer(factory, myVcsChange));
+    verify(factory, times(1)).getInstance(myVcsChange);
+  }
+
+  public void Test_CacheKeepsChangesUntilRemoved() {
+    BuildChangesCache cache = createCache(Runnable::run);
+
+    BuildChanges buildChanges = cache.get(mySBuild);
+
+    assertSame(buildChanges, cache.get(mySBuild));
+
+    cache.remove(mySBuild.getBuildId());
+
+    assertNotSame(buildChanges, cache.get(mySBuild));
+    assertNotSame(cache.get(mySBuild), cache.get(mySBuild));
+  }
+
+  public void Test_CacheKeepsPrefetchedChanges() {
+    BuildChangesCache cache = createCache(Runnable::run);
+
+    cache.prefetch(mySBuild);
+    BuildChanges prefetched = cache.get(mySBuild);
+
+    assertSame(prefetched, cache.get(mySBuild));
+    assertEquals(Collections.singletonList(myVcsChange), prefetched.getChanges());
+    assertEquals(Collections.emptySet(), prefetched.getCommittersIds());
+    verify(mySBuild, times(1)).getChanges(SelectPrevBuildPolicy.SINCE_LAST_BUILD, true);
+  }
+
+  public void Test_PrefetchedAfterRemovalNotCached() {
+    List<Runnable> tasks = new ArrayList<>();
+    BuildChangesCache cache = createCache(tasks::add);
+
+    cache.prefetch(mySBuild);
+    cache.remove(mySBuild.getBuildId());
+    tasks.forEach(Runnable::run);
+
+    assertNotSame(cache.get(mySBuild), cache.get(mySBuild));
+  }
+
+  private BuildChangesCache createCache(@NotNull final Consumer<Runnable> taskRunner) {
+    @SuppressWarnings("unchecked")
+    UserSet<SUser> committers = Mockito.mock(UserSet.class);
+    when(committers.getUsers()).thenReturn(Collections.emptySet());
+    when(mySBuild.getCommitters(SelectPrevBuildPolicy.SINCE_LAST_BUILD)).thenReturn(committers);
+    ScheduledExecutorService executor = Mockito.mock(ScheduledExecutorService.class);
+    doAnswer(invocation -> {
+      taskRunner.accept(invocation.getArgument(0));
+      return null;
+    }).when(executor).execute(any());
+    ExecutorServices executorServices = Mockito.mock(ExecutorServices.class);
+    when(executorServices.getNormalExecutorService()).thenReturn(executor);
+    return new BuildChangesCache(executorServices, new ModificationAnalyzerFactory(Mockito.mock(CommittersCache.class)));
+  }
+}
@@ -180,4 +180,23 @@ public class BuildProblemsFilterTest extends BaseTestCase {
 
     Assert.assertEquals(applicableBuildProblems.size(), 1);
   }
+
+  public void Test_FailedTestsProblemIsNotApplicable() {
+    when(myBuildProblemData.getType()).thenReturn(BuildProblemTypes.TC_FAILED_TESTS_TYPE);
+
+    List<BuildProblem> applicableBuildProblems =
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+
+    Assert.assertEquals(applicableBuildProblems.size(), 0);
+  }
+
+  public void Test_FailedTestsProblemIsApplicableForMassFailure() {
+    when(myBuildProblemData.getType()).thenReturn(BuildProblemTypes.TC_FAILED_TESTS_TYPE);
+    myFailedBuildInfo.decideMassFailure(true);
+
+    List<BuildProblem> applicableBuildProblems =
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+
+    Assert.assertEquals(applicableBuildProblems.size(), 1);
+  }
 }
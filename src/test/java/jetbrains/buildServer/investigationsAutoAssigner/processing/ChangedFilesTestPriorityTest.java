@@ -0,0 +1,115 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.STest;
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.tests.TestName;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.VcsFileModification;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class ChangedFilesTestPriorityTest {
+  private final Set<String> myChangedFileNames = new HashSet<>(Arrays.asList("usermodel", "build"));
+
+  public void testTestClassOfChangedFile() {
+    assertTrue(ChangedFilesTestPriority.mentionsChangedFile(createTestRun("jetbrains.users.UserModelTest.testFind"),
+                                                            myChangedFileNames));
+    assertTrue(ChangedFilesTestPriority.mentionsChangedFile(createTestRun("jetbrains.users.UserModel.testFind"),
+                                                            myChangedFileNames));
+  }
+
+  public void testNotChangedFile() {
+    assertFalse(ChangedFilesTestPriority.mentionsChangedFile(createTestRun("jetbrains.users.UserModelsTest.testFind"),
+                                                             myChangedFileNames));
+    assertFalse(ChangedFilesTestPriority.mentionsChangedFile(createTestRun("jetbrains.BuildsTest.testFind"),
+                                                             myChangedFileNames));
+  }
+
+  public void testTestsOfChangedFilesGoFirst() {
+    System.setProperty(Constants.PRIORITIZE_CHANGED_FILES_TESTS, "true");
+    try {
+      STestRun first = createTestRun("jetbrains.BuildsTest.testFind", 1);
+      STestRun second = createTestRun("jetbrains.users.UserModelTest.testFind", 2);
+      STestRun third = createTestRun("jetbrains.ProjectsTest.testFind", 3);
+      STestRun fourth = createTestRun("jetbrains.BuildTest.testFind", 4);
+      List<STestRun> testRuns = new ArrayList<>(Arrays.asList(third, fourth, first, second));
+
+      new ChangedFilesTestPriority(createBuildChangesCache("src/UserModel.java", "src/Build.java"))
+        .sort(mock(SBuild.class), testRuns);
+
+      assertEquals(testRuns, Arrays.asList(second, fourth, first, third));
+      verify(second.getTest(), times(1)).getName();
+    } finally {
+      System.clearProperty(Constants.PRIORITIZE_CHANGED_FILES_TESTS);
+    }
+  }
+
+  public void testOrderIdWhenDisabled() {
+    STestRun first = createTestRun("jetbrains.BuildsTest.testFind", 1);
+    STestRun second = createTestRun("jetbrains.BuildTest.testFind", 2);
+    List<STestRun> testRuns = new ArrayList<>(Arrays.asList(second, first));
+
+    new ChangedFilesTestPriority(createBuildChangesCache("src/Build.java")).sort(mock(SBuild.class), testRuns);
+
+    assertEquals(testRuns, Arrays.asList(first, second));
+  }
+
+  private static BuildChangesCache createBuildChangesCache(String... changedFiles) {
+    List<VcsFileModification> fileModifications = new ArrayList<>();
+    for (String changedFile : changedFiles) {
+      VcsFileModification fileModification = mock(VcsFileModification.class);
+      when(fileModification.getRelativeFileName()).thenReturn(changedFile);
+      fileModifications.add(fileModification);
+    }
+    SVcsModification modification = mock(SVcsModification.class);
+    when(modification.getChanges()).thenReturn(fileModifications);
+    BuildChanges buildChanges = mock(BuildChanges.class);
+    when(buildChanges.getDetectedChanges()).thenReturn(Collections.singletonList(modification));
+    BuildChangesCache buildChangesCache = mock(BuildChangesCache.class);
+    when(buildChangesCache.get(any())).thenReturn(buildChanges);
+    return buildChangesCache;
+  }
+
+  private static STestRun createTestRun(String name) {
+    return createTestRun(name, 0);
+  }
+
+  private static STestRun createTestRun(String name, int orderId) {
+    STest test = mock(STest.class);
+    when(test.getName()).thenReturn(new TestName(name));
+    STestRun testRun = mock(STestRun.class);
+    when(testRun.getTest()).thenReturn(test);
+    when(testRun.getOrderId()).thenReturn(orderId);
+    return testRun;
+  }
+}
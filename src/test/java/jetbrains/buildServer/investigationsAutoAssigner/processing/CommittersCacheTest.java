@@ -0,0 +1,91 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import java.util.Collections;
+import java.util.Set;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.users.UserModelEx;
+import jetbrains.buildServer.users.impl.UserEx;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.VcsRootInstance;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Test
+public class CommittersCacheTest extends BaseTestCase {
+  private UserEx myUser;
+  private UserModelEx myUserModel;
+  private SVcsModification myVcsChange;
+  private SVcsModification mySameCommitterChange;
+  private CommittersCache myCommittersCache;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myUser = Mockito.mock(UserEx.class);
+    when(myUser.getId()).thenReturn(239L);
+    myUserModel = Mockito.mock(UserModelEx.class);
+    when(myUserModel.findUserAccount(null, "user")).thenReturn(myUser);
+
+    VcsRootInstance vcsRoot = Mockito.mock(VcsRootInstance.class);
+    when(vcsRoot.getParentId()).thenReturn(1L);
+    myVcsChange = createChange(vcsRoot, "vcsUser");
+    mySameCommitterChange = createChange(vcsRoot, "vcsUser");
+    myCommittersCache = new CommittersCache(myUserModel, Mockito.mock(EventDispatcher.class));
+  }
+
+  private SVcsModification createChange(final VcsRootInstance vcsRoot, final String userName) {
+    SVcsModification vcsChange = Mockito.mock(SVcsModification.class);
+    when(vcsChange.getVcsRoot()).thenReturn(vcsRoot);
+    when(vcsChange.getUserName()).thenReturn(userName);
+    when(vcsChange.getCommitters()).thenReturn(Collections.singletonList(myUser));
+    return vcsChange;
+  }
+
+  public void Test_CommittersAreResolvedOncePerVcsUsername() {
+    assertEquals(Collections.singletonList(myUser), myCommittersCache.getCommitters(myVcsChange));
+    assertEquals(Collections.singletonList(myUser), myCommittersCache.getCommitters(mySameCommitterChange));
+
+    verify(myVcsChange, times(1)).getCommitters();
+    verify(mySameCommitterChange, times(0)).getCommitters();
+  }
+
+  public void Test_InvalidateDropsResolvedCommitters() {
+    myCommittersCache.getCommitters(myVcsChange);
+    myCommittersCache.invalidate();
+    myCommittersCache.getCommitters(myVcsChange);
+
+    verify(myVcsChange, times(2)).getCommitters();
+  }
+
+  public void Test_UserIdsOfIgnoredUsers() {
+    Set<String> usernames = Collections.singleton("user");
+
+    assertEquals(Collections.singleton(239L), myCommittersCache.getUserIds(usernames));
+    assertEquals(Collections.singleton(239L), myCommittersCache.getUserIds(usernames));
+
+    verify(myUserModel, times(1)).findUserAccount(null, "user");
+  }
+}
@@ -38,6 +38,7 @@ import org.testng.annotations.Test;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 @Test
@@ -54,24 +55,26 @@ public class FailedTestAndBuildProblemsProcessorTest extends BaseTestCase {
   private SUser mySUser;
   private BuildProblemsAssigner myBuildProblemsAssigner;
   private BuildProblemsFilter myBuildProblemsFilter;
+  private FailedTestFilter myFailedTestFilter;
 
   @BeforeMethod
   @Override
   protected void setUp() throws Exception {
     super.setUp();
     myResponsibleUserFinder = Mockito.mock(ResponsibleUserFinder.class);
-    final FailedTestFilter failedTestFilter = Mockito.mock(FailedTestFilter.class);
+    myFailedTestFilter = Mockito.mock(FailedTestFilter.class);
     myFailedTestAssigner = Mockito.mock(FailedTestAssigner.class);
     myBuildProblemsFilter = Mockito.mock(BuildProblemsFilter.class);
     myBuildProblemsAssigner = Mockito.mock(BuildProblemsAssigner.class);
     myAssignerArtifactDao = Mockito.mock(AssignerArtifactDao.class);
     myProcessor = new FailedTestAndBuildProblemsProcessor(myResponsibleUserFinder,
-                                                          failedTestFilter,
+                                                          myFailedTestFilter,
                                                           myFailedTestAssigner,
                                                           myBuildProblemsFilter,
                                                           myBuildProblemsAssigner,
                                                           myAssignerArtifactDao,
-                                                          new CustomParameters());
+                                                          new CustomParameters(Mockito.mock(BuildServerListenerEventDispatcher.class)),
+                                                          Mockito.mock(BuildChangesCache.class));
 
     //configure tests
     TestName testNameMock = Mockito.mock(TestName.class);
@@ -112,7 +115,7 @@ public class FailedTestAndBuildProblemsProcessorTest extends BaseTestCase {
     myNotEmptyHeuristicResult.addResponsibility(sTestRun, new Responsibility(mySUser, "Failed description"));
 
     //configure finder
-    when(myResponsibleUserFinder.findResponsibleUser(any(), any(), anyList(), anyList())).thenReturn(myNotEmptyHeuristicResult);
+    when(myResponsibleUserFinder.findResponsibleUser(any(), any(), anyList(), anyList(), any(), any(), any())).thenReturn(myNotEmptyHeuristicResult);
   }
 
   public void TestBuildTypeIsNull() {
@@ -132,7 +135,7 @@ public class FailedTestAndBuildProblemsProcessorTest extends BaseTestCase {
   }
 
   public void TestAssignerHasRightHeuristicsResult() {
-    when(myResponsibleUserFinder.findResponsibleUser(any(), any(), anyList(), anyList()))
+    when(myResponsibleUserFinder.findResponsibleUser(any(), any(), anyList(), anyList(), any(), any(), any()))
       .thenReturn(myNotEmptyHeuristicResult);
 
     Mockito.doAnswer((Answer<Void>)invocation -> {
@@ -216,6 +219,71 @@ public class FailedTestAndBuildProblemsProcessorTest extends BaseTestCase {
     Mockito.verify(myFailedTestAssigner, Mockito.atLeastOnce()).assign(any(), any(), any(), anyList());
   }
 
+  public void TestMassFailureIsNotDetectedByDefault() {
+    configureTestStatistics(1000, 900);
+    configureBuildFeature(mySBuild);
+
+    myProcessor.processBuild(myFailedBuildInfo);
+
+    assertFalse(myFailedBuildInfo.isMassFailure());
+  }
+
+  public void TestMassFailureSkipsFailedTests() {
+    setInternalProperty(Constants.MASS_FAILURE_PERCENT, "50");
+    configureTestStatistics(1000, 900);
+    BuildProblemData buildProblemData = Mockito.mock(BuildProblemData.class);
+    when(buildProblemData.getType()).thenReturn(BuildProblemTypes.TC_FAILED_TESTS_TYPE);
+    BuildProblemImpl failedTestsProblem = Mockito.mock(BuildProblemImpl.class);
+    when(failedTestsProblem.getBuildProblemData()).thenReturn(buildProblemData);
+    when(mySBuild.getBuildProblems()).thenReturn(Collections.singletonList(failedTestsProblem));
+    when(myBuildProblemsFilter.apply(any(), any(), any())).thenReturn(Collections.singletonList(failedTestsProblem));
+    when(myBuildProblemsFilter.getStillApplicable(any(), any(), any())).thenReturn(Collections.singletonList(failedTestsProblem));
+    HeuristicResult heuristicResult = new HeuristicResult();
+    heuristicResult.addResponsibility(failedTestsProblem, new Responsibility(mySUser, "Failed description"));
+    when(myResponsibleUserFinder.findResponsibleUser(any(), any(), anyList(), anyList(), any(), any(), any())).thenReturn(heuristicResult);
+    configureBuildFeature(mySBuild);
+
+    myProcessor.processBuild(myFailedBuildInfo);
+
+    assertTrue(myFailedBuildInfo.isMassFailure());
+    Mockito.verify(mySBuild, Mockito.never()).getBuildStatistics(any());
+    Mockito.verify(myBuildProblemsAssigner)
+           .assign(eq(heuristicResult), any(), eq(mySBuild), eq(Collections.singletonList(failedTestsProblem)));
+  }
+
+  public void TestMassFailureDecisionIsKept() {
+    setInternalProperty(Constants.MASS_FAILURE_PERCENT, "50");
+    ShortStatistics shortStatistics = configureTestStatistics(1000, 100);
+    when(myFailedTestFilter.apply(any(), any(), anyList(), any(), any()))
+      .thenReturn(Collections.singletonList(Mockito.mock(STestRun.class)));
+    configureBuildFeature(mySBuild);
+    myProcessor.processBuild(myFailedBuildInfo);
+
+    when(shortStatistics.getFailedTestCount()).thenReturn(900);
+    myProcessor.processBuild(myFailedBuildInfo);
+
+    assertFalse(myFailedBuildInfo.isMassFailure());
+  }
+
+  public void TestNotMassFailure() {
+    setInternalProperty(Constants.MASS_FAILURE_PERCENT, "50");
+    configureTestStatistics(10000, 900);
+    configureBuildFeature(mySBuild);
+
+    myProcessor.processBuild(myFailedBuildInfo);
+
+    assertFalse(myFailedBuildInfo.isMassFailure());
+    Mockito.verify(myFailedTestAssigner, Mockito.atLeastOnce()).assign(any(), any(), any(), anyList());
+  }
+
+  private ShortStatistics configureTestStatistics(final int allTestCount, final int failedTestCount) {
+    ShortStatistics shortStatistics = Mockito.mock(ShortStatistics.class);
+    when(shortStatistics.getAllTestCount()).thenReturn(allTestCount);
+    when(shortStatistics.getFailedTestCount()).thenReturn(failedTestCount);
+    when(mySBuild.getShortStatistics()).thenReturn(shortStatistics);
+    return shortStatistics;
+  }
+
   private void configureBuildFeature(SBuild sBuild) {
     SBuildFeatureDescriptor sBuildFeatureDescriptor = Mockito.mock(SBuildFeatureDescriptor.class);
     when(sBuild.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE))
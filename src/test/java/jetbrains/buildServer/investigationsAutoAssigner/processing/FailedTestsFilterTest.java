@@ -19,7 +19,9 @@ package jetbrains.buildServer.investigationsAutoAssigner.processing;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import jetbrains.buildServer.BaseTestCase;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.FailedBuildInfo;
@@ -32,12 +34,14 @@ import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STest;
 import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.stat.FirstFailedInFixedInCalculator;
 import jetbrains.buildServer.tests.TestName;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.when;
 
@@ -53,6 +57,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   private InvestigationsManager myInvestigationsManager;
   private STest mySTest;
   private FailedBuildInfo myFailedBuildInfo;
+  private FirstFailedInFixedInCalculator myFixedInCalculator;
   private List<STestRun> myTestsWrapper;
 
   @BeforeMethod
@@ -60,6 +65,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   protected void setUp() throws Exception {
     super.setUp();
     myFlakyTestDetector = Mockito.mock(FlakyTestDetector.class);
+    myFixedInCalculator = Mockito.mock(FirstFailedInFixedInCalculator.class);
     mySProject = Mockito.mock(SProject.class);
     SProject parentProject = Mockito.mock(SProject.class);
     final SProject project2 = Mockito.mock(SProject.class);
@@ -88,7 +94,8 @@ public class FailedTestsFilterTest extends BaseTestCase {
     myTestsWrapper = Collections.singletonList(mySTestRun);
     when(mySBuild.getParametersProvider()).thenReturn(Mockito.mock(ParametersProvider.class));
     myFailedBuildInfo = new FailedBuildInfo(mySBuild, false);
-    myFailedTestFilter = new FailedTestFilter(myFlakyTestDetector, myInvestigationsManager);
+    myFailedTestFilter = new FailedTestFilter(myFlakyTestDetector, myInvestigationsManager, myFixedInCalculator,
+                                              (sBuild, testRuns) -> testRuns.sort(FailedTestPriority.BY_ORDER_ID));
   }
 
   public void Test_TestRunIsMuted() {
@@ -115,6 +122,31 @@ public class FailedTestsFilterTest extends BaseTestCase {
     Assert.assertEquals(applicableTestRuns.size(), 0);
   }
 
+  public void Test_FixedInIsNotCalculatedForNotApplicableTests() {
+    when(mySTestRun.isMuted()).thenReturn(true);
+
+    myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+
+    Mockito.verify(myFixedInCalculator, Mockito.never()).calculateFFIData(any());
+  }
+
+  public void Test_FixedInIsNotCalculatedAgainBeforeAssignment() {
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    myFailedTestFilter.getStillApplicable(myFailedBuildInfo, mySProject, applicableTestRuns);
+
+    Mockito.verify(myFixedInCalculator, Mockito.times(1)).calculateFFIData(mySTestRun);
+  }
+
+  public void Test_InvestigationReasonPrecedesSetUpReason() {
+    when(mySTest.getName()).thenReturn(new TestName("com.package.Test.setUp"));
+    when(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).thenReturn(true);
+    Map<Long, String> notApplicableTestDescription = new HashMap<>();
+
+    myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper, notApplicableTestDescription);
+
+    Assert.assertEquals(notApplicableTestDescription.get(mySTest.getTestNameId()), "was already under an investigation");
+  }
+
   public void Test_TestRunIsNotFixed() {
     when(mySTestRun.isFixed()).thenReturn(false);
 
@@ -200,7 +232,8 @@ public class FailedTestsFilterTest extends BaseTestCase {
 
     setInternalProperty(Constants.IGNORE_SETUP_TEARDOWN_METHODS, "false");
 
-    FailedTestFilter filter = new FailedTestFilter(myFlakyTestDetector, myInvestigationsManager);
+    FailedTestFilter filter = new FailedTestFilter(myFlakyTestDetector, myInvestigationsManager, myFixedInCalculator,
+                                                   (sBuild, testRuns) -> testRuns.sort(FailedTestPriority.BY_ORDER_ID));
     applicableTestRuns = filter.apply(new FailedBuildInfo(mySBuild, false), mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 3);
@@ -208,4 +241,98 @@ public class FailedTestsFilterTest extends BaseTestCase {
     Assert.assertEquals(applicableTestRuns.get(1), setupTest);
     Assert.assertEquals(applicableTestRuns.get(2), teardownTest);
   }
+
+  public void Test_PriorityDefinesTestsWithinLimit() {
+    setInternalProperty(Constants.MAX_TESTS_PER_BUILD_NUMBER, "1");
+    STestRun prioritizedTest = Mockito.mock(STestRun.class);
+    when(prioritizedTest.getTest()).thenReturn(mySTest);
+    when(prioritizedTest.isNewFailure()).thenReturn(true);
+    when(prioritizedTest.getTestRunId()).thenReturn(2);
+    when(prioritizedTest.getOrderId()).thenReturn(2);
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(mySTestRun.getOrderId()).thenReturn(1);
+
+    FailedTestFilter filter =
+      new FailedTestFilter(myFlakyTestDetector, myInvestigationsManager, myFixedInCalculator,
+                           (sBuild, testRuns) -> testRuns.sort(FailedTestPriority.BY_ORDER_ID.reversed()));
+    List<STestRun> applicableTestRuns =
+      filter.apply(new FailedBuildInfo(mySBuild, false), mySProject, Arrays.asList(mySTestRun, prioritizedTest));
+
+    Assert.assertEquals(applicableTestRuns, Collections.singletonList(prioritizedTest));
+  }
+
+  public void Test_LimitCountsTestsWithSameFailure() {
+    setInternalProperty(Constants.MAX_TESTS_PER_BUILD_NUMBER, "1");
+    STestRun sameFailure = createTestRunWithSameFailure();
+
+    List<STestRun> applicableTestRuns =
+      myFailedTestFilter.apply(myFailedBuildInfo, mySProject, Arrays.asList(mySTestRun, sameFailure));
+
+    Assert.assertEquals(applicableTestRuns, Collections.singletonList(mySTestRun));
+    Mockito.verify(mySTestRun, Mockito.never()).getFullText();
+  }
+
+  public void Test_ClusteringCountsSameFailureOnce() {
+    setInternalProperty(Constants.MAX_TESTS_PER_BUILD_NUMBER, "2");
+    setInternalProperty(Constants.FAILURE_CLUSTERING_ENABLED, "true");
+    STestRun sameFailure = createTestRunWithSameFailure();
+    STestRun otherFailure = Mockito.mock(STestRun.class);
+    when(otherFailure.getTest()).thenReturn(mySTest);
+    when(otherFailure.isNewFailure()).thenReturn(true);
+    when(otherFailure.getTestRunId()).thenReturn(3);
+    when(otherFailure.getOrderId()).thenReturn(3);
+    when(otherFailure.getFullText()).thenReturn("java.lang.NullPointerException\n\tat com.example.Other.method(Other.java:7)\n");
+    STestRun notReachedTest = Mockito.mock(STestRun.class);
+    when(notReachedTest.getTest()).thenReturn(mySTest);
+    when(notReachedTest.isNewFailure()).thenReturn(true);
+    when(notReachedTest.getTestRunId()).thenReturn(4);
+    when(notReachedTest.getOrderId()).thenReturn(4);
+
+    List<STestRun> applicableTestRuns =
+      myFailedTestFilter.apply(myFailedBuildInfo, mySProject, Arrays.asList(mySTestRun, sameFailure, otherFailure, notReachedTest));
+
+    Assert.assertEquals(applicableTestRuns, Arrays.asList(mySTestRun, sameFailure, otherFailure));
+    Mockito.verify(mySTestRun, Mockito.times(1)).getFullText();
+    Mockito.verify(notReachedTest, Mockito.never()).getFullText();
+  }
+
+  public void Test_NearDuplicateGroupingWithoutClustering() {
+    setInternalProperty(Constants.MAX_TESTS_PER_BUILD_NUMBER, "1");
+    setInternalProperty(Constants.NEAR_DUPLICATE_GROUPING_ENABLED, "true");
+    setInternalProperty(Constants.NEAR_DUPLICATE_SIMILARITY_PERCENT, "50");
+    String connectionFailure = "Could not connect to the database server at 10.0.0.1 port %d after waiting for 3000 ms, " +
+                               "request id %s was rejected because the connection pool was exhausted";
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(mySTestRun.getOrderId()).thenReturn(1);
+    when(mySTestRun.getFullText()).thenReturn(String.format(connectionFailure, 41234, "a1b2c3"));
+    STestRun nearDuplicate = Mockito.mock(STestRun.class);
+    when(nearDuplicate.getTest()).thenReturn(mySTest);
+    when(nearDuplicate.isNewFailure()).thenReturn(true);
+    when(nearDuplicate.getTestRunId()).thenReturn(2);
+    when(nearDuplicate.getOrderId()).thenReturn(2);
+    when(nearDuplicate.getFullText()).thenReturn(String.format(connectionFailure, 50001, "ffee12"));
+    Assert.assertTrue(FailureClusters.isEnabled());
+    FailureClusters failureClusters = FailureClusters.fromProperties();
+
+    List<STestRun> applicableTestRuns =
+      myFailedTestFilter.apply(myFailedBuildInfo, mySProject, Arrays.asList(mySTestRun, nearDuplicate), new HashMap<>(),
+                               failureClusters);
+
+    Assert.assertEquals(applicableTestRuns, Arrays.asList(mySTestRun, nearDuplicate));
+    Assert.assertSame(failureClusters.getRepresentative(nearDuplicate), mySTestRun);
+  }
+
+  private STestRun createTestRunWithSameFailure() {
+    String fullText = "java.lang.IllegalStateException: failed\n\tat com.example.Service.method(Service.java:42)\n";
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(mySTestRun.getOrderId()).thenReturn(1);
+    when(mySTestRun.getFullText()).thenReturn(fullText);
+    STestRun sameFailure = Mockito.mock(STestRun.class);
+    when(sameFailure.getTest()).thenReturn(mySTest);
+    when(sameFailure.isNewFailure()).thenReturn(true);
+    when(sameFailure.getTestRunId()).thenReturn(2);
+    when(sameFailure.getOrderId()).thenReturn(2);
+    when(sameFailure.getFullText()).thenReturn(fullText.replace("42", "43"));
+    return sameFailure;
+  }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class FailureSignatureTest {
+
+  public void testNoStackTrace() {
+    assertNull(FailureSignature.of((String)null));
+    assertNull(FailureSignature.of("expected:<1> but was:<2>"));
+  }
+
+  public void testLineNumbersAndMessagesAreIgnored() {
+    String first = "java.lang.IllegalStateException: connection to localhost:41234 refused\n" +
+                   "\tat com.example.Client.connect(Client.java:42)\n" +
+                   "\tat com.example.ClientTest.testOne(ClientTest.java:10)\n";
+    String second = "java.lang.IllegalStateException: connection to localhost:50001 refused\n" +
+                    "\tat com.example.Client.connect(Client.java:43)\n" +
+                    "\tat com.example.ClientTest.testOne(ClientTest.java:17)\n";
+
+    assertNotNull(FailureSignature.of(first));
+    assertEquals(FailureSignature.of(first), FailureSignature.of(second));
+  }
+
+  public void testDifferentFramesGiveDifferentSignatures() {
+    String first = "java.lang.NullPointerException\n" +
+                   "\tat com.example.Service.first(Service.java:42)\n";
+    String second = "java.lang.NullPointerException\n" +
+                    "\tat com.example.Service.second(Service.java:42)\n";
+
+    assertNotEquals(FailureSignature.of(first), FailureSignature.of(second));
+  }
+
+  public void testMultilineMessage() {
+    String first = "expected value\n" +
+                   "java.lang.AssertionError: line one\n" +
+                   "line two at 12:00\n" +
+                   "\tat com.example.ServiceTest.test(ServiceTest.java:10)\n";
+    String second = "java.lang.AssertionError: other\n" +
+                    "\tat com.example.ServiceTest.test(ServiceTest.java:11)\n";
+
+    assertEquals(FailureSignature.of(first), FailureSignature.of(second));
+  }
+
+  public void testOnlyTopFramesAreUsed() {
+    StringBuilder first = new StringBuilder("java.lang.StackOverflowError\n");
+    StringBuilder second = new StringBuilder("java.lang.StackOverflowError\n");
+    for (int i = 0; i < FailureSignature.TOP_FRAMES_NUMBER; i++) {
+      first.append("\tat com.example.Recursive.call(Recursive.java:1)\n");
+      second.append("\tat com.example.Recursive.call(Recursive.java:1)\n");
+    }
+    first.append("\tat com.example.First.run(First.java:1)\n");
+    second.append("\tat com.example.Second.run(Second.java:1)\n");
+
+    assertEquals(FailureSignature.of(first.toString()), FailureSignature.of(second.toString()));
+  }
+}
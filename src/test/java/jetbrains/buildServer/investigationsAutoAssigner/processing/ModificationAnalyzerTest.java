@@ -22,7 +22,9 @@ import java.util.Collections;
 import jetbrains.buildServer.BaseTestCase;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicNotApplicableException;
 import jetbrains.buildServer.users.User;
+import jetbrains.buildServer.users.UserModelEx;
 import jetbrains.buildServer.users.impl.UserEx;
+import jetbrains.buildServer.util.EventDispatcher;
 import jetbrains.buildServer.vcs.SVcsModification;
 import jetbrains.buildServer.vcs.VcsFileModification;
 import org.mockito.Mockito;
@@ -49,10 +51,16 @@ public class ModificationAnalyzerTest extends BaseTestCase {
     String firstUserUsername = "myFirstUser";
     myFirstUser = Mockito.mock(UserEx.class);
     when(myFirstUser.getUsername()).thenReturn(firstUserUsername);
+    when(myFirstUser.getId()).thenReturn(1L);
 
     String secondUserUsername = "mySecondUser";
     mySecondUser = Mockito.mock(UserEx.class);
     when(mySecondUser.getUsername()).thenReturn(secondUserUsername);
+    when(mySecondUser.getId()).thenReturn(2L);
+
+    UserModelEx userModel = Mockito.mock(UserModelEx.class);
+    when(userModel.findUserAccount(null, firstUserUsername)).thenReturn(myFirstUser);
+    when(userModel.findUserAccount(null, secondUserUsername)).thenReturn(mySecondUser);
 
     VcsFileModification changeMod = Mockito.mock(VcsFileModification.class);
     when(changeMod.getRelativeFileName()).thenReturn(myFilePath);
@@ -60,7 +68,8 @@ public class ModificationAnalyzerTest extends BaseTestCase {
     when(myMod.getCommitters()).thenReturn(Collections.singletonList(myFirstUser));
     when(myMod.getChanges()).thenReturn(Collections.singletonList(changeMod));
 
-    ModificationAnalyzerFactory modificationAnalyzerFactory = new ModificationAnalyzerFactory();
+    ModificationAnalyzerFactory modificationAnalyzerFactory =
+      new ModificationAnalyzerFactory(new CommittersCache(userModel, Mockito.mock(EventDispatcher.class)));
     myWrappedVcsChange = modificationAnalyzerFactory.getInstance(myMod);
   }
 
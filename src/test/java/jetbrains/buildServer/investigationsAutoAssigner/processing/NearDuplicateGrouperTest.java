@@ -0,0 +1,65 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.processing;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class NearDuplicateGrouperTest {
+  private static final String CONNECTION_FAILURE =
+    "Could not connect to the database server at %s port %d after waiting for %d ms, request id %s was rejected " +
+    "because the connection pool was exhausted and no idle connections were available";
+
+  public void testShortTextIsNotGrouped() {
+    assertNull(NearDuplicateGrouper.computeSignature(null));
+    assertNull(NearDuplicateGrouper.computeSignature("expected true but was false"));
+  }
+
+  public void testNearDuplicatesAreGrouped() {
+    NearDuplicateGrouper<String> grouper = new NearDuplicateGrouper<String>(0.5, 100);
+
+    assertNull(grouper.add(String.format(CONNECTION_FAILURE, "10.0.0.1", 41234, 3000, "a1b2c3"), "first"));
+    assertNull(grouper.add("Assertion failed while comparing the rendered page with the expected one: " +
+                           "the header element is missing in the document and the footer has a wrong title", "second"));
+    assertEquals(grouper.add(String.format(CONNECTION_FAILURE, "10.0.0.1", 50001, 3000, "ffee12"), "third"), "first");
+  }
+
+  public void testShortTextsAreNotGrouped() {
+    NearDuplicateGrouper<String> grouper = new NearDuplicateGrouper<String>(0.5, 100);
+
+    assertNull(grouper.add("expected true but was false", "first"));
+    assertNull(grouper.add("expected true but was false", "second"));
+  }
+
+  public void testSimilarityThreshold() {
+    NearDuplicateGrouper<String> grouper = new NearDuplicateGrouper<String>(1.0, 100);
+
+    assertNull(grouper.add(String.format(CONNECTION_FAILURE, "10.0.0.1", 41234, 3000, "a1b2c3"), "first"));
+    assertNull(grouper.add(String.format(CONNECTION_FAILURE, "10.0.0.1", 50001, 3000, "ffee12"), "second"));
+  }
+
+  public void testNumberOfGroupedTestsIsBounded() {
+    NearDuplicateGrouper<String> grouper = new NearDuplicateGrouper<String>(0.5, 1);
+
+    assertNull(grouper.add("Assertion failed while comparing the rendered page with the expected one: " +
+                           "the header element is missing in the document and the footer has a wrong title", "first"));
+    assertNull(grouper.add(String.format(CONNECTION_FAILURE, "10.0.0.1", 41234, 3000, "a1b2c3"), "second"));
+    assertNull(grouper.add(String.format(CONNECTION_FAILURE, "10.0.0.1", 50001, 3000, "ffee12"), "third"));
+  }
+}
@@ -19,15 +19,26 @@ package jetbrains.buildServer.investigationsAutoAssigner.processing;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
 import jetbrains.buildServer.investigationsAutoAssigner.common.HeuristicResult;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Responsibility;
+import jetbrains.buildServer.investigationsAutoAssigner.common.ResponsibilityInterner;
+import jetbrains.buildServer.investigationsAutoAssigner.heuristics.AsyncHeuristic;
 import jetbrains.buildServer.investigationsAutoAssigner.heuristics.Heuristic;
+import jetbrains.buildServer.investigationsAutoAssigner.heuristics.HeuristicEvaluator;
 import jetbrains.buildServer.investigationsAutoAssigner.utils.CustomParameters;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.executors.ExecutorServices;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import jetbrains.buildServer.users.SUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -60,7 +71,8 @@ public class ResponsibleUserFinderTest extends BaseTestCase {
     mySTestRun = Mockito.mock(STestRun.class);
     myCustomParameters = Mockito.mock(CustomParameters.class);
     myTestWrapper = Collections.singletonList(mySTestRun);
-    myUserFinder = new ResponsibleUserFinder(Arrays.asList(myHeuristic, myHeuristic2), myCustomParameters);
+    myUserFinder = new ResponsibleUserFinder(Arrays.asList(myHeuristic, myHeuristic2), myCustomParameters,
+                                             Mockito.mock(ExecutorServices.class));
     HeuristicResult heuristicResult1 = new HeuristicResult();
     HeuristicResult heuristicResult2 = new HeuristicResult();
     when(myHeuristic.findResponsibleUser(any())).thenReturn(heuristicResult1);
@@ -122,4 +134,246 @@ public class ResponsibleUserFinderTest extends BaseTestCase {
 
     Mockito.verify(myHeuristic2, Mockito.atLeastOnce()).findResponsibleUser(any());
   }
+
+  public void Test_FindResponsibleUser_OnePassStopsAtFirstFound() {
+    setInternalProperty(Constants.FUSED_HEURISTICS_EVALUATION, "true");
+    SUser sUser = Mockito.mock(SUser.class);
+    Responsibility responsibility = new Responsibility(sUser, "Failed description");
+    HeuristicEvaluator evaluator = Mockito.mock(HeuristicEvaluator.class);
+    HeuristicEvaluator evaluator2 = Mockito.mock(HeuristicEvaluator.class);
+    when(evaluator.evaluate(mySTestRun)).thenReturn(responsibility);
+    when(myHeuristic.getEvaluator(any())).thenReturn(evaluator);
+    when(myHeuristic2.getEvaluator(any())).thenReturn(evaluator2);
+
+    HeuristicResult result =
+      myUserFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), myTestWrapper);
+
+    Assert.assertEquals(result.getResponsibility(mySTestRun), responsibility);
+    Mockito.verify(evaluator2, Mockito.never()).evaluate(any(STestRun.class));
+    Mockito.verify(myHeuristic, Mockito.never()).findResponsibleUser(any());
+  }
+
+  public void Test_FindResponsibleUser_OnePassDiscardsNotApplicableHeuristic() {
+    STestRun secondTestRun = Mockito.mock(STestRun.class);
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(secondTestRun.getTestRunId()).thenReturn(2);
+    List<STestRun> testRuns = Arrays.asList(mySTestRun, secondTestRun);
+    Responsibility first = new Responsibility(Mockito.mock(SUser.class), "first");
+    Responsibility fallback = new Responsibility(Mockito.mock(SUser.class), "fallback");
+    Heuristic notApplicableHeuristic = new NotApplicableForTestHeuristic(secondTestRun, first);
+    Heuristic fallbackHeuristic = new NotApplicableForTestHeuristic(null, fallback);
+    ResponsibleUserFinder userFinder =
+      new ResponsibleUserFinder(Arrays.asList(notApplicableHeuristic, fallbackHeuristic), myCustomParameters,
+                                Mockito.mock(ExecutorServices.class));
+
+    HeuristicResult sequentialResult =
+      userFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), testRuns);
+    setInternalProperty(Constants.FUSED_HEURISTICS_EVALUATION, "true");
+    HeuristicResult onePassResult =
+      userFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), testRuns);
+
+    for (STestRun testRun : testRuns) {
+      Assert.assertEquals(sequentialResult.getResponsibility(testRun), fallback);
+      Assert.assertEquals(onePassResult.getResponsibility(testRun), fallback);
+    }
+  }
+
+  public void Test_FindResponsibleUser_BuildLevelHeuristicEvaluatedOncePerCluster() {
+    String fullText = "java.lang.IllegalStateException: failed\n\tat com.example.Service.method(Service.java:42)\n";
+    STestRun sameFailure = Mockito.mock(STestRun.class);
+    STestRun otherFailure = Mockito.mock(STestRun.class);
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(mySTestRun.getFullText()).thenReturn(fullText);
+    when(sameFailure.getTestRunId()).thenReturn(2);
+    when(sameFailure.getFullText()).thenReturn(fullText.replace("42", "43"));
+    when(otherFailure.getTestRunId()).thenReturn(3);
+    when(otherFailure.getFullText()).thenReturn("java.lang.NullPointerException\n\tat com.example.Other.method(Other.java:7)\n");
+    List<STestRun> testRuns = Arrays.asList(mySTestRun, sameFailure, otherFailure);
+    FailureClusters failureClusters = new FailureClusters(true, null);
+    testRuns.forEach(failureClusters::add);
+    Responsibility responsibility = new Responsibility(Mockito.mock(SUser.class), "was the only committer");
+    when(myHeuristic2.isBuildLevel()).thenReturn(true);
+    when(myHeuristic2.findResponsibleUser(any())).thenAnswer(invocation -> {
+      HeuristicContext heuristicContext = invocation.getArgument(0);
+      HeuristicResult heuristicResult = new HeuristicResult();
+      heuristicContext.getTestRuns().forEach(testRun -> heuristicResult.addResponsibility(testRun, responsibility));
+      return heuristicResult;
+    });
+
+    HeuristicResult result =
+      myUserFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), testRuns,
+                                       new ResponsibilityInterner(), new BuildChanges(mySBuild), failureClusters);
+
+    ArgumentCaptor<HeuristicContext> perTestContext = ArgumentCaptor.forClass(HeuristicContext.class);
+    Mockito.verify(myHeuristic).findResponsibleUser(perTestContext.capture());
+    Assert.assertEquals(perTestContext.getValue().getTestRuns(), testRuns);
+    ArgumentCaptor<HeuristicContext> buildLevelContext = ArgumentCaptor.forClass(HeuristicContext.class);
+    Mockito.verify(myHeuristic2).findResponsibleUser(buildLevelContext.capture());
+    Assert.assertEquals(buildLevelContext.getValue().getTestRuns(), Arrays.asList(mySTestRun, otherFailure));
+    for (STestRun testRun : testRuns) {
+      Assert.assertEquals(result.getResponsibility(testRun), responsibility);
+    }
+  }
+
+  public void Test_FindResponsibleUser_ClusterTestResolvedByPerTestHeuristic() {
+    String fullText = "java.lang.IllegalStateException: failed\n\tat com.example.Service.method(Service.java:42)\n";
+    STestRun sameFailure = Mockito.mock(STestRun.class);
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(mySTestRun.getFullText()).thenReturn(fullText);
+    when(sameFailure.getTestRunId()).thenReturn(2);
+    when(sameFailure.getFullText()).thenReturn(fullText);
+    List<STestRun> testRuns = Arrays.asList(mySTestRun, sameFailure);
+    FailureClusters failureClusters = new FailureClusters(true, null);
+    testRuns.forEach(failureClusters::add);
+    Responsibility previous = new Responsibility(Mockito.mock(SUser.class), "was previously responsible");
+    Responsibility buildLevel = new Responsibility(Mockito.mock(SUser.class), "was the only committer");
+    HeuristicResult perTestResult = new HeuristicResult();
+    perTestResult.addResponsibility(mySTestRun, previous);
+    when(myHeuristic.findResponsibleUser(any())).thenReturn(perTestResult);
+    HeuristicResult buildLevelResult = new HeuristicResult();
+    buildLevelResult.addResponsibility(sameFailure, buildLevel);
+    when(myHeuristic2.isBuildLevel()).thenReturn(true);
+    when(myHeuristic2.findResponsibleUser(any())).thenReturn(buildLevelResult);
+
+    HeuristicResult result =
+      myUserFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), testRuns,
+                                       new ResponsibilityInterner(), new BuildChanges(mySBuild), failureClusters);
+
+    Assert.assertEquals(result.getResponsibility(mySTestRun), previous);
+    Assert.assertEquals(result.getResponsibility(sameFailure), buildLevel);
+  }
+
+  public void Test_FindResponsibleUser_AsyncHeuristicKeepsPriority() {
+    setInternalProperty(Constants.ASYNC_HEURISTICS_ENABLED, "true");
+    STestRun secondTestRun = Mockito.mock(STestRun.class);
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(secondTestRun.getTestRunId()).thenReturn(2);
+    SUser sUser = Mockito.mock(SUser.class);
+    HeuristicResult heuristicResult = new HeuristicResult();
+    heuristicResult.addResponsibility(mySTestRun, new Responsibility(sUser, "Failed description"));
+    when(myHeuristic.findResponsibleUser(any())).thenReturn(heuristicResult);
+    AsyncHeuristic asyncHeuristic = createAsyncHeuristic();
+    HeuristicResult asyncResult = new HeuristicResult();
+    asyncResult.addResponsibility(mySTestRun, new Responsibility(sUser, "Async description"));
+    asyncResult.addResponsibility(secondTestRun, new Responsibility(sUser, "Async description"));
+    when(asyncHeuristic.findResponsibleUserAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(asyncResult));
+    ResponsibleUserFinder userFinder =
+      new ResponsibleUserFinder(Arrays.asList(myHeuristic, asyncHeuristic), myCustomParameters, createExecutorServices());
+
+    HeuristicResult result =
+      userFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), Arrays.asList(mySTestRun, secondTestRun));
+
+    Responsibility first = result.getResponsibility(mySTestRun);
+    Responsibility second = result.getResponsibility(secondTestRun);
+    Assert.assertNotNull(first);
+    Assert.assertNotNull(second);
+    Assert.assertEquals(first.getDescription(), "Failed description");
+    Assert.assertEquals(second.getDescription(), "Async description");
+    Mockito.verify(asyncHeuristic, Mockito.never()).findResponsibleUser(any());
+  }
+
+  public void Test_FindResponsibleUser_NotNeededAsyncHeuristicCancelled() {
+    setInternalProperty(Constants.ASYNC_HEURISTICS_ENABLED, "true");
+    HeuristicResult heuristicResult = new HeuristicResult();
+    heuristicResult.addResponsibility(mySTestRun, new Responsibility(Mockito.mock(SUser.class), "Failed description"));
+    when(myHeuristic.findResponsibleUser(any())).thenReturn(heuristicResult);
+    AsyncHeuristic asyncHeuristic = createAsyncHeuristic();
+    CompletableFuture<HeuristicResult> asyncResult = new CompletableFuture<>();
+    ArgumentCaptor<HeuristicContext> asyncContext = ArgumentCaptor.forClass(HeuristicContext.class);
+    when(asyncHeuristic.findResponsibleUserAsync(asyncContext.capture(), any())).thenReturn(asyncResult);
+    ResponsibleUserFinder userFinder =
+      new ResponsibleUserFinder(Arrays.asList(myHeuristic, asyncHeuristic), myCustomParameters, createExecutorServices());
+
+    userFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), myTestWrapper);
+
+    Assert.assertTrue(asyncResult.isCancelled());
+    Assert.assertTrue(asyncContext.getValue().isCancelled());
+  }
+
+  public void Test_FindResponsibleUser_AsyncHeuristicNotStartedByDefault() {
+    AsyncHeuristic asyncHeuristic = createAsyncHeuristic();
+    when(asyncHeuristic.findResponsibleUser(any())).thenReturn(new HeuristicResult());
+    ResponsibleUserFinder userFinder =
+      new ResponsibleUserFinder(Arrays.asList(myHeuristic, asyncHeuristic), myCustomParameters, createExecutorServices());
+
+    userFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), myTestWrapper);
+
+    Mockito.verify(asyncHeuristic, Mockito.never()).findResponsibleUserAsync(any(), any());
+    Mockito.verify(asyncHeuristic).findResponsibleUser(any());
+  }
+
+  @NotNull
+  private static AsyncHeuristic createAsyncHeuristic() {
+    AsyncHeuristic asyncHeuristic = Mockito.mock(AsyncHeuristic.class);
+    when(asyncHeuristic.getId()).thenReturn("asyncHeuristicId");
+    when(asyncHeuristic.getCostClass()).thenReturn(AsyncHeuristic.CostClass.EXPENSIVE);
+    when(asyncHeuristic.getRequiredData()).thenReturn(Collections.emptySet());
+    return asyncHeuristic;
+  }
+
+  @NotNull
+  private static ExecutorServices createExecutorServices() {
+    ExecutorServices executorServices = Mockito.mock(ExecutorServices.class);
+    when(executorServices.getNormalExecutorService()).thenReturn(Mockito.mock(ScheduledExecutorService.class));
+    return executorServices;
+  }
+
+  /**
+   * Finds the same responsible user for all tests unless the given test is among them, like BrokenFileHeuristic
+   * does when a test points to several users.
+   */
+  private static class NotApplicableForTestHeuristic implements Heuristic {
+    @Nullable private final STestRun myNotApplicableTestRun;
+    private final Responsibility myResponsibility;
+
+    private NotApplicableForTestHeuristic(@Nullable final STestRun notApplicableTestRun,
+                                          @NotNull final Responsibility responsibility) {
+      myNotApplicableTestRun = notApplicableTestRun;
+      myResponsibility = responsibility;
+    }
+
+    @NotNull
+    @Override
+    public String getId() {
+      return myResponsibility.getDescription();
+    }
+
+    @NotNull
+    @Override
+    public HeuristicResult findResponsibleUser(@NotNull final HeuristicContext heuristicContext) {
+      HeuristicResult result = new HeuristicResult();
+      if (heuristicContext.getTestRuns().contains(myNotApplicableTestRun)) {
+        return result;
+      }
+
+      heuristicContext.getTestRuns().forEach(testRun -> result.addResponsibility(testRun, myResponsibility));
+      return result;
+    }
+
+    @NotNull
+    @Override
+    public HeuristicEvaluator getEvaluator(@NotNull final HeuristicContext heuristicContext) {
+      return new HeuristicEvaluator() {
+        private boolean myIsApplicable = true;
+
+        @Nullable
+        @Override
+        public Responsibility evaluate(@NotNull final STestRun sTestRun) {
+          myIsApplicable &= sTestRun != myNotApplicableTestRun;
+          return myIsApplicable ? myResponsibility : null;
+        }
+
+        @Nullable
+        @Override
+        public Responsibility evaluate(@NotNull final BuildProblem buildProblem) {
+          return null;
+        }
+
+        @Override
+        public boolean isApplicable() {
+          return myIsApplicable;
+        }
+      };
+    }
+  }
 }
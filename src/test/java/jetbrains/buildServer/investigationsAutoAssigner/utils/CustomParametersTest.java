@@ -17,13 +17,18 @@
 package jetbrains.buildServer.investigationsAutoAssigner.utils;
 
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import jetbrains.buildServer.BaseTestCase;
 import jetbrains.buildServer.BuildProblemTypes;
 import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SBuildFeatureDescriptor;
+import jetbrains.buildServer.serverSide.SBuildType;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -36,7 +41,7 @@ public class CustomParametersTest extends BaseTestCase {
   @BeforeMethod
   @Override
   protected void setUp() throws Exception {
-    myCustomParameters = new CustomParameters();
+    myCustomParameters = new CustomParameters(Mockito.mock(BuildServerListenerEventDispatcher.class));
     super.setUp();
   }
 
@@ -124,4 +129,73 @@ public class CustomParametersTest extends BaseTestCase {
                      BuildProblemTypes.TC_COMPILATION_ERROR_TYPE,
                      BuildProblemTypes.TC_EXIT_CODE_TYPE);
   }
+
+  public void testSettingsAreSharedByBuildsOfConfiguration() {
+    BuildServerListenerEventDispatcher eventDispatcher = Mockito.mock(BuildServerListenerEventDispatcher.class);
+    CustomParameters customParameters = new CustomParameters(eventDispatcher);
+    ArgumentCaptor<BuildServerListener> listener = ArgumentCaptor.forClass(BuildServerListener.class);
+    Mockito.verify(eventDispatcher).addListener(listener.capture());
+
+    Map<String, String> params = new HashMap<>();
+    params.put(Constants.USERS_TO_IGNORE, "username1");
+    SBuild firstBuild = createStartedBuild(params, System.currentTimeMillis() + 1000);
+    SBuild secondBuild = createStartedBuild(params, System.currentTimeMillis() + 1000);
+
+    assertSetEquals(customParameters.getIgnoredUsernames(firstBuild), "username1");
+    assertSetEquals(customParameters.getIgnoredUsernames(secondBuild), "username1");
+    Mockito.verify(secondBuild, Mockito.never()).getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE);
+
+    params.put(Constants.USERS_TO_IGNORE, "username2");
+    SBuildType buildType = Mockito.mock(SBuildType.class);
+    Mockito.when(buildType.getInternalId()).thenReturn("bt1");
+    listener.getValue().buildTypePersisted(buildType);
+
+    // parsed settings are dropped when the configuration changes
+    assertSetEquals(customParameters.getIgnoredUsernames(secondBuild), "username2");
+  }
+
+  public void testSettingsWithReferencesAreNotShared() {
+    Map<String, String> rawParams = new HashMap<>();
+    rawParams.put(Constants.USERS_TO_IGNORE, "%users.to.ignore%");
+    Map<String, String> firstParams = new HashMap<>();
+    firstParams.put(Constants.USERS_TO_IGNORE, "username1");
+    Map<String, String> secondParams = new HashMap<>();
+    secondParams.put(Constants.USERS_TO_IGNORE, "username2");
+    SBuild firstBuild = createStartedBuild(firstParams, System.currentTimeMillis() + 1000);
+    SBuild secondBuild = createStartedBuild(secondParams, System.currentTimeMillis() + 1000);
+    SBuildFeatureDescriptor rawDescriptor = Mockito.mock(SBuildFeatureDescriptor.class);
+    Mockito.when(rawDescriptor.getParameters()).thenReturn(rawParams);
+    for (SBuild build : new SBuild[]{firstBuild, secondBuild}) {
+      Mockito.when(build.getBuildType().getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE))
+             .thenReturn(Collections.singletonList(rawDescriptor));
+    }
+
+    assertSetEquals(myCustomParameters.getIgnoredUsernames(firstBuild), "username1");
+    assertSetEquals(myCustomParameters.getIgnoredUsernames(secondBuild), "username2");
+    // references are looked for once per configuration change
+    SBuildType secondBuildType = secondBuild.getBuildType();
+    Mockito.verify(secondBuildType, Mockito.never()).getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE);
+  }
+
+  public void testHeuristicsDisabledByProperty() {
+    setInternalProperty("teamcity.investigationsAutoAssigner.heuristics.DefaultUser.enabled", "false");
+
+    assertTrue(myCustomParameters.isHeuristicsDisabled("DefaultUser"));
+    assertFalse(myCustomParameters.isHeuristicsDisabled("BrokenFile"));
+  }
+
+  private static SBuild createStartedBuild(Map<String, String> params, long startTime) {
+    SBuild sBuildMock = Mockito.mock(SBuild.class);
+    SBuildFeatureDescriptor sBuildFeatureDescriptor = Mockito.mock(SBuildFeatureDescriptor.class);
+    Mockito.when(sBuildMock.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE))
+           .thenReturn(Collections.singletonList(sBuildFeatureDescriptor));
+    Mockito.when(sBuildFeatureDescriptor.getParameters()).thenReturn(params);
+    Mockito.when(sBuildMock.getBuildTypeId()).thenReturn("bt1");
+    Mockito.when(sBuildMock.getStartDate()).thenReturn(new Date(startTime));
+    SBuildType buildType = Mockito.mock(SBuildType.class);
+    Mockito.when(buildType.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE))
+           .thenReturn(Collections.singletonList(sBuildFeatureDescriptor));
+    Mockito.when(sBuildMock.getBuildType()).thenReturn(buildType);
+    return sBuildMock;
+  }
 }
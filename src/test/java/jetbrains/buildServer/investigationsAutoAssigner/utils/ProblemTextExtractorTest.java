@@ -0,0 +1,109 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.utils;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrains.buildServer.BuildProblemData;
+import jetbrains.buildServer.BuildProblemTypes;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.buildLog.LogMessage;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import jetbrains.buildServer.util.ItemProcessor;
+import jetbrains.buildServer.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import static jetbrains.buildServer.serverSide.impl.problems.types.CompilationErrorTypeDetailsProvider.COMPILE_BLOCK_INDEX;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+@Test
+public class ProblemTextExtractorTest {
+
+  public void testShortTextIsNotChanged() {
+    assertEquals(ProblemTextExtractor.getBoundedText("short text", 100), "short text");
+    assertEquals(ProblemTextExtractor.getBoundedText(null, 100), "");
+  }
+
+  public void testLongTextKeepsBeginningAndStackTraceFrames() {
+    StringBuilder fullText = new StringBuilder("java.lang.AssertionError: expected\n");
+    for (int i = 0; i < 10000; i++) {
+      fullText.append("some output line ").append(i).append('\n');
+    }
+    fullText.append("\tat com.example.Service.method(Service.java:42)\n");
+    fullText.append("  at com.example.ServiceTest.test(ServiceTest.java:10)\n");
+
+    String result = ProblemTextExtractor.getBoundedText(fullText.toString(), 1024);
+
+    assertTrue(result.startsWith("java.lang.AssertionError: expected\n"));
+    assertTrue(result.contains("com.example.Service.method(Service.java:42)"));
+    assertTrue(result.contains("com.example.ServiceTest.test(ServiceTest.java:10)"));
+    assertFalse(result.contains("some output line 9999"));
+    assertTrue(result.length() <= 2 * 1024 + 3);
+  }
+
+  public void testFramesAreBounded() {
+    StringBuilder fullText = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      fullText.append("\tat com.example.Recursive.call(Recursive.java:").append(i).append(")\n");
+    }
+
+    String result = ProblemTextExtractor.getBoundedText(fullText.toString(), 1024);
+
+    assertTrue(result.length() <= 2 * 1024 + 100);
+  }
+
+  public void testCompileErrorsReadOncePerBuild() {
+    AtomicInteger reads = new AtomicInteger();
+    ProblemTextExtractor extractor = new ProblemTextExtractor() {
+      @Override
+      void collectCompileErrors(final int compileBlockIndex,
+                                @NotNull final SBuild build,
+                                @NotNull final ItemProcessor<LogMessage> processor) {
+        reads.incrementAndGet();
+        LogMessage message = mock(LogMessage.class);
+        when(message.getText()).thenReturn("cannot find symbol");
+        processor.processItem(message);
+      }
+    };
+    SBuild build = mock(SBuild.class);
+    when(build.getBuildId()).thenReturn(239L);
+    BuildProblem problem = createCompileErrorProblem();
+
+    assertEquals(extractor.getBuildProblemText(problem, build), "cannot find symbol  Compilation error");
+    assertEquals(extractor.getBuildProblemText(problem, build), "cannot find symbol  Compilation error");
+    assertEquals(reads.get(), 1);
+
+    extractor.remove(239L);
+    extractor.getBuildProblemText(problem, build);
+    assertEquals(reads.get(), 2);
+  }
+
+  private static BuildProblem createCompileErrorProblem() {
+    BuildProblemData problemData = mock(BuildProblemData.class);
+    when(problemData.getType()).thenReturn(BuildProblemTypes.TC_COMPILATION_ERROR_TYPE);
+    when(problemData.getAdditionalData())
+      .thenReturn(StringUtil.propertiesToString(Collections.singletonMap(COMPILE_BLOCK_INDEX, "1"), StringUtil.STD_ESCAPER2));
+    BuildProblem problem = mock(BuildProblem.class);
+    when(problem.getId()).thenReturn(1);
+    when(problem.getBuildProblemData()).thenReturn(problemData);
+    when(problem.getBuildProblemDescription()).thenReturn("Compilation error");
+    return problem;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2022 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.investigationsAutoAssigner.utils;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.investigationsAutoAssigner.common.Constants;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
+import jetbrains.buildServer.serverSide.ProjectManager;
+import jetbrains.buildServer.serverSide.SProject;
+import jetbrains.buildServer.serverSide.impl.ProjectEx;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Test
+public class TargetProjectFinderTest extends BaseTestCase {
+  private ProjectManager myProjectManager;
+  private TargetProjectFinder myTargetProjectFinder;
+  private BuildServerListener myListener;
+  private ProjectEx myBaseProject;
+  private SProject myPreferredProject;
+  private SProject myOtherPreferredProject;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myProjectManager = Mockito.mock(ProjectManager.class);
+    BuildServerListenerEventDispatcher eventDispatcher = Mockito.mock(BuildServerListenerEventDispatcher.class);
+    myTargetProjectFinder = new TargetProjectFinder(myProjectManager, eventDispatcher);
+    ArgumentCaptor<BuildServerListener> listener = ArgumentCaptor.forClass(BuildServerListener.class);
+    verify(eventDispatcher).addListener(listener.capture());
+    myListener = listener.getValue();
+
+    myBaseProject = Mockito.mock(ProjectEx.class);
+    when(myBaseProject.getProjectId()).thenReturn("project1");
+    when(myBaseProject.getBooleanInternalParameterOrTrue(Constants.USE_PREFERRED_PROJECT)).thenReturn(true);
+    myPreferredProject = createProject("project2", "Preferred");
+    myOtherPreferredProject = createProject("project3", "OtherPreferred");
+    setPreferredProject("Preferred");
+  }
+
+  public void Test_PreferredProjectResolvedOnce() {
+    assertSame(myPreferredProject, myTargetProjectFinder.getPreferredInvestigationProject(myBaseProject, null));
+    assertSame(myPreferredProject, myTargetProjectFinder.getPreferredInvestigationProject(myBaseProject, null));
+
+    verify(myProjectManager, times(1)).findProjectByExternalId(anyString());
+  }
+
+  public void Test_CacheDroppedWhenProjectChanged() {
+    assertSame(myPreferredProject, myTargetProjectFinder.getPreferredInvestigationProject(myBaseProject, null));
+
+    setPreferredProject("OtherPreferred");
+    myListener.projectPersisted("project1");
+
+    assertSame(myOtherPreferredProject, myTargetProjectFinder.getPreferredInvestigationProject(myBaseProject, null));
+  }
+
+  public void Test_CacheDroppedWhenProjectRemoved() {
+    assertSame(myPreferredProject, myTargetProjectFinder.getPreferredInvestigationProject(myBaseProject, null));
+
+    when(myProjectManager.findProjectByExternalId("Preferred")).thenReturn(null);
+    myListener.projectRemoved("project2");
+
+    assertNull(myTargetProjectFinder.getPreferredInvestigationProject(myBaseProject, null));
+  }
+
+  private SProject createProject(final String projectId, final String externalId) {
+    SProject project = Mockito.mock(SProject.class);
+    when(project.getProjectId()).thenReturn(projectId);
+    when(project.getExternalId()).thenReturn(externalId);
+    when(myProjectManager.findProjectByExternalId(externalId)).thenReturn(project);
+    when(myProjectManager.findProjectById(projectId)).thenReturn(project);
+    return project;
+  }
+
+  private void setPreferredProject(final String externalId) {
+    when(myBaseProject.getInternalParameterValue(eq(Constants.PREFERRED_INVESTIGATION_PROJECT), anyString()))
+      .thenReturn(externalId);
+  }
+}